@@ -1,11 +1,22 @@
 package com.live.broadcast;
 
+import com.live.broadcast.cluster.ClusterConfig;
+import com.live.broadcast.cluster.EdgeRelay;
+import com.live.broadcast.cluster.StreamRelayServer;
+import com.live.broadcast.danmaku.DanmakuService;
+import com.live.broadcast.filter.SensitiveWordFilter;
+import com.live.broadcast.manager.LiveRoomManager;
+import com.live.broadcast.push.RtmpPushService;
 import com.live.broadcast.server.HttpServer;
 import com.live.broadcast.server.WebSocketServer;
 import com.live.broadcast.server.RtmpServer;
+import com.live.broadcast.stream.StreamManager;
+import io.netty.handler.ssl.SslContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+
 /**
  * 直播系统启动类
  */
@@ -16,10 +27,30 @@ public class LiveBroadcastApplication {
         logger.info("开始启动直播系统...");
         
         try {
-            // 启动HTTP服务器 (端口8080)
-            HttpServer httpServer = new HttpServer(8080);
+            // 启动HTTP服务器 (端口8080)，配置证书后启用TLS和ALPN
+            SslContext httpSslContext = null;
+            String certPath = System.getProperty("live.http.tls.cert");
+            String keyPath = System.getProperty("live.http.tls.key");
+            if (certPath != null && keyPath != null) {
+                httpSslContext = HttpServer.createSslContext(new File(certPath), new File(keyPath));
+            }
+            HttpServer httpServer = new HttpServer(8080, httpSslContext);
             new Thread(httpServer::start, "HTTP-Server").start();
             
+            // 加载敏感词词典，聊天消息到达前完成编译
+            SensitiveWordFilter.getInstance();
+            
+            // 创建直播间并启动节点间事件总线和推流归属登记，集群配置错误时启动失败
+            LiveRoomManager.getInstance();
+            StreamManager.getInstance();
+            
+            // 集群部署时启动源站拉流服务，供边缘节点拉流
+            StreamRelayServer relayServer = ClusterConfig.isClustered()
+                    ? new StreamRelayServer(ClusterConfig.getLocalNode().getRelayPort()) : null;
+            if (relayServer != null) {
+                relayServer.start();
+            }
+            
             // 启动WebSocket服务器 (端口8081)
             WebSocketServer webSocketServer = new WebSocketServer(8081);
             new Thread(webSocketServer::start, "WebSocket-Server").start();
@@ -39,6 +70,16 @@ public class LiveBroadcastApplication {
                 httpServer.stop();
                 webSocketServer.stop();
                 rtmpServer.stop();
+                SensitiveWordFilter.getInstance().shutdown();
+                DanmakuService.getInstance().shutdown();
+                if (relayServer != null) {
+                    relayServer.stop();
+                }
+                if (EdgeRelay.ENABLED) {
+                    EdgeRelay.getInstance().shutdown();
+                }
+                RtmpPushService.getInstance().shutdown();
+                LiveRoomManager.getInstance().getEventBus().shutdown();
                 logger.info("直播系统已关闭");
             }));
             
@@ -0,0 +1,108 @@
+package com.live.broadcast.analytics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 观众统计服务 - 单例模式
+ * 由直播间管理器在观众进出和开播时调用，由HTTP处理器在HLS播放列表请求时调用
+ */
+public class AnalyticsService {
+    private static volatile AnalyticsService instance;
+    
+    // 保留的小时桶数量
+    public static final int HOURS = Integer.getInteger("live.analytics.hours", 24);
+    
+    // 直播间统计 roomId -> RoomAnalytics
+    private final Map<String, RoomAnalytics> rooms = new ConcurrentHashMap<>();
+    
+    private final LongAdder joins = new LongAdder();
+    private final LongAdder leaves = new LongAdder();
+    private final LongAdder hlsHits = new LongAdder();
+    
+    private AnalyticsService() {}
+    
+    public static AnalyticsService getInstance() {
+        if (instance == null) {
+            synchronized (AnalyticsService.class) {
+                if (instance == null) {
+                    instance = new AnalyticsService();
+                }
+            }
+        }
+        return instance;
+    }
+    
+    private RoomAnalytics room(String roomId) {
+        RoomAnalytics analytics = rooms.get(roomId);
+        if (analytics == null) {
+            analytics = rooms.computeIfAbsent(roomId, k -> new RoomAnalytics(HOURS));
+        }
+        return analytics;
+    }
+    
+    /**
+     * 直播开始，开始新的场次统计
+     */
+    public void onLiveStart(String roomId) {
+        room(roomId).startSession(System.currentTimeMillis());
+    }
+    
+    /**
+     * 直播结束，保留本场统计直到下一场开始
+     */
+    public void onLiveStop(String roomId) {
+        room(roomId).endSession(System.currentTimeMillis());
+    }
+    
+    /**
+     * 观众通过WebSocket加入直播间
+     *
+     * @param viewerCount 加入后的当前观众数
+     */
+    public void onJoin(String roomId, String userId, int viewerCount) {
+        joins.increment();
+        room(roomId).recordJoin(userId, viewerCount, System.currentTimeMillis());
+    }
+    
+    /**
+     * 观众离开直播间
+     */
+    public void onLeave(String roomId, long watchMillis) {
+        leaves.increment();
+        room(roomId).recordLeave(watchMillis);
+    }
+    
+    /**
+     * HLS播放列表请求
+     *
+     * @param viewerKey 标识观众的字符串，如客户端地址和User-Agent
+     */
+    public void onHlsHit(String roomId, String viewerKey) {
+        hlsHits.increment();
+        room(roomId).recordHlsHit(viewerKey, System.currentTimeMillis());
+    }
+    
+    /**
+     * 获取直播间的统计报告，没有统计数据时返回null
+     */
+    public Map<String, Object> getRoomReport(String roomId) {
+        RoomAnalytics analytics = rooms.get(roomId);
+        return analytics != null ? analytics.report(System.currentTimeMillis()) : null;
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rooms", rooms.size());
+        stats.put("joins", joins.sum());
+        stats.put("leaves", leaves.sum());
+        stats.put("hlsHits", hlsHits.sum());
+        stats.put("sketchBytes", rooms.values().stream().mapToLong(RoomAnalytics::sketchBytes).sum());
+        return stats;
+    }
+}
@@ -0,0 +1,99 @@
+package com.live.broadcast.analytics;
+
+import com.live.broadcast.protocol.StringHash;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * HyperLogLog基数估计 - 线程安全，无锁
+ * 2^precision个寄存器，每个寄存器1字节，4个寄存器打包在一个int中，用CAS取最大值更新；
+ * 内存固定为2^precision字节，标准误差约为 1.04 / sqrt(2^precision)
+ */
+public final class HyperLogLog {
+    private final int precision;
+    private final int registerCount;
+    private final AtomicIntegerArray registers;
+    
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("precision应在4到16之间: " + precision);
+        }
+        this.precision = precision;
+        this.registerCount = 1 << precision;
+        this.registers = new AtomicIntegerArray(registerCount / 4);
+    }
+    
+    /**
+     * 记录一个元素
+     */
+    public void offer(String value) {
+        offerHash(StringHash.hash64(value));
+    }
+    
+    /**
+     * 记录一个元素的64位哈希
+     */
+    public void offerHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // 剩余位中第一个1的位置，末尾补1保证结果不超过 64 - precision + 1
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        
+        int slot = index >>> 2;
+        int shift = (index & 3) << 3;
+        while (true) {
+            int packed = registers.get(slot);
+            if (((packed >>> shift) & 0xFF) >= rank) {
+                return;
+            }
+            int updated = (packed & ~(0xFF << shift)) | (rank << shift);
+            if (registers.compareAndSet(slot, packed, updated)) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * 估计不同元素的个数
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (int slot = 0; slot < registers.length(); slot++) {
+            int packed = registers.get(slot);
+            for (int shift = 0; shift < 32; shift += 8) {
+                int value = (packed >>> shift) & 0xFF;
+                sum += 1.0 / (1L << value);
+                if (value == 0) {
+                    zeros++;
+                }
+            }
+        }
+        
+        double estimate = alpha(registerCount) * registerCount * registerCount / sum;
+        if (estimate <= 2.5 * registerCount && zeros > 0) {
+            // 小基数时用线性计数修正
+            estimate = registerCount * Math.log((double) registerCount / zeros);
+        }
+        return Math.round(estimate);
+    }
+    
+    /**
+     * 占用的内存字节数（寄存器部分）
+     */
+    public int sizeInBytes() {
+        return registerCount;
+    }
+    
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.live.broadcast.analytics;
+
+import com.live.broadcast.protocol.StringHash;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个直播间的观众统计
+ * 按场次（一次推流）统计独立观众、并发峰值和观看时长分布，另按小时分桶统计独立观众和峰值，
+ * 小时桶组成环形数组，只保留最近若干小时；所有计数都是定长结构，内存与观众规模无关。
+ * WebSocket观众（按用户ID）和HLS观众（按客户端地址）各用一个HyperLogLog：同一个观众通常两者都用，标识又无法对应，合并会重复计数
+ */
+final class RoomAnalytics {
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+    
+    // 场次和小时桶的HyperLogLog精度，误差约3.3%和6.5%
+    private static final int SESSION_PRECISION = 10;
+    private static final int HOUR_PRECISION = 8;
+    
+    // 观看时长分布的上界（秒），最后一档不设上界
+    private static final long[] WATCH_BOUNDS_SECONDS = {60, 300, 900, 1800, 3600, 7200};
+    
+    private final AtomicReference<Session> session = new AtomicReference<>(new Session(System.currentTimeMillis()));
+    private final AtomicReferenceArray<HourBucket> hours;
+    
+    RoomAnalytics(int hourCount) {
+        this.hours = new AtomicReferenceArray<>(hourCount);
+    }
+    
+    /**
+     * 开始新的场次，上一场的统计被替换
+     */
+    void startSession(long now) {
+        session.set(new Session(now));
+    }
+    
+    void endSession(long now) {
+        session.get().endTime = now;
+    }
+    
+    /**
+     * 记录WebSocket观众加入
+     *
+     * @param viewerCount 加入后的当前观众数
+     */
+    void recordJoin(String userId, int viewerCount, long now) {
+        long hash = StringHash.hash64(userId);
+        Session current = session.get();
+        current.viewers.offerHash(hash);
+        current.joins.increment();
+        updatePeak(current.peak, viewerCount, current, now);
+        
+        HourBucket bucket = hourBucket(now);
+        bucket.viewers.offerHash(hash);
+        bucket.joins.increment();
+        updatePeak(bucket.peak, viewerCount, null, now);
+    }
+    
+    /**
+     * 记录HLS播放列表请求，观众以客户端地址等信息标识
+     */
+    void recordHlsHit(String viewerKey, long now) {
+        long hash = StringHash.hash64(viewerKey);
+        Session current = session.get();
+        current.hlsViewers.offerHash(hash);
+        current.hlsHits.increment();
+        
+        HourBucket bucket = hourBucket(now);
+        bucket.hlsViewers.offerHash(hash);
+        bucket.hlsHits.increment();
+    }
+    
+    /**
+     * 记录WebSocket观众离开时的观看时长
+     */
+    void recordLeave(long watchMillis) {
+        Session current = session.get();
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(Math.max(0, watchMillis));
+        int index = 0;
+        while (index < WATCH_BOUNDS_SECONDS.length && seconds >= WATCH_BOUNDS_SECONDS[index]) {
+            index++;
+        }
+        current.watchHistogram[index].increment();
+        current.watchMillis.add(Math.max(0, watchMillis));
+    }
+    
+    private static void updatePeak(AtomicInteger peak, int viewerCount, Session session, long now) {
+        int current;
+        while (viewerCount > (current = peak.get())) {
+            if (peak.compareAndSet(current, viewerCount)) {
+                if (session != null) {
+                    session.peakTime = now;
+                }
+                return;
+            }
+        }
+    }
+    
+    /**
+     * 取当前小时的桶，进入新的小时时替换环中最旧的桶
+     */
+    private HourBucket hourBucket(long now) {
+        long hourStart = now - now % HOUR_MILLIS;
+        int index = (int) ((hourStart / HOUR_MILLIS) % hours.length());
+        while (true) {
+            HourBucket bucket = hours.get(index);
+            if (bucket != null && bucket.hourStart >= hourStart) {
+                return bucket;
+            }
+            HourBucket fresh = new HourBucket(hourStart);
+            if (hours.compareAndSet(index, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+    
+    /**
+     * 生成统计报告，小时桶按时间倒序
+     */
+    Map<String, Object> report(long now) {
+        Session current = session.get();
+        Map<String, Object> sessionReport = new LinkedHashMap<>();
+        sessionReport.put("startTime", current.startTime);
+        sessionReport.put("endTime", current.endTime > 0 ? current.endTime : null);
+        sessionReport.put("uniqueViewers", current.viewers.estimate());
+        sessionReport.put("uniqueHlsViewers", current.hlsViewers.estimate());
+        sessionReport.put("peakViewers", current.peak.get());
+        sessionReport.put("peakTime", current.peakTime > 0 ? current.peakTime : null);
+        sessionReport.put("joins", current.joins.sum());
+        sessionReport.put("hlsHits", current.hlsHits.sum());
+        
+        long watchCount = 0;
+        List<Map<String, Object>> histogram = new ArrayList<>();
+        for (int i = 0; i < current.watchHistogram.length; i++) {
+            long count = current.watchHistogram[i].sum();
+            watchCount += count;
+            Map<String, Object> bin = new LinkedHashMap<>();
+            bin.put("maxSeconds", i < WATCH_BOUNDS_SECONDS.length ? WATCH_BOUNDS_SECONDS[i] : null);
+            bin.put("count", count);
+            histogram.add(bin);
+        }
+        Map<String, Object> watchTime = new LinkedHashMap<>();
+        watchTime.put("sessions", watchCount);
+        watchTime.put("averageSeconds", watchCount > 0 ? current.watchMillis.sum() / 1000.0 / watchCount : 0);
+        watchTime.put("histogram", histogram);
+        sessionReport.put("watchTime", watchTime);
+        
+        List<Map<String, Object>> hourly = new ArrayList<>();
+        long hourStart = now - now % HOUR_MILLIS;
+        for (int i = 0; i < hours.length(); i++, hourStart -= HOUR_MILLIS) {
+            HourBucket bucket = hours.get((int) ((hourStart / HOUR_MILLIS) % hours.length()));
+            if (bucket == null || bucket.hourStart != hourStart) {
+                continue;
+            }
+            Map<String, Object> hour = new LinkedHashMap<>();
+            hour.put("hourStart", bucket.hourStart);
+            hour.put("uniqueViewers", bucket.viewers.estimate());
+            hour.put("uniqueHlsViewers", bucket.hlsViewers.estimate());
+            hour.put("peakViewers", bucket.peak.get());
+            hour.put("joins", bucket.joins.sum());
+            hour.put("hlsHits", bucket.hlsHits.sum());
+            hourly.add(hour);
+        }
+        
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("session", sessionReport);
+        report.put("hourly", hourly);
+        return report;
+    }
+    
+    /**
+     * 当前占用的HyperLogLog寄存器字节数
+     */
+    int sketchBytes() {
+        Session current = session.get();
+        int bytes = current.viewers.sizeInBytes() + current.hlsViewers.sizeInBytes();
+        for (int i = 0; i < hours.length(); i++) {
+            HourBucket bucket = hours.get(i);
+            if (bucket != null) {
+                bytes += bucket.viewers.sizeInBytes() + bucket.hlsViewers.sizeInBytes();
+            }
+        }
+        return bytes;
+    }
+    
+    /**
+     * 一场直播的统计
+     */
+    private static final class Session {
+        private final long startTime;
+        private volatile long endTime;
+        private final HyperLogLog viewers = new HyperLogLog(SESSION_PRECISION);
+        private final HyperLogLog hlsViewers = new HyperLogLog(SESSION_PRECISION);
+        private final AtomicInteger peak = new AtomicInteger();
+        private volatile long peakTime;
+        private final LongAdder joins = new LongAdder();
+        private final LongAdder hlsHits = new LongAdder();
+        private final LongAdder[] watchHistogram = new LongAdder[WATCH_BOUNDS_SECONDS.length + 1];
+        private final LongAdder watchMillis = new LongAdder();
+        
+        Session(long startTime) {
+            this.startTime = startTime;
+            for (int i = 0; i < watchHistogram.length; i++) {
+                watchHistogram[i] = new LongAdder();
+            }
+        }
+    }
+    
+    /**
+     * 一个小时的统计
+     */
+    private static final class HourBucket {
+        private final long hourStart;
+        private final HyperLogLog viewers = new HyperLogLog(HOUR_PRECISION);
+        private final HyperLogLog hlsViewers = new HyperLogLog(HOUR_PRECISION);
+        private final AtomicInteger peak = new AtomicInteger();
+        private final LongAdder joins = new LongAdder();
+        private final LongAdder hlsHits = new LongAdder();
+        
+        HourBucket(long hourStart) {
+            this.hourStart = hourStart;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.live.broadcast.cluster;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 集群配置
+ * live.cluster.nodeId 为本节点ID，live.cluster.nodes 为包括本节点在内的所有节点，格式 id@host:busPort[:httpPort[:relayPort]],...
+ * 未配置节点列表时按单节点运行
+ */
+public final class ClusterConfig {
+    private static final String NODE_ID = System.getProperty("live.cluster.nodeId", "node1");
+    
+    private static final List<ClusterNode> NODES = parseNodes(System.getProperty("live.cluster.nodes", ""));
+    
+    private ClusterConfig() {
+    }
+    
+    static List<ClusterNode> parseNodes(String value) {
+        List<ClusterNode> nodes = new ArrayList<>();
+        for (String spec : value.split(",")) {
+            if (!spec.trim().isEmpty()) {
+                nodes.add(ClusterNode.parse(spec.trim()));
+            }
+        }
+        return Collections.unmodifiableList(nodes);
+    }
+    
+    public static String getNodeId() {
+        return NODE_ID;
+    }
+    
+    public static List<ClusterNode> getNodes() {
+        return NODES;
+    }
+    
+    /**
+     * 按节点ID查找配置的节点，不存在时返回null
+     */
+    public static ClusterNode findNode(String nodeId) {
+        for (ClusterNode node : NODES) {
+            if (node.getNodeId().equals(nodeId)) {
+                return node;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 本节点地址，单节点运行时为本机
+     */
+    public static ClusterNode getLocalNode() {
+        for (ClusterNode node : NODES) {
+            if (node.getNodeId().equals(NODE_ID)) {
+                return node;
+            }
+        }
+        return new ClusterNode(NODE_ID, "localhost", 0, ClusterNode.DEFAULT_HTTP_PORT, 0);
+    }
+    
+    /**
+     * 是否配置了多个节点
+     */
+    public static boolean isClustered() {
+        return !NODES.isEmpty();
+    }
+    
+    /**
+     * 根据配置创建事件总线：配置了节点列表时节点间用TCP互连，否则使用不与其他节点通信的本地总线
+     */
+    public static RoomEventBus createEventBus() {
+        if (!isClustered()) {
+            return new LocalRoomEventBus(NODE_ID);
+        }
+        return new TcpRoomEventBus(NODE_ID, NODES);
+    }
+    
+    /**
+     * 根据配置创建推流归属登记，单节点运行时哈希环上只有本节点
+     */
+    public static StreamRegistry createStreamRegistry(RoomEventBus bus) {
+        ClusterNode localNode = getLocalNode();
+        List<ClusterNode> nodes = isClustered() ? NODES : Collections.singletonList(localNode);
+        return new StreamRegistry(localNode, new ConsistentHashRing(nodes, StreamRegistry.VIRTUAL_NODES), bus);
+    }
+}
@@ -0,0 +1,96 @@
+package com.live.broadcast.cluster;
+
+import java.util.Objects;
+
+/**
+ * 集群节点地址
+ */
+public final class ClusterNode {
+    static final int DEFAULT_HTTP_PORT = 8080;
+    
+    private final String nodeId;
+    private final String host;
+    private final int busPort;
+    private final int httpPort;
+    private final int relayPort;
+    
+    public ClusterNode(String nodeId, String host, int busPort, int httpPort, int relayPort) {
+        this.nodeId = nodeId;
+        this.host = host;
+        this.busPort = busPort;
+        this.httpPort = httpPort;
+        this.relayPort = relayPort;
+    }
+    
+    /**
+     * 解析 id@host:busPort[:httpPort[:relayPort]] 格式的节点地址，HTTP端口默认8080，拉流端口默认为总线端口加1
+     */
+    public static ClusterNode parse(String spec) {
+        int at = spec.indexOf('@');
+        String[] address = at > 0 ? spec.substring(at + 1).split(":") : new String[0];
+        if (address.length < 2 || address.length > 4 || address[0].isEmpty()) {
+            throw new IllegalArgumentException("节点地址格式错误，应为 id@host:busPort[:httpPort[:relayPort]]: " + spec);
+        }
+        try {
+            int busPort = Integer.parseInt(address[1]);
+            int httpPort = address.length >= 3 ? Integer.parseInt(address[2]) : DEFAULT_HTTP_PORT;
+            int relayPort = address.length == 4 ? Integer.parseInt(address[3]) : busPort + 1;
+            return new ClusterNode(spec.substring(0, at), address[0], busPort, httpPort, relayPort);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("节点端口错误: " + spec);
+        }
+    }
+    
+    public String getNodeId() {
+        return nodeId;
+    }
+    
+    public String getHost() {
+        return host;
+    }
+    
+    public int getBusPort() {
+        return busPort;
+    }
+    
+    public int getHttpPort() {
+        return httpPort;
+    }
+    
+    /**
+     * 边缘节点从本节点拉流的端口
+     */
+    public int getRelayPort() {
+        return relayPort;
+    }
+    
+    /**
+     * 节点HTTP服务的地址
+     */
+    public String getHttpUrl() {
+        return "http://" + host + ":" + httpPort;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ClusterNode)) {
+            return false;
+        }
+        ClusterNode that = (ClusterNode) o;
+        return busPort == that.busPort && httpPort == that.httpPort && relayPort == that.relayPort
+                && nodeId.equals(that.nodeId) && host.equals(that.host);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(nodeId, host, busPort, httpPort, relayPort);
+    }
+    
+    @Override
+    public String toString() {
+        return nodeId + "@" + host + ":" + busPort + ":" + httpPort + ":" + relayPort;
+    }
+}
@@ -0,0 +1,80 @@
+package com.live.broadcast.cluster;
+
+import com.live.broadcast.protocol.StringHash;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * 一致性哈希环 - 每个节点在环上放置若干虚拟节点，直播间ID顺时针找到的第一个可用节点即为归属节点
+ * 节点下线时只有它负责的直播间顺延到环上的下一个节点，其余直播间的归属不变。
+ * 环创建后不再修改，虚拟节点按哈希值排序保存在数组中，查找用二分
+ */
+public final class ConsistentHashRing {
+    private final List<ClusterNode> nodes;
+    private final int virtualNodes;
+    private final long[] points;
+    private final ClusterNode[] owners;
+    
+    public ConsistentHashRing(List<ClusterNode> nodes, int virtualNodes) {
+        if (nodes.isEmpty() || virtualNodes <= 0) {
+            throw new IllegalArgumentException("节点列表不能为空，虚拟节点数必须大于0");
+        }
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.virtualNodes = virtualNodes;
+        
+        int size = nodes.size() * virtualNodes;
+        long[] hashes = new long[size];
+        int[] order = new int[size];
+        int index = 0;
+        for (int n = 0; n < nodes.size(); n++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                hashes[index] = StringHash.hash64(nodes.get(n).getNodeId() + "#" + v);
+                order[index] = n;
+                index++;
+            }
+        }
+        
+        // 按哈希值排序，同时记录每个位置属于哪个节点
+        Integer[] sorted = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        points = new long[size];
+        owners = new ClusterNode[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = hashes[sorted[i]];
+            owners[i] = nodes.get(order[sorted[i]]);
+        }
+    }
+    
+    public List<ClusterNode> getNodes() {
+        return nodes;
+    }
+    
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+    
+    /**
+     * 查找直播间的归属节点，跳过不可用的节点
+     *
+     * @return 所有节点都不可用时返回null
+     */
+    public ClusterNode locate(String key, Predicate<ClusterNode> available) {
+        int start = Arrays.binarySearch(points, StringHash.hash64(key));
+        if (start < 0) {
+            start = -start - 1;
+        }
+        for (int i = 0; i < points.length; i++) {
+            ClusterNode owner = owners[(start + i) % points.length];
+            if (available.test(owner)) {
+                return owner;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,305 @@
+package com.live.broadcast.cluster;
+
+import com.live.broadcast.manager.LiveRoomManager;
+import com.live.broadcast.protocol.BinaryMessageCodec;
+import com.live.broadcast.stream.HlsStreamOutput;
+import com.live.broadcast.stream.StreamManager;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 边缘拉流 - 边缘节点上第一个观众请求直播间时，从源站拉一路流到本地的StreamManager，之后本地观众都从这一路流生成的HLS播放；
+ * 同时到达的首次请求只触发一次拉流。观众请求会刷新最后访问时间，超过宽限期没有观众请求时断开拉流。
+ * 本地HLS生成第一个完整片段之前观众仍被重定向到源站，就绪后通知源站，源站再把这些观众的播放列表请求重定向回本节点。
+ * 拉流连接断开后，下一次观众请求时重新定位源站并拉流
+ */
+public class EdgeRelay {
+    private static final Logger logger = LoggerFactory.getLogger(EdgeRelay.class);
+    private static volatile EdgeRelay instance;
+    
+    // 是否以边缘节点模式运行
+    public static final boolean ENABLED = Boolean.getBoolean("live.cluster.edge");
+    
+    // 最后一个观众请求之后保留拉流的时间
+    private static final long GRACE_MILLIS = TimeUnit.SECONDS.toMillis(Integer.getInteger("live.cluster.edgeGraceSeconds", 30));
+    
+    // 拉流失败或源站没有推流时，至少间隔多久再次尝试
+    private static final long RETRY_MILLIS = TimeUnit.SECONDS.toMillis(2);
+    
+    private static final int SWEEP_SECONDS = 5;
+    
+    // 拉流 roomId -> Pull
+    private final Map<String, Pull> pulls = new ConcurrentHashMap<>();
+    
+    private final EventLoopGroup group = new NioEventLoopGroup(1, new DefaultThreadFactory("edge-relay", true));
+    private final Bootstrap bootstrap;
+    
+    private final LongAdder pullsStarted = new LongAdder();
+    private final LongAdder pullsFailed = new LongAdder();
+    private final LongAdder coalescedRequests = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder teardowns = new LongAdder();
+    
+    private EdgeRelay() {
+        bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 3000);
+        LiveRoomManager.getInstance().getScheduler()
+                .scheduleWithFixedDelay(this::sweep, SWEEP_SECONDS, SWEEP_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    public static EdgeRelay getInstance() {
+        if (instance == null) {
+            synchronized (EdgeRelay.class) {
+                if (instance == null) {
+                    instance = new EdgeRelay();
+                }
+            }
+        }
+        return instance;
+    }
+    
+    /**
+     * 本地观众请求直播间时调用：刷新最后访问时间，没有拉流时开始拉流
+     * 本节点自己有推流时不拉流
+     */
+    public void touch(String roomId) {
+        StreamManager.StreamInfo local = StreamManager.getInstance().getStreamInfo(roomId);
+        Pull pull = pulls.computeIfAbsent(roomId, Pull::new);
+        long now = System.currentTimeMillis();
+        pull.lastAccess = now;
+        if (local != null && local != pull.streamInfo) {
+            return;
+        }
+        
+        if (pull.active.get() || now - pull.lastAttempt < RETRY_MILLIS) {
+            coalescedRequests.increment();
+            return;
+        }
+        if (pull.active.compareAndSet(false, true)) {
+            pull.lastAttempt = now;
+            pull.connect();
+        } else {
+            coalescedRequests.increment();
+        }
+    }
+    
+    /**
+     * 从源站拉来的流是否已在本地生成可播放的HLS
+     */
+    public boolean isReady(String roomId) {
+        Pull pull = pulls.get(roomId);
+        return pull != null && pull.ready;
+    }
+    
+    /**
+     * 断开超过宽限期没有观众请求的拉流
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        pulls.forEach((roomId, pull) -> {
+            if (now - pull.lastAccess > GRACE_MILLIS && pulls.remove(roomId, pull)) {
+                if (pull.active.get()) {
+                    teardowns.increment();
+                    logger.info("直播间 {} 已无观众，断开拉流", roomId);
+                }
+                pull.close();
+            }
+        });
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("graceSeconds", TimeUnit.MILLISECONDS.toSeconds(GRACE_MILLIS));
+        stats.put("activePulls", pulls.values().stream().filter(pull -> pull.active.get()).count());
+        stats.put("pullsStarted", pullsStarted.sum());
+        stats.put("pullsFailed", pullsFailed.sum());
+        stats.put("coalescedRequests", coalescedRequests.sum());
+        stats.put("bytesReceived", bytesReceived.sum());
+        stats.put("teardowns", teardowns.sum());
+        return stats;
+    }
+    
+    public void shutdown() {
+        pulls.values().forEach(Pull::close);
+        group.shutdownGracefully();
+    }
+    
+    /**
+     * 一个直播间的拉流
+     */
+    private final class Pull {
+        private final String roomId;
+        private final AtomicBoolean active = new AtomicBoolean();
+        private volatile long lastAccess;
+        private volatile long lastAttempt;
+        private volatile Channel channel;
+        private volatile boolean closed;
+        private volatile boolean ready;
+        
+        // 拉流开始后在本节点创建的流，只在拉流连接的EventLoop中修改
+        private volatile StreamManager.StreamInfo streamInfo;
+        private HlsStreamOutput hlsOutput;
+        
+        Pull(String roomId) {
+            this.roomId = roomId;
+        }
+        
+        void connect() {
+            StreamRegistry registry = StreamManager.getInstance().getRegistry();
+            ClusterNode origin = registry.locate(roomId);
+            if (registry.isLocal(origin)) {
+                active.set(false);
+                return;
+            }
+            
+            Bootstrap pullBootstrap = bootstrap.clone().handler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) {
+                    ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(StreamRelayServer.MAX_FRAME_LENGTH, 0, 4, 0, 4));
+                    ch.pipeline().addLast(new LengthFieldPrepender(4));
+                    ch.pipeline().addLast(new MediaHandler(Pull.this, origin));
+                }
+            });
+            pullBootstrap.connect(origin.getHost(), origin.getRelayPort()).addListener(future -> {
+                if (!future.isSuccess()) {
+                    pullsFailed.increment();
+                    logger.warn("连接源站 {} 拉流失败: roomId={}", origin, roomId);
+                    active.set(false);
+                    return;
+                }
+                Channel ch = ((ChannelFuture) future).channel();
+                channel = ch;
+                if (closed) {
+                    ch.close();
+                    return;
+                }
+                pullsStarted.increment();
+                String nodeId = ClusterConfig.getNodeId();
+                ByteBuf request = ch.alloc().buffer(roomId.length() + nodeId.length() + 16);
+                request.writeByte(StreamRelayServer.FRAME_PULL);
+                BinaryMessageCodec.writeString(request, roomId);
+                BinaryMessageCodec.writeString(request, nodeId);
+                ch.writeAndFlush(request, ch.voidPromise());
+                logger.info("开始从源站 {} 拉流: roomId={}", origin.getNodeId(), roomId);
+            });
+        }
+        
+        /**
+         * 收到第一帧流数据时在本节点创建流和HLS输出，HLS有了完整片段后通知源站
+         */
+        void onMedia(Channel ch, ClusterNode origin, ByteBuf data, StreamManager.StreamDataType dataType) {
+            if (closed) {
+                // 已被sweep移除，同一直播间可能已有新的拉流，不再向本地的流写入
+                return;
+            }
+            if (streamInfo == null) {
+                streamInfo = StreamManager.getInstance().startRelayStream(roomId, origin.getNodeId());
+                hlsOutput = new HlsStreamOutput(roomId);
+                StreamManager.getInstance().addStreamConsumer(roomId, hlsOutput);
+            }
+            bytesReceived.add(data.readableBytes());
+            StreamManager.getInstance().handleStreamData(roomId, data, dataType);
+            
+            if (!ready && hlsOutput.hasCompleteSegment()) {
+                ready = true;
+                ch.writeAndFlush(ch.alloc().buffer(1).writeByte(StreamRelayServer.FRAME_READY), ch.voidPromise());
+                logger.info("边缘HLS已就绪: roomId={}", roomId);
+            }
+        }
+        
+        /**
+         * 拉流连接断开，停止本节点的流，下一次观众请求时重新拉流
+         * 流可能已被新的拉流或本地推流替换：此时旧的HLS输出仍在消费者列表中，需要显式移除，
+         * 并且只删除它自己写的片段，HLS目录已归新的流所有
+         */
+        void onDisconnected() {
+            ready = false;
+            if (streamInfo != null) {
+                boolean stopped = StreamManager.getInstance().stopRelayStream(streamInfo);
+                StreamManager.getInstance().removeStreamConsumer(roomId, hlsOutput);
+                if (stopped) {
+                    hlsOutput.cleanup();
+                } else {
+                    hlsOutput.discard();
+                }
+                streamInfo = null;
+                hlsOutput = null;
+            }
+            channel = null;
+            active.set(false);
+        }
+        
+        void close() {
+            closed = true;
+            Channel ch = channel;
+            if (ch != null) {
+                ch.close();
+            }
+        }
+    }
+    
+    /**
+     * 接收源站下发的流数据
+     */
+    private static final class MediaHandler extends SimpleChannelInboundHandler<ByteBuf> {
+        private final Pull pull;
+        private final ClusterNode origin;
+        
+        MediaHandler(Pull pull, ClusterNode origin) {
+            this.pull = pull;
+            this.origin = origin;
+        }
+        
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+            int frameType = frame.readUnsignedByte();
+            if (frameType == StreamRelayServer.FRAME_MEDIA) {
+                StreamManager.StreamDataType dataType = StreamRelayServer.dataType(frame.readUnsignedByte());
+                pull.onMedia(ctx.channel(), origin, frame, dataType);
+            } else {
+                logger.info("源站 {} 的流已结束: roomId={}", origin.getNodeId(), pull.roomId);
+                ctx.close();
+            }
+        }
+        
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            pull.onDisconnected();
+            super.channelInactive(ctx);
+        }
+        
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.error("拉流连接异常: roomId={}", pull.roomId, cause);
+            ctx.close();
+        }
+    }
+}
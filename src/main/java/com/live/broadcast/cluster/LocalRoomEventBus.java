@@ -0,0 +1,159 @@
+package com.live.broadcast.cluster;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内事件总线 - 同一个Hub上的多个总线互为节点，用于单机部署和测试
+ * 事件按网络传输的格式编码一次，每个接收方各自解码，和TCP实现走同样的编解码路径
+ */
+public class LocalRoomEventBus implements RoomEventBus {
+    private static final Logger logger = LoggerFactory.getLogger(LocalRoomEventBus.class);
+    
+    /**
+     * 连接多个进程内总线的中心
+     */
+    public static final class Hub {
+        private final List<LocalRoomEventBus> buses = new CopyOnWriteArrayList<>();
+    }
+    
+    private final String nodeId;
+    private final Hub hub;
+    private final Set<String> rooms = ConcurrentHashMap.newKeySet();
+    private volatile Listener listener;
+    
+    private final LongAdder publishedEvents = new LongAdder();
+    private final LongAdder receivedEvents = new LongAdder();
+    
+    /**
+     * 单节点使用，发布的事件没有接收方
+     */
+    public LocalRoomEventBus(String nodeId) {
+        this(nodeId, new Hub());
+    }
+    
+    public LocalRoomEventBus(String nodeId, Hub hub) {
+        this.nodeId = nodeId;
+        this.hub = hub;
+    }
+    
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        hub.buses.add(this);
+    }
+    
+    @Override
+    public void subscribe(String roomId) {
+        if (rooms.add(roomId)) {
+            for (LocalRoomEventBus bus : hub.buses) {
+                if (bus != this) {
+                    bus.listener.onRemoteSubscribe(nodeId, roomId);
+                }
+            }
+        }
+    }
+    
+    @Override
+    public void unsubscribe(String roomId) {
+        rooms.remove(roomId);
+    }
+    
+    @Override
+    public boolean hasRemoteSubscribers(String roomId) {
+        for (LocalRoomEventBus bus : hub.buses) {
+            if (bus != this && bus.rooms.contains(roomId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public void publish(RoomEvent event) {
+        byte[] bytes = null;
+        for (LocalRoomEventBus bus : hub.buses) {
+            if (bus == this || !bus.rooms.contains(event.getRoomId())) {
+                continue;
+            }
+            if (bytes == null) {
+                bytes = event.toBytes();
+                publishedEvents.increment();
+            }
+            bus.receive(bytes, nodeId);
+        }
+    }
+    
+    @Override
+    public void broadcast(RoomEvent event) {
+        byte[] bytes = null;
+        for (LocalRoomEventBus bus : hub.buses) {
+            if (bus == this) {
+                continue;
+            }
+            if (bytes == null) {
+                bytes = event.toBytes();
+                publishedEvents.increment();
+            }
+            bus.receive(bytes, nodeId);
+        }
+    }
+    
+    @Override
+    public void send(String nodeId, RoomEvent event) {
+        for (LocalRoomEventBus bus : hub.buses) {
+            if (bus != this && bus.nodeId.equals(nodeId)) {
+                publishedEvents.increment();
+                bus.receive(event.toBytes(), this.nodeId);
+                return;
+            }
+        }
+    }
+    
+    @Override
+    public boolean isAlive(String nodeId) {
+        for (LocalRoomEventBus bus : hub.buses) {
+            if (bus.nodeId.equals(nodeId)) {
+                return true;
+            }
+        }
+        return this.nodeId.equals(nodeId);
+    }
+    
+    private void receive(byte[] bytes, String sourceNodeId) {
+        ByteBuf in = Unpooled.wrappedBuffer(bytes);
+        RoomEvent event = RoomEvent.decode(in, sourceNodeId);
+        receivedEvents.increment();
+        try {
+            listener.onEvent(event);
+        } catch (Exception e) {
+            logger.error("处理直播间事件失败: {}", event, e);
+        }
+    }
+    
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "local");
+        stats.put("nodeId", nodeId);
+        stats.put("subscribedRooms", rooms.size());
+        stats.put("publishedEvents", publishedEvents.sum());
+        stats.put("receivedEvents", receivedEvents.sum());
+        return stats;
+    }
+    
+    @Override
+    public void shutdown() {
+        hub.buses.remove(this);
+    }
+}
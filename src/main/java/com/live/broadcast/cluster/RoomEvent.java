@@ -0,0 +1,152 @@
+package com.live.broadcast.cluster;
+
+import com.live.broadcast.model.Message;
+import com.live.broadcast.protocol.BinaryMessageCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+
+/**
+ * 节点间转发的直播间事件
+ * 消息以BinaryMessageCodec格式保存，发布时只编码一次，发给多个节点时共享同一份字节
+ *
+ * 编码格式：类型 1B | 房间ID字符串 | varint长度 + 二进制消息
+ */
+public final class RoomEvent {
+    /**
+     * 事件类型
+     */
+    public enum Type {
+        // 需要在直播间广播的消息
+        MESSAGE,
+        // 开播，接收节点同时更新直播间状态
+        LIVE_START,
+        // 停播
+        LIVE_STOP,
+        // 发送节点持有该直播间的推流，发给所有节点，不带消息
+        STREAM_CLAIM,
+        // 发送节点不再持有该直播间的推流
+        STREAM_RELEASE
+    }
+    
+    private static final Type[] TYPES = Type.values();
+    
+    private static final byte[] EMPTY = new byte[0];
+    
+    private final Type type;
+    private final String roomId;
+    private final byte[] message;
+    
+    // 发送节点ID，本节点创建的事件为null
+    private final String sourceNodeId;
+    
+    public RoomEvent(Type type, String roomId, byte[] message) {
+        this(type, roomId, message, null);
+    }
+    
+    private RoomEvent(Type type, String roomId, byte[] message, String sourceNodeId) {
+        this.type = type;
+        this.roomId = roomId;
+        this.message = message;
+        this.sourceNodeId = sourceNodeId;
+    }
+    
+    /**
+     * 用消息创建事件，消息按二进制格式编码
+     */
+    public static RoomEvent of(Type type, String roomId, Message message) {
+        return new RoomEvent(type, roomId, BinaryMessageCodec.encodeToBytes(message));
+    }
+    
+    /**
+     * 创建不带消息的事件
+     */
+    public static RoomEvent of(Type type, String roomId) {
+        return new RoomEvent(type, roomId, EMPTY);
+    }
+    
+    public Type getType() {
+        return type;
+    }
+    
+    public String getRoomId() {
+        return roomId;
+    }
+    
+    public String getSourceNodeId() {
+        return sourceNodeId;
+    }
+    
+    /**
+     * 二进制编码的消息
+     */
+    public byte[] getMessage() {
+        return message;
+    }
+    
+    /**
+     * 解码消息
+     */
+    public Message decodeMessage(ByteBufAllocator alloc) {
+        ByteBuf in = alloc.heapBuffer(message.length).writeBytes(message);
+        try {
+            return BinaryMessageCodec.decodeMessage(in);
+        } finally {
+            in.release();
+        }
+    }
+    
+    /**
+     * 编码为字节数组
+     */
+    public byte[] toBytes() {
+        ByteBuf out = ByteBufAllocator.DEFAULT.heapBuffer(message.length + roomId.length() + 8);
+        try {
+            encode(out);
+            return ByteBufUtil.getBytes(out);
+        } finally {
+            out.release();
+        }
+    }
+    
+    public void encode(ByteBuf out) {
+        out.writeByte(type.ordinal());
+        BinaryMessageCodec.writeString(out, roomId);
+        BinaryMessageCodec.writeVarInt(out, message.length);
+        out.writeBytes(message);
+    }
+    
+    /**
+     * 解码事件
+     *
+     * @param sourceNodeId 发送节点ID
+     */
+    public static RoomEvent decode(ByteBuf in, String sourceNodeId) {
+        if (!in.isReadable()) {
+            throw new CorruptedFrameException("事件长度不足");
+        }
+        int type = in.readUnsignedByte();
+        if (type >= TYPES.length) {
+            throw new CorruptedFrameException("未知事件类型: " + type);
+        }
+        String roomId = BinaryMessageCodec.readString(in);
+        int length = BinaryMessageCodec.readVarInt(in);
+        if (length < 0 || length > in.readableBytes()) {
+            throw new CorruptedFrameException("事件消息长度错误: " + length);
+        }
+        byte[] message = new byte[length];
+        in.readBytes(message);
+        return new RoomEvent(TYPES[type], roomId, message, sourceNodeId);
+    }
+    
+    @Override
+    public String toString() {
+        return "RoomEvent{" +
+                "type=" + type +
+                ", roomId='" + roomId + '\'' +
+                ", bytes=" + message.length +
+                ", source=" + sourceNodeId +
+                '}';
+    }
+}
@@ -0,0 +1,70 @@
+package com.live.broadcast.cluster;
+
+import java.util.Map;
+
+/**
+ * 直播间事件总线 - 在节点之间转发直播间消息和开停播事件
+ * 节点只订阅有本地观众的直播间；收到的事件由监听器在本节点广播一次，不再转发
+ */
+public interface RoomEventBus {
+    
+    /**
+     * 接收其他节点发布的事件
+     */
+    interface Listener {
+        void onEvent(RoomEvent event);
+        
+        /**
+         * 其他节点开始订阅直播间，可以向该节点补发直播间的当前状态
+         */
+        default void onRemoteSubscribe(String nodeId, String roomId) {
+        }
+    }
+    
+    /**
+     * 启动总线，之后收到的事件交给监听器
+     */
+    void start(Listener listener);
+    
+    /**
+     * 订阅直播间，重复订阅无效果
+     */
+    void subscribe(String roomId);
+    
+    /**
+     * 取消订阅直播间
+     */
+    void unsubscribe(String roomId);
+    
+    /**
+     * 是否有其他节点订阅了该直播间，没有时发布方可以跳过编码
+     */
+    boolean hasRemoteSubscribers(String roomId);
+    
+    /**
+     * 向订阅了该直播间的其他节点发布事件，不会投递给本节点
+     */
+    void publish(RoomEvent event);
+    
+    /**
+     * 向所有在线节点发布事件，不论是否订阅，用于同步节点级的状态
+     */
+    void broadcast(RoomEvent event);
+    
+    /**
+     * 向指定节点发送事件，不论是否订阅
+     */
+    void send(String nodeId, RoomEvent event);
+    
+    /**
+     * 节点当前是否可达，本节点总是可达
+     */
+    boolean isAlive(String nodeId);
+    
+    /**
+     * 获取统计信息
+     */
+    Map<String, Object> getStats();
+    
+    void shutdown();
+}
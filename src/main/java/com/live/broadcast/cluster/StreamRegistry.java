@@ -0,0 +1,194 @@
+package com.live.broadcast.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 推流归属登记 - 记录每个直播间的推流在哪个节点（源站）
+ * 开始推流的节点通过事件总线向所有节点声明归属，并定期重发，超过几个周期没有收到声明的归属失效；
+ * 没有节点声明时按一致性哈希环计算归属节点，推流端应推到该节点。节点不可达时顺延到环上的下一个节点。
+ * 单节点部署时所有直播间都归属本节点；多个节点共用进程内总线即可在同一进程中测试
+ */
+public class StreamRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(StreamRegistry.class);
+    
+    // 每个节点在哈希环上的虚拟节点数
+    public static final int VIRTUAL_NODES = Integer.getInteger("live.cluster.virtualNodes", 160);
+    
+    // 重发本节点归属声明的周期，超过3个周期未收到的声明失效
+    private static final int CLAIM_REFRESH_SECONDS = Integer.getInteger("live.cluster.claimRefreshSeconds", 5);
+    private static final long CLAIM_TTL_MILLIS = TimeUnit.SECONDS.toMillis(CLAIM_REFRESH_SECONDS * 3L);
+    
+    private final ClusterNode localNode;
+    private final ConsistentHashRing ring;
+    private final Map<String, ClusterNode> nodesById = new ConcurrentHashMap<>();
+    private final RoomEventBus bus;
+    
+    // 本节点持有推流的直播间
+    private final Set<String> localStreams = ConcurrentHashMap.newKeySet();
+    
+    // 其他节点声明的归属 roomId -> Claim
+    private final Map<String, Claim> remoteClaims = new ConcurrentHashMap<>();
+    
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder remoteLookups = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+    
+    public StreamRegistry(ClusterNode localNode, ConsistentHashRing ring, RoomEventBus bus) {
+        this.localNode = localNode;
+        this.ring = ring;
+        this.bus = bus;
+        for (ClusterNode node : ring.getNodes()) {
+            nodesById.put(node.getNodeId(), node);
+        }
+    }
+    
+    /**
+     * 开始定期重发归属声明
+     */
+    public void start(ScheduledExecutorService scheduler) {
+        scheduler.scheduleWithFixedDelay(this::refreshClaims, CLAIM_REFRESH_SECONDS, CLAIM_REFRESH_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    public ClusterNode getLocalNode() {
+        return localNode;
+    }
+    
+    /**
+     * 登记本节点开始持有直播间的推流
+     */
+    public void register(String roomId) {
+        localStreams.add(roomId);
+        bus.broadcast(RoomEvent.of(RoomEvent.Type.STREAM_CLAIM, roomId));
+        
+        ClusterNode home = locateByRing(roomId);
+        if (!localNode.equals(home)) {
+            logger.info("直播间 {} 的推流不在哈希归属节点 {} 上，已声明由本节点 {} 持有", roomId, home, localNode.getNodeId());
+        }
+    }
+    
+    /**
+     * 登记本节点不再持有直播间的推流
+     */
+    public void unregister(String roomId) {
+        if (localStreams.remove(roomId)) {
+            bus.broadcast(RoomEvent.of(RoomEvent.Type.STREAM_RELEASE, roomId));
+        }
+    }
+    
+    /**
+     * 本节点是否持有直播间的推流
+     */
+    public boolean holdsStream(String roomId) {
+        return localStreams.contains(roomId);
+    }
+    
+    /**
+     * 查找直播间推流所在的节点：本节点持有时返回本节点，其次是有效的归属声明，最后按哈希环计算
+     */
+    public ClusterNode locate(String roomId) {
+        lookups.increment();
+        if (localStreams.contains(roomId)) {
+            return localNode;
+        }
+        
+        Claim claim = remoteClaims.get(roomId);
+        if (claim != null && claim.expiresAt > System.currentTimeMillis() && bus.isAlive(claim.node.getNodeId())) {
+            remoteLookups.increment();
+            return claim.node;
+        }
+        
+        ClusterNode owner = locateByRing(roomId);
+        if (!localNode.equals(owner)) {
+            remoteLookups.increment();
+        }
+        return owner;
+    }
+    
+    /**
+     * 按哈希环计算归属节点，跳过不可达的节点
+     */
+    private ClusterNode locateByRing(String roomId) {
+        ClusterNode owner = ring.locate(roomId, node -> node.equals(localNode) || bus.isAlive(node.getNodeId()));
+        ClusterNode home = ring.locate(roomId, node -> true);
+        if (owner != null && !owner.equals(home)) {
+            failovers.increment();
+        }
+        return owner != null ? owner : localNode;
+    }
+    
+    public boolean isLocal(ClusterNode node) {
+        return localNode.equals(node);
+    }
+    
+    /**
+     * 处理其他节点的归属声明
+     */
+    public void onRemoteEvent(RoomEvent event) {
+        ClusterNode node = nodesById.get(event.getSourceNodeId());
+        if (node == null) {
+            return;
+        }
+        String roomId = event.getRoomId();
+        if (event.getType() == RoomEvent.Type.STREAM_CLAIM) {
+            Claim previous = remoteClaims.put(roomId, new Claim(node, System.currentTimeMillis() + CLAIM_TTL_MILLIS));
+            if (previous == null || !previous.node.equals(node)) {
+                logger.info("直播间 {} 的推流由节点 {} 持有", roomId, node.getNodeId());
+            }
+        } else if (event.getType() == RoomEvent.Type.STREAM_RELEASE) {
+            remoteClaims.computeIfPresent(roomId, (k, claim) -> claim.node.equals(node) ? null : claim);
+        }
+    }
+    
+    /**
+     * 重发本节点的声明，清除过期的声明
+     */
+    private void refreshClaims() {
+        try {
+            for (String roomId : localStreams) {
+                bus.broadcast(RoomEvent.of(RoomEvent.Type.STREAM_CLAIM, roomId));
+            }
+            long now = System.currentTimeMillis();
+            remoteClaims.values().removeIf(claim -> claim.expiresAt <= now);
+        } catch (Exception e) {
+            logger.error("刷新推流归属声明失败", e);
+        }
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", localNode.getNodeId());
+        stats.put("nodes", ring.getNodes().size());
+        stats.put("virtualNodes", ring.getVirtualNodes());
+        stats.put("localStreams", localStreams.size());
+        stats.put("remoteClaims", remoteClaims.size());
+        stats.put("lookups", lookups.sum());
+        stats.put("remoteLookups", remoteLookups.sum());
+        stats.put("failovers", failovers.sum());
+        return stats;
+    }
+    
+    /**
+     * 其他节点的归属声明
+     */
+    private static final class Claim {
+        private final ClusterNode node;
+        private final long expiresAt;
+        
+        Claim(ClusterNode node, long expiresAt) {
+            this.node = node;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
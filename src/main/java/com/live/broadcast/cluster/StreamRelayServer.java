@@ -0,0 +1,257 @@
+package com.live.broadcast.cluster;
+
+import com.live.broadcast.protocol.BinaryMessageCodec;
+import com.live.broadcast.stream.StreamManager;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 源站拉流服务 - 边缘节点连接后发送PULL请求一个直播间，之后持续收到该直播间的流数据
+ * 每条拉流连接是StreamManager的一个流消费者，源站的出口流量与边缘节点数成正比，与观众数无关
+ *
+ * 边缘节点本地的HLS就绪后发送READY，源站之后把从该边缘节点重定向过来的观众重定向回去
+ *
+ * 帧格式：4字节长度 | 帧类型 1B | 内容
+ * PULL：房间ID + 边缘节点ID；MEDIA：数据类型 1B + 流数据；END：流已结束或不存在，随后关闭连接；READY：无内容
+ */
+public class StreamRelayServer {
+    private static final Logger logger = LoggerFactory.getLogger(StreamRelayServer.class);
+    
+    static final int FRAME_PULL = 1;
+    static final int FRAME_MEDIA = 2;
+    static final int FRAME_END = 3;
+    static final int FRAME_READY = 4;
+    
+    static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+    
+    // 拉流连接的写缓冲水位，边缘节点跟不上时丢弃流数据
+    private static final WriteBufferWaterMark WRITE_BUFFER_WATER_MARK = new WriteBufferWaterMark(256 * 1024, 1024 * 1024);
+    
+    private static final StreamManager.StreamDataType[] DATA_TYPES = StreamManager.StreamDataType.values();
+    
+    private static final LongAdder subscribers = new LongAdder();
+    private static final LongAdder pullRequests = new LongAdder();
+    private static final LongAdder framesSent = new LongAdder();
+    private static final LongAdder bytesSent = new LongAdder();
+    private static final LongAdder framesDropped = new LongAdder();
+    
+    // HLS已就绪的边缘节点 roomId -> (边缘节点ID -> 拉流连接)
+    private static final Map<String, Map<String, Channel>> readyEdges = new ConcurrentHashMap<>();
+    
+    private final int port;
+    private EventLoopGroup group;
+    private Channel serverChannel;
+    
+    public StreamRelayServer(int port) {
+        this.port = port;
+    }
+    
+    public void start() {
+        group = new NioEventLoopGroup(0, new DefaultThreadFactory("stream-relay", true));
+        ServerBootstrap bootstrap = new ServerBootstrap();
+        bootstrap.group(group)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, WRITE_BUFFER_WATER_MARK)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, 4, 0, 4));
+                        ch.pipeline().addLast(new LengthFieldPrepender(4));
+                        ch.pipeline().addLast(new PullHandler());
+                    }
+                });
+        serverChannel = bootstrap.bind(port).syncUninterruptibly().channel();
+        logger.info("源站拉流服务启动成功，端口: {}", port);
+    }
+    
+    public void stop() {
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        if (group != null) {
+            group.shutdownGracefully();
+        }
+        logger.info("源站拉流服务已停止");
+    }
+    
+    static StreamManager.StreamDataType dataType(int ordinal) {
+        return ordinal < DATA_TYPES.length ? DATA_TYPES[ordinal] : StreamManager.StreamDataType.VIDEO;
+    }
+    
+    /**
+     * 边缘节点是否正在拉该直播间的流且本地HLS已就绪
+     */
+    public static boolean isEdgeReady(String roomId, String edgeNodeId) {
+        Map<String, Channel> edges = readyEdges.get(roomId);
+        return edges != null && edges.containsKey(edgeNodeId);
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("subscribers", subscribers.sum());
+        stats.put("readyEdges", readyEdges.values().stream().mapToInt(Map::size).sum());
+        stats.put("pullRequests", pullRequests.sum());
+        stats.put("framesSent", framesSent.sum());
+        stats.put("bytesSent", bytesSent.sum());
+        stats.put("framesDropped", framesDropped.sum());
+        return stats;
+    }
+    
+    /**
+     * 处理边缘节点的拉流请求，每条连接只能拉一个直播间
+     */
+    private static final class PullHandler extends SimpleChannelInboundHandler<ByteBuf> {
+        private String roomId;
+        private String edgeNodeId;
+        private RelaySubscriber subscriber;
+        
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+            int frameType = frame.readUnsignedByte();
+            if (frameType == FRAME_READY && subscriber != null) {
+                readyEdges.compute(roomId, (k, edges) -> {
+                    Map<String, Channel> result = edges != null ? edges : new ConcurrentHashMap<>();
+                    result.put(edgeNodeId, ctx.channel());
+                    return result;
+                });
+                logger.info("边缘节点HLS已就绪: roomId={}, 边缘节点: {}", roomId, edgeNodeId);
+                return;
+            }
+            if (frameType != FRAME_PULL || roomId != null) {
+                logger.warn("无效的拉流请求，关闭连接: {}", ctx.channel().remoteAddress());
+                ctx.close();
+                return;
+            }
+            roomId = BinaryMessageCodec.readString(frame);
+            edgeNodeId = BinaryMessageCodec.readString(frame);
+            pullRequests.increment();
+            
+            if (StreamManager.getInstance().getStreamInfo(roomId) == null) {
+                logger.info("拉流的直播间没有推流: roomId={}, 边缘节点: {}", roomId, ctx.channel().remoteAddress());
+                sendEnd(ctx.channel());
+                return;
+            }
+            subscriber = new RelaySubscriber(ctx.channel());
+            subscribers.increment();
+            StreamManager.getInstance().addStreamConsumer(roomId, subscriber);
+            logger.info("边缘节点开始拉流: roomId={}, 边缘节点: {}", roomId, ctx.channel().remoteAddress());
+        }
+        
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            if (subscriber != null) {
+                readyEdges.computeIfPresent(roomId, (k, edges) -> {
+                    edges.remove(edgeNodeId, ctx.channel());
+                    return edges.isEmpty() ? null : edges;
+                });
+                StreamManager.getInstance().removeStreamConsumer(roomId, subscriber);
+                subscribers.decrement();
+                subscriber = null;
+            }
+            super.channelInactive(ctx);
+        }
+        
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.error("拉流连接异常: {}", ctx.channel().remoteAddress(), cause);
+            ctx.close();
+        }
+    }
+    
+    private static void sendEnd(Channel channel) {
+        ByteBuf frame = channel.alloc().buffer(1).writeByte(FRAME_END);
+        channel.writeAndFlush(frame).addListener(ChannelFutureListener.CLOSE);
+    }
+    
+    /**
+     * 把流数据写给一个边缘节点，帧头和数据组合成一个帧，不复制数据
+     * 边缘节点跟不上时丢帧，之后一直丢到下一个关键帧，避免边缘节点收到缺少参考帧的数据；序列头和元数据总是发送
+     */
+    private static final class RelaySubscriber implements StreamManager.StreamConsumer {
+        private final Channel channel;
+        
+        // 丢过帧之后等待关键帧，只在推流线程中访问
+        private boolean waitKeyframe;
+        
+        RelaySubscriber(Channel channel) {
+            this.channel = channel;
+        }
+        
+        @Override
+        public void onStreamData(ByteBuf data, StreamManager.StreamDataType dataType) {
+            if (!channel.isActive() || !channel.isWritable()) {
+                waitKeyframe = true;
+                drop(data);
+                return;
+            }
+            if (waitKeyframe) {
+                if (isKeyframe(data, dataType)) {
+                    waitKeyframe = false;
+                } else if (dataType != StreamManager.StreamDataType.METADATA && !isSequenceHeader(data, dataType)) {
+                    drop(data);
+                    return;
+                }
+            }
+            int size = data.readableBytes();
+            ByteBuf header = channel.alloc().buffer(2).writeByte(FRAME_MEDIA).writeByte(dataType.ordinal());
+            channel.writeAndFlush(Unpooled.wrappedBuffer(header, data), channel.voidPromise());
+            framesSent.increment();
+            bytesSent.add(size);
+        }
+        
+        @Override
+        public void onStreamEnd() {
+            if (channel.isActive()) {
+                sendEnd(channel);
+            }
+        }
+        
+        private void drop(ByteBuf data) {
+            framesDropped.increment();
+            data.release();
+        }
+        
+        /**
+         * 视频关键帧：FLV视频标签第一个字节的高4位为1
+         */
+        private static boolean isKeyframe(ByteBuf data, StreamManager.StreamDataType dataType) {
+            return dataType == StreamManager.StreamDataType.VIDEO && data.isReadable()
+                    && (data.getUnsignedByte(data.readerIndex()) >> 4) == 1;
+        }
+        
+        /**
+         * AAC序列头（SoundFormat为10且AACPacketType为0），AVC序列头是关键帧，已由isKeyframe处理
+         */
+        private static boolean isSequenceHeader(ByteBuf data, StreamManager.StreamDataType dataType) {
+            return dataType == StreamManager.StreamDataType.AUDIO && data.readableBytes() >= 2
+                    && (data.getUnsignedByte(data.readerIndex()) >> 4) == 10
+                    && data.getUnsignedByte(data.readerIndex() + 1) == 0;
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package com.live.broadcast.cluster;
+
+import com.live.broadcast.protocol.BinaryMessageCodec;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 节点间TCP事件总线 - 所有节点两两互连
+ * 每个节点向其他节点各建一条出站连接，用来发送订阅变化和事件；入站连接只接收。
+ * 发往同一节点的事件先进入该节点的队列，每个周期合并成一个批量帧写出，事件只编码一次，多个节点共享同一份字节。
+ * 连接断开后每隔一段时间重连，重连后重新发送本节点的全部订阅
+ *
+ * 帧格式：4字节长度 | 帧类型 1B | 内容
+ * HELLO：节点ID；SUB/UNSUB：房间ID；BATCH：varint事件数 + 事件
+ */
+public class TcpRoomEventBus implements RoomEventBus {
+    private static final Logger logger = LoggerFactory.getLogger(TcpRoomEventBus.class);
+    
+    private static final int FRAME_HELLO = 1;
+    private static final int FRAME_SUB = 2;
+    private static final int FRAME_UNSUB = 3;
+    private static final int FRAME_BATCH = 4;
+    
+    private static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+    
+    // 合并周期（毫秒）
+    private static final int BATCH_MILLIS = Integer.getInteger("live.cluster.batchMs", 5);
+    
+    // 单个批量帧最多包含的事件数
+    private static final int MAX_BATCH_EVENTS = 512;
+    
+    // 每个节点最多缓存的事件数，超出的事件直接丢弃
+    private static final int MAX_PENDING = Integer.getInteger("live.cluster.maxPending", 10000);
+    
+    private static final int RECONNECT_SECONDS = 2;
+    
+    private final String nodeId;
+    private final ClusterNode localNode;
+    private final Map<String, Peer> peers = new LinkedHashMap<>();
+    
+    // 本节点订阅的房间
+    private final Set<String> localRooms = ConcurrentHashMap.newKeySet();
+    
+    private final EventLoopGroup group = new NioEventLoopGroup(1, new DefaultThreadFactory("room-bus", true));
+    private final EventLoop eventLoop = group.next();
+    private volatile Listener listener;
+    private volatile boolean closed;
+    private Channel serverChannel;
+    
+    private final LongAdder publishedEvents = new LongAdder();
+    private final LongAdder receivedEvents = new LongAdder();
+    private final LongAdder batchesSent = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+    
+    public TcpRoomEventBus(String nodeId, List<ClusterNode> nodes) {
+        this.nodeId = nodeId;
+        ClusterNode self = null;
+        for (ClusterNode node : nodes) {
+            if (node.getNodeId().equals(nodeId)) {
+                self = node;
+            } else {
+                peers.put(node.getNodeId(), new Peer(node));
+            }
+        }
+        if (self == null) {
+            throw new IllegalArgumentException("节点列表中没有本节点: " + nodeId);
+        }
+        this.localNode = self;
+    }
+    
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        ServerBootstrap bootstrap = new ServerBootstrap();
+        bootstrap.group(group)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, 4, 0, 4));
+                        ch.pipeline().addLast(new InboundHandler());
+                    }
+                });
+        serverChannel = bootstrap.bind(localNode.getBusPort()).syncUninterruptibly().channel();
+        logger.info("直播间事件总线启动成功，节点: {}, 端口: {}", nodeId, localNode.getBusPort());
+        
+        for (Peer peer : peers.values()) {
+            peer.connect();
+        }
+    }
+    
+    @Override
+    public void subscribe(String roomId) {
+        if (localRooms.add(roomId)) {
+            eventLoop.execute(() -> syncSubscription(roomId));
+        }
+    }
+    
+    @Override
+    public void unsubscribe(String roomId) {
+        if (localRooms.remove(roomId)) {
+            eventLoop.execute(() -> syncSubscription(roomId));
+        }
+    }
+    
+    /**
+     * 在总线线程中把房间当前的订阅状态发给所有节点，发送的是状态而不是操作，乱序提交也能收敛
+     */
+    private void syncSubscription(String roomId) {
+        int frameType = localRooms.contains(roomId) ? FRAME_SUB : FRAME_UNSUB;
+        for (Peer peer : peers.values()) {
+            Channel channel = peer.channel;
+            if (channel != null && channel.isActive()) {
+                channel.writeAndFlush(stringFrame(channel, frameType, roomId), channel.voidPromise());
+            }
+        }
+    }
+    
+    @Override
+    public boolean hasRemoteSubscribers(String roomId) {
+        for (Peer peer : peers.values()) {
+            if (peer.remoteRooms.contains(roomId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public void publish(RoomEvent event) {
+        byte[] bytes = null;
+        for (Peer peer : peers.values()) {
+            if (!peer.remoteRooms.contains(event.getRoomId())) {
+                continue;
+            }
+            if (bytes == null) {
+                bytes = event.toBytes();
+                publishedEvents.increment();
+            }
+            peer.offer(bytes);
+        }
+    }
+    
+    @Override
+    public void broadcast(RoomEvent event) {
+        byte[] bytes = event.toBytes();
+        publishedEvents.increment();
+        for (Peer peer : peers.values()) {
+            Channel channel = peer.channel;
+            if (channel != null && channel.isActive()) {
+                peer.offer(bytes);
+            }
+        }
+    }
+    
+    @Override
+    public void send(String nodeId, RoomEvent event) {
+        Peer peer = peers.get(nodeId);
+        if (peer != null) {
+            publishedEvents.increment();
+            peer.offer(event.toBytes());
+        }
+    }
+    
+    @Override
+    public boolean isAlive(String nodeId) {
+        if (this.nodeId.equals(nodeId)) {
+            return true;
+        }
+        Peer peer = peers.get(nodeId);
+        Channel channel = peer != null ? peer.channel : null;
+        return channel != null && channel.isActive();
+    }
+    
+    private static ByteBuf stringFrame(Channel channel, int frameType, String value) {
+        ByteBuf frame = channel.alloc().buffer(value.length() + 8);
+        frame.writeByte(frameType);
+        BinaryMessageCodec.writeString(frame, value);
+        return frame;
+    }
+    
+    /**
+     * 处理收到的批量帧，事件按顺序交给监听器
+     */
+    private void receiveBatch(Peer peer, ByteBuf in) {
+        int count = BinaryMessageCodec.readVarInt(in);
+        for (int i = 0; i < count; i++) {
+            RoomEvent event = RoomEvent.decode(in, peer.node.getNodeId());
+            receivedEvents.increment();
+            try {
+                listener.onEvent(event);
+            } catch (Exception e) {
+                logger.error("处理直播间事件失败: {}", event, e);
+            }
+        }
+    }
+    
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("type", "tcp");
+        stats.put("nodeId", nodeId);
+        stats.put("batchMs", BATCH_MILLIS);
+        stats.put("subscribedRooms", localRooms.size());
+        List<Map<String, Object>> peerStats = new ArrayList<>();
+        for (Peer peer : peers.values()) {
+            Map<String, Object> peerStat = new LinkedHashMap<>();
+            peerStat.put("nodeId", peer.node.getNodeId());
+            peerStat.put("connected", peer.channel != null && peer.channel.isActive());
+            peerStat.put("remoteRooms", peer.remoteRooms.size());
+            peerStat.put("pending", peer.pendingCount.get());
+            peerStats.add(peerStat);
+        }
+        stats.put("peers", peerStats);
+        stats.put("publishedEvents", publishedEvents.sum());
+        stats.put("receivedEvents", receivedEvents.sum());
+        stats.put("batchesSent", batchesSent.sum());
+        stats.put("droppedEvents", droppedEvents.sum());
+        return stats;
+    }
+    
+    @Override
+    public void shutdown() {
+        closed = true;
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        group.shutdownGracefully();
+        logger.info("直播间事件总线已停止");
+    }
+    
+    /**
+     * 其他节点，保存出站连接、待发送的事件和对方订阅的房间
+     */
+    private final class Peer {
+        private final ClusterNode node;
+        
+        // 对方订阅的房间，由对方经入站连接告知
+        private final Set<String> remoteRooms = ConcurrentHashMap.newKeySet();
+        
+        private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        
+        // 出站连接，只在总线线程中修改
+        private volatile Channel channel;
+        
+        // 当前有效的入站连接，只在总线线程中访问
+        private Channel inbound;
+        
+        Peer(ClusterNode node) {
+            this.node = node;
+        }
+        
+        void connect() {
+            if (closed) {
+                return;
+            }
+            Bootstrap bootstrap = new Bootstrap();
+            bootstrap.group(group)
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline().addLast(new LengthFieldPrepender(4));
+                        }
+                    });
+            bootstrap.connect(node.getHost(), node.getBusPort()).addListener(future -> {
+                if (!future.isSuccess()) {
+                    logger.debug("连接节点 {} 失败，{}秒后重试", node, RECONNECT_SECONDS);
+                    scheduleReconnect();
+                    return;
+                }
+                Channel ch = ((ChannelFuture) future).channel();
+                onConnected(ch);
+                ch.closeFuture().addListener(f -> {
+                    channel = null;
+                    logger.warn("与节点 {} 的连接断开", node);
+                    scheduleReconnect();
+                });
+            });
+        }
+        
+        private void scheduleReconnect() {
+            if (!closed) {
+                eventLoop.schedule(this::connect, RECONNECT_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+        
+        /**
+         * 连接建立后先发送本节点ID，再发送全部订阅
+         */
+        private void onConnected(Channel ch) {
+            channel = ch;
+            ch.write(stringFrame(ch, FRAME_HELLO, nodeId), ch.voidPromise());
+            for (String roomId : localRooms) {
+                ch.write(stringFrame(ch, FRAME_SUB, roomId), ch.voidPromise());
+            }
+            ch.flush();
+            logger.info("已连接节点 {}", node);
+        }
+        
+        void offer(byte[] event) {
+            if (pendingCount.incrementAndGet() > MAX_PENDING) {
+                pendingCount.decrementAndGet();
+                droppedEvents.increment();
+                return;
+            }
+            pending.offer(event);
+            
+            if (scheduled.compareAndSet(false, true)) {
+                eventLoop.schedule(this::flush, BATCH_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+        
+        /**
+         * 在总线线程中把缓存的事件合并成批量帧写出，连接不可用时丢弃
+         */
+        private void flush() {
+            scheduled.set(false);
+            
+            Channel ch = channel;
+            List<byte[]> events = new ArrayList<>();
+            byte[] event;
+            while ((event = pending.poll()) != null) {
+                pendingCount.decrementAndGet();
+                events.add(event);
+            }
+            if (events.isEmpty()) {
+                return;
+            }
+            if (ch == null || !ch.isActive()) {
+                droppedEvents.add(events.size());
+                return;
+            }
+            
+            for (int start = 0; start < events.size(); start += MAX_BATCH_EVENTS) {
+                int end = Math.min(events.size(), start + MAX_BATCH_EVENTS);
+                int length = 1 + BinaryMessageCodec.varIntSize(end - start);
+                for (int i = start; i < end; i++) {
+                    length += events.get(i).length;
+                }
+                ByteBuf frame = ch.alloc().buffer(length);
+                frame.writeByte(FRAME_BATCH);
+                BinaryMessageCodec.writeVarInt(frame, end - start);
+                for (int i = start; i < end; i++) {
+                    frame.writeBytes(events.get(i));
+                }
+                ch.write(frame, ch.voidPromise());
+                batchesSent.increment();
+            }
+            ch.flush();
+        }
+    }
+    
+    /**
+     * 入站连接处理器，第一帧必须是HELLO，之后接收订阅变化和批量事件
+     */
+    private final class InboundHandler extends SimpleChannelInboundHandler<ByteBuf> {
+        private Peer peer;
+        
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+            int frameType = frame.readUnsignedByte();
+            if (peer == null) {
+                if (frameType != FRAME_HELLO) {
+                    throw new CorruptedFrameException("第一帧不是HELLO: " + frameType);
+                }
+                String remoteId = BinaryMessageCodec.readString(frame);
+                peer = peers.get(remoteId);
+                if (peer == null) {
+                    logger.warn("未知节点连接，关闭: {} {}", remoteId, ctx.channel().remoteAddress());
+                    ctx.close();
+                    return;
+                }
+                // 对方重连后会重新发送全部订阅
+                peer.inbound = ctx.channel();
+                peer.remoteRooms.clear();
+                return;
+            }
+            switch (frameType) {
+                case FRAME_SUB:
+                    String roomId = BinaryMessageCodec.readString(frame);
+                    if (peer.remoteRooms.add(roomId)) {
+                        listener.onRemoteSubscribe(peer.node.getNodeId(), roomId);
+                    }
+                    break;
+                case FRAME_UNSUB:
+                    peer.remoteRooms.remove(BinaryMessageCodec.readString(frame));
+                    break;
+                case FRAME_BATCH:
+                    receiveBatch(peer, frame);
+                    break;
+                default:
+                    throw new CorruptedFrameException("未知帧类型: " + frameType);
+            }
+        }
+        
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            // 旧连接晚于新连接关闭时不能清除新连接发来的订阅
+            if (peer != null && peer.inbound == ctx.channel()) {
+                peer.inbound = null;
+                peer.remoteRooms.clear();
+            }
+            super.channelInactive(ctx);
+        }
+        
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.error("直播间事件总线连接异常: {}", ctx.channel().remoteAddress(), cause);
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.live.broadcast.danmaku;
+
+/**
+ * 单条弹幕，查询结果使用
+ */
+public class Danmaku {
+    // 发送时间（毫秒时间戳）
+    private final long time;
+    
+    // 发送时直播流的媒体时间（推流开始后的毫秒数）
+    private final long mediaTime;
+    
+    private final String userId;
+    private final String username;
+    private final String content;
+    
+    public Danmaku(long time, long mediaTime, String userId, String username, String content) {
+        this.time = time;
+        this.mediaTime = mediaTime;
+        this.userId = userId;
+        this.username = username;
+        this.content = content;
+    }
+    
+    public long getTime() {
+        return time;
+    }
+    
+    public long getMediaTime() {
+        return mediaTime;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public String getContent() {
+        return content;
+    }
+}
@@ -0,0 +1,197 @@
+package com.live.broadcast.danmaku;
+
+import com.live.broadcast.protocol.BinaryMessageCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 弹幕分段 - 按列保存一段时间内的弹幕，时间非递减
+ * 用户按段内字典编号保存，同一用户的多条弹幕只保存一次用户ID和昵称
+ *
+ * 文件格式：
+ * <pre>
+ * 魔数 4B | varint条数 | varint用户数 | 用户字典(用户ID, 昵称)
+ *        | 首条时间 8B | 时间增量 varint * (条数-1)
+ *        | 媒体时间 varint * 条数 | 用户编号 varint * 条数 | 内容 * 条数
+ * </pre>
+ * 字符串为 varint长度 + UTF-8字节
+ */
+final class DanmakuSegment {
+    private static final int MAGIC = 0x444D4B31;
+    
+    private long[] times;
+    private long[] mediaTimes;
+    private int[] users;
+    private String[] contents;
+    private int size;
+    
+    // 用户字典，下标即编号
+    private final List<String> userIds = new ArrayList<>();
+    private final List<String> usernames = new ArrayList<>();
+    
+    // 只在追加时使用，解码得到的只读分段不需要
+    private Map<String, Integer> userIndex;
+    
+    DanmakuSegment(int capacity) {
+        times = new long[capacity];
+        mediaTimes = new long[capacity];
+        users = new int[capacity];
+        contents = new String[capacity];
+        userIndex = new HashMap<>();
+    }
+    
+    /**
+     * 追加一条弹幕，调用方保证时间非递减
+     */
+    void append(long time, long mediaTime, String userId, String username, String content) {
+        if (size == times.length) {
+            int newCapacity = Math.max(16, size * 2);
+            times = Arrays.copyOf(times, newCapacity);
+            mediaTimes = Arrays.copyOf(mediaTimes, newCapacity);
+            users = Arrays.copyOf(users, newCapacity);
+            contents = Arrays.copyOf(contents, newCapacity);
+        }
+        
+        Integer user = userIndex.get(userId);
+        if (user == null) {
+            user = userIds.size();
+            userIds.add(userId);
+            usernames.add(username);
+            userIndex.put(userId, user);
+        }
+        
+        times[size] = time;
+        mediaTimes[size] = mediaTime;
+        users[size] = user;
+        contents[size] = content;
+        size++;
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    long firstTime() {
+        return times[0];
+    }
+    
+    long lastTime() {
+        return times[size - 1];
+    }
+    
+    /**
+     * 取出时间在[from, to)内的弹幕，最多limit条
+     */
+    void collect(long from, long to, int limit, List<Danmaku> out) {
+        for (int i = lowerBound(from); i < size && times[i] < to && out.size() < limit; i++) {
+            out.add(new Danmaku(times[i], mediaTimes[i], userIds.get(users[i]), usernames.get(users[i]), contents[i]));
+        }
+    }
+    
+    /**
+     * 第一条时间不小于指定时间的下标
+     */
+    private int lowerBound(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * 按列编码
+     */
+    byte[] encode() {
+        ByteBuf out = Unpooled.buffer(size * 16 + 64);
+        try {
+            out.writeInt(MAGIC);
+            BinaryMessageCodec.writeVarInt(out, size);
+            BinaryMessageCodec.writeVarInt(out, userIds.size());
+            for (int i = 0; i < userIds.size(); i++) {
+                BinaryMessageCodec.writeString(out, userIds.get(i));
+                BinaryMessageCodec.writeString(out, usernames.get(i));
+            }
+            
+            if (size > 0) {
+                out.writeLong(times[0]);
+                for (int i = 1; i < size; i++) {
+                    BinaryMessageCodec.writeVarInt(out, (int) (times[i] - times[i - 1]));
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                BinaryMessageCodec.writeVarInt(out, (int) mediaTimes[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                BinaryMessageCodec.writeVarInt(out, users[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                BinaryMessageCodec.writeString(out, contents[i]);
+            }
+            
+            byte[] bytes = new byte[out.readableBytes()];
+            out.readBytes(bytes);
+            return bytes;
+        } finally {
+            out.release();
+        }
+    }
+    
+    /**
+     * 解码分段文件内容
+     */
+    static DanmakuSegment decode(byte[] bytes) {
+        ByteBuf in = Unpooled.wrappedBuffer(bytes);
+        if (in.readableBytes() < 4 || in.readInt() != MAGIC) {
+            throw new CorruptedFrameException("弹幕分段格式错误");
+        }
+        
+        int count = BinaryMessageCodec.readVarInt(in);
+        int userCount = BinaryMessageCodec.readVarInt(in);
+        if (count < 0 || userCount < 0 || count > in.readableBytes() || userCount > in.readableBytes()) {
+            throw new CorruptedFrameException("弹幕分段长度错误: " + count);
+        }
+        
+        DanmakuSegment segment = new DanmakuSegment(count);
+        segment.userIndex = null;
+        for (int i = 0; i < userCount; i++) {
+            segment.userIds.add(BinaryMessageCodec.readString(in));
+            segment.usernames.add(BinaryMessageCodec.readString(in));
+        }
+        
+        if (count > 0) {
+            segment.times[0] = in.readLong();
+            for (int i = 1; i < count; i++) {
+                segment.times[i] = segment.times[i - 1] + BinaryMessageCodec.readVarInt(in);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            segment.mediaTimes[i] = BinaryMessageCodec.readVarInt(in);
+        }
+        for (int i = 0; i < count; i++) {
+            int user = BinaryMessageCodec.readVarInt(in);
+            if (user < 0 || user >= userCount) {
+                throw new CorruptedFrameException("弹幕用户编号错误: " + user);
+            }
+            segment.users[i] = user;
+        }
+        for (int i = 0; i < count; i++) {
+            segment.contents[i] = BinaryMessageCodec.readString(in);
+        }
+        segment.size = count;
+        return segment;
+    }
+}
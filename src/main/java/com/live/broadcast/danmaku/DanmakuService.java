@@ -0,0 +1,181 @@
+package com.live.broadcast.danmaku;
+
+import com.live.broadcast.model.LiveUser;
+import com.live.broadcast.model.Message;
+import com.live.broadcast.stream.StreamManager;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 弹幕服务 - 单例模式
+ * 弹幕按发送时直播流的媒体时间打点，追加到直播间的分段存储中；分段文件由单独的写线程落盘，
+ * 录播回放时按时间范围查询
+ */
+public class DanmakuService {
+    private static final Logger logger = LoggerFactory.getLogger(DanmakuService.class);
+    private static volatile DanmakuService instance;
+    
+    // 每个分段的最大条数
+    static final int SEGMENT_SIZE = Integer.getInteger("live.danmaku.segmentSize", 4096);
+    
+    // 分段未写满时的最长封存间隔
+    private static final long SEGMENT_MILLIS = TimeUnit.SECONDS.toMillis(
+            Integer.getInteger("live.danmaku.segmentSeconds", 60));
+    
+    // 单次查询返回的最大条数
+    public static final int MAX_QUERY_SIZE = 5000;
+    
+    private static final Path ROOT_DIRECTORY = Paths.get("danmaku");
+    
+    // 直播间弹幕存储 roomId -> DanmakuStore
+    private final Map<String, DanmakuStore> stores = new ConcurrentHashMap<>();
+    
+    private final ScheduledExecutorService writer =
+            Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("danmaku-writer", true));
+    
+    private final LongAdder publishedDanmaku = new LongAdder();
+    private final LongAdder writtenSegments = new LongAdder();
+    private final LongAdder writtenBytes = new LongAdder();
+    private final LongAdder failedWrites = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    
+    private DanmakuService() {
+        writer.scheduleWithFixedDelay(this::sealExpired, 1, 1, TimeUnit.SECONDS);
+    }
+    
+    public static DanmakuService getInstance() {
+        if (instance == null) {
+            synchronized (DanmakuService.class) {
+                if (instance == null) {
+                    instance = new DanmakuService();
+                }
+            }
+        }
+        return instance;
+    }
+    
+    /**
+     * 记录一条弹幕并生成下发给观众的消息
+     *
+     * @return 直播间没有在推流时返回null
+     */
+    public Message publish(String roomId, LiveUser user, String content) {
+        StreamManager.StreamInfo stream = StreamManager.getInstance().getStreamInfo(roomId);
+        if (stream == null) {
+            return null;
+        }
+        
+        long time = System.currentTimeMillis();
+        long mediaTime = stream.getMediaTimeMillis();
+        DanmakuStore store = stores.computeIfAbsent(roomId, k -> new DanmakuStore(ROOT_DIRECTORY.resolve(k)));
+        DanmakuStore.SegmentFile full = store.append(time, mediaTime, user.getUserId(), user.getUsername(), content);
+        if (full != null) {
+            submitWrite(full);
+        }
+        publishedDanmaku.increment();
+        
+        Message message = new Message("danmaku", content, roomId);
+        message.setUserId(user.getUserId());
+        message.setUsername(user.getUsername());
+        message.setTimestamp(time);
+        message.setData(Collections.singletonMap("mediaTime", mediaTime));
+        return message;
+    }
+    
+    /**
+     * 按时间范围查询弹幕，需要读文件，不能在事件循环中调用
+     *
+     * @param from 起始时间（毫秒时间戳，包含）
+     * @param to   结束时间（毫秒时间戳，不包含）
+     */
+    public List<Danmaku> query(String roomId, long from, long to, int limit) throws IOException {
+        queries.increment();
+        Path directory = ROOT_DIRECTORY.resolve(roomId).normalize();
+        DanmakuStore store = stores.get(roomId);
+        if (store == null) {
+            // 不为没有弹幕的直播间创建存储，避免任意roomId的查询占用内存
+            if (!directory.startsWith(ROOT_DIRECTORY) || !Files.isDirectory(directory)) {
+                return Collections.emptyList();
+            }
+            store = stores.computeIfAbsent(roomId, k -> new DanmakuStore(directory));
+        }
+        return store.query(from, to, Math.max(1, Math.min(limit, MAX_QUERY_SIZE)));
+    }
+    
+    private void sealExpired() {
+        for (DanmakuStore store : stores.values()) {
+            DanmakuStore.SegmentFile file = store.sealIfOlderThan(SEGMENT_MILLIS);
+            if (file != null) {
+                write(file);
+            }
+        }
+    }
+    
+    private void submitWrite(DanmakuStore.SegmentFile file) {
+        try {
+            writer.execute(() -> write(file));
+        } catch (RejectedExecutionException e) {
+            // 服务已关闭，直接在当前线程写入
+            write(file);
+        }
+    }
+    
+    private void write(DanmakuStore.SegmentFile file) {
+        try {
+            writtenBytes.add(file.write());
+            writtenSegments.increment();
+            logger.debug("写入弹幕分段: {}, {} 条", file.getPath(), file.getCount());
+        } catch (IOException e) {
+            failedWrites.increment();
+            logger.error("写入弹幕分段失败: {}", file.getPath(), e);
+        }
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rooms", stores.size());
+        stats.put("publishedDanmaku", publishedDanmaku.sum());
+        stats.put("writtenSegments", writtenSegments.sum());
+        stats.put("writtenBytes", writtenBytes.sum());
+        stats.put("failedWrites", failedWrites.sum());
+        stats.put("queries", queries.sum());
+        return stats;
+    }
+    
+    /**
+     * 停止写线程，并把所有未封存的弹幕写入文件
+     */
+    public void shutdown() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (DanmakuStore store : stores.values()) {
+            DanmakuStore.SegmentFile file = store.sealIfOlderThan(0);
+            if (file != null) {
+                write(file);
+            }
+        }
+    }
+}
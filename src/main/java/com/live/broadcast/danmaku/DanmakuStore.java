@@ -0,0 +1,229 @@
+package com.live.broadcast.danmaku;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 单个直播间的弹幕存储 - 只追加，按时间分段
+ * 当前分段在内存中追加，写满或超时后封存并写入 danmaku/{roomId}/{首条时间}_{末条时间}_{条数}.dms；
+ * 封存的分段在写入完成前一直保留在内存中，写入后只保留软引用作为解码缓存
+ */
+final class DanmakuStore {
+    private static final Logger logger = LoggerFactory.getLogger(DanmakuStore.class);
+    
+    private static final String SUFFIX = ".dms";
+    
+    private final Path directory;
+    
+    // 已封存的分段，按时间顺序排列
+    private final List<SegmentFile> sealed = new CopyOnWriteArrayList<>();
+    
+    // 当前分段，访问时需持有store的锁
+    private DanmakuSegment active;
+    private long activeCreatedMillis;
+    private long lastTime;
+    
+    // 是否已加载历史分段文件
+    private volatile boolean loaded;
+    
+    DanmakuStore(Path directory) {
+        this.directory = directory;
+    }
+    
+    /**
+     * 追加一条弹幕
+     *
+     * @return 当前分段已满时返回封存的分段，需要调用方写入
+     */
+    synchronized SegmentFile append(long time, long mediaTime, String userId, String username, String content) {
+        // 系统时间回拨时沿用上一条的时间，保证分段内时间非递减
+        time = Math.max(time, lastTime);
+        lastTime = time;
+        
+        if (active == null) {
+            active = new DanmakuSegment(64);
+            activeCreatedMillis = System.currentTimeMillis();
+        }
+        active.append(time, mediaTime, userId, username, content);
+        return active.size() >= DanmakuService.SEGMENT_SIZE ? seal() : null;
+    }
+    
+    /**
+     * 封存已超时的当前分段
+     *
+     * @return 没有需要封存的分段时返回null
+     */
+    synchronized SegmentFile sealIfOlderThan(long maxAgeMillis) {
+        if (active == null || System.currentTimeMillis() - activeCreatedMillis < maxAgeMillis) {
+            return null;
+        }
+        return seal();
+    }
+    
+    private SegmentFile seal() {
+        SegmentFile file = new SegmentFile(directory.resolve(
+                active.firstTime() + "_" + active.lastTime() + "_" + active.size() + SUFFIX), active);
+        sealed.add(file);
+        active = null;
+        return file;
+    }
+    
+    /**
+     * 查询时间在[from, to)内的弹幕，需要读文件，不能在事件循环中调用
+     */
+    List<Danmaku> query(long from, long to, int limit) throws IOException {
+        loadExisting();
+        
+        List<Danmaku> result = new ArrayList<>();
+        for (SegmentFile file : sealed) {
+            if (result.size() >= limit) {
+                return result;
+            }
+            if (file.lastTime >= from && file.firstTime < to) {
+                file.load().collect(from, to, limit, result);
+            }
+        }
+        synchronized (this) {
+            if (active != null && result.size() < limit) {
+                active.collect(from, to, limit, result);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 首次查询时加载目录中已有的分段文件
+     */
+    private void loadExisting() throws IOException {
+        if (loaded) {
+            return;
+        }
+        synchronized (sealed) {
+            if (loaded) {
+                return;
+            }
+            if (Files.isDirectory(directory)) {
+                Set<Path> known = new HashSet<>();
+                sealed.forEach(file -> known.add(file.path));
+                
+                List<SegmentFile> existing = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                    for (Path path : stream) {
+                        SegmentFile file = SegmentFile.parse(path);
+                        if (file != null && !known.contains(path)) {
+                            existing.add(file);
+                        }
+                    }
+                }
+                if (!existing.isEmpty()) {
+                    // 本次运行封存的分段都晚于已有文件
+                    existing.sort(Comparator.comparingLong(file -> file.firstTime));
+                    sealed.addAll(0, existing);
+                }
+            }
+            loaded = true;
+        }
+    }
+    
+    /**
+     * 已封存的分段
+     */
+    static final class SegmentFile {
+        private final Path path;
+        private final long firstTime;
+        private final long lastTime;
+        private final int count;
+        
+        // 写入完成前持有的分段
+        private volatile DanmakuSegment pending;
+        
+        // 解码缓存，内存紧张时可被回收
+        private volatile SoftReference<DanmakuSegment> cache;
+        
+        private SegmentFile(Path path, long firstTime, long lastTime, int count) {
+            this.path = path;
+            this.firstTime = firstTime;
+            this.lastTime = lastTime;
+            this.count = count;
+        }
+        
+        private SegmentFile(Path path, DanmakuSegment segment) {
+            this(path, segment.firstTime(), segment.lastTime(), segment.size());
+            this.pending = segment;
+        }
+        
+        /**
+         * 从文件名解析分段信息，文件名不符合格式时返回null
+         */
+        static SegmentFile parse(Path path) {
+            String name = path.getFileName().toString();
+            String[] parts = name.substring(0, name.length() - SUFFIX.length()).split("_");
+            if (parts.length != 3) {
+                return null;
+            }
+            try {
+                return new SegmentFile(path, Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                        Integer.parseInt(parts[2]));
+            } catch (NumberFormatException e) {
+                logger.warn("忽略无法识别的弹幕分段文件: {}", path);
+                return null;
+            }
+        }
+        
+        /**
+         * 写入文件，先写临时文件再原子替换
+         *
+         * @return 写入的字节数
+         */
+        int write() throws IOException {
+            DanmakuSegment segment = pending;
+            if (segment == null) {
+                return 0;
+            }
+            byte[] bytes = segment.encode();
+            Files.createDirectories(path.getParent());
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            
+            cache = new SoftReference<>(segment);
+            pending = null;
+            return bytes.length;
+        }
+        
+        DanmakuSegment load() throws IOException {
+            DanmakuSegment segment = pending;
+            if (segment != null) {
+                return segment;
+            }
+            SoftReference<DanmakuSegment> ref = cache;
+            segment = ref != null ? ref.get() : null;
+            if (segment == null) {
+                segment = DanmakuSegment.decode(Files.readAllBytes(path));
+                cache = new SoftReference<>(segment);
+            }
+            return segment;
+        }
+        
+        int getCount() {
+            return count;
+        }
+        
+        Path getPath() {
+            return path;
+        }
+    }
+}
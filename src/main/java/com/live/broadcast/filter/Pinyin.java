@@ -0,0 +1,63 @@
+package com.live.broadcast.filter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 汉字到不带声调拼音的查表，用于识别汉字和拼音混写的敏感词
+ * 只覆盖CJK统一汉字基本区，多音字只取最常用的读音；拼音表从类路径的pinyin.txt加载，之后只读
+ */
+public final class Pinyin {
+    private static final Logger logger = LoggerFactory.getLogger(Pinyin.class);
+    
+    private static final String RESOURCE = "/pinyin.txt";
+    
+    private static final char FIRST = '一';
+    private static final char LAST = '龥';
+    
+    // 下标为 字符 - FIRST，没有拼音的字符为null；同一拼音的字符共用一个字符串
+    private static final String[] TABLE = load();
+    
+    private Pinyin() {}
+    
+    /**
+     * 汉字的拼音（小写字母，ü写作v），不是汉字或没有收录时返回null
+     */
+    public static String of(char c) {
+        return c >= FIRST && c <= LAST ? TABLE[c - FIRST] : null;
+    }
+    
+    private static String[] load() {
+        String[] table = new String[LAST - FIRST + 1];
+        try (InputStream in = Pinyin.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                logger.warn("未找到拼音表: {}，不识别汉字和拼音混写", RESOURCE);
+                return table;
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (line.startsWith("#") || space <= 0) {
+                    continue;
+                }
+                String syllable = line.substring(0, space);
+                for (int i = space + 1; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    if (c >= FIRST && c <= LAST) {
+                        table[c - FIRST] = syllable;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("加载拼音表失败，不识别汉字和拼音混写", e);
+        }
+        return table;
+    }
+}
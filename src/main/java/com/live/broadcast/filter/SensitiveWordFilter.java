@@ -0,0 +1,206 @@
+package com.live.broadcast.filter;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 聊天敏感词过滤器 - 单例模式
+ * 词典编译为WordMatcher后通过AtomicReference整体替换，替换过程不影响正在进行的过滤；
+ * 配置了外部词典文件时定时检查修改时间，文件变化后在后台线程重新编译
+ */
+public class SensitiveWordFilter {
+    private static final Logger logger = LoggerFactory.getLogger(SensitiveWordFilter.class);
+    private static volatile SensitiveWordFilter instance;
+    
+    // 内置词典，未配置外部词典文件时使用
+    private static final String BUILTIN_DICTIONARY = "/sensitive-words.txt";
+    
+    private static final char MASK_CHAR = '*';
+    
+    // 外部词典文件，每行一个词，#开头为注释
+    private static final String DICTIONARY_PATH = System.getProperty("live.chat.filter.dict");
+    
+    // 命中敏感词时的处理方式：mask或reject
+    private static final Policy POLICY = Policy.valueOf(
+            System.getProperty("live.chat.filter.policy", "mask").toUpperCase(Locale.ROOT));
+    
+    // 外部词典文件的检查周期
+    private static final int RELOAD_SECONDS = Integer.getInteger("live.chat.filter.reloadSeconds", 30);
+    
+    /**
+     * 命中敏感词时的处理方式
+     */
+    public enum Policy {
+        // 敏感词替换为*后照常广播
+        MASK,
+        // 整条消息拒绝，返回错误
+        REJECT
+    }
+    
+    private final AtomicReference<WordMatcher> matcher = new AtomicReference<>(WordMatcher.empty());
+    private ScheduledExecutorService reloader;
+    private volatile long dictionaryModified;
+    private volatile long lastBuildMillis;
+    
+    private final LongAdder checkedMessages = new LongAdder();
+    private final LongAdder maskedMessages = new LongAdder();
+    private final LongAdder rejectedMessages = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+    
+    private SensitiveWordFilter() {
+        reload();
+        
+        if (DICTIONARY_PATH != null && RELOAD_SECONDS > 0) {
+            reloader = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("word-filter-reload", true));
+            reloader.scheduleWithFixedDelay(this::reloadIfModified, RELOAD_SECONDS, RELOAD_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+    
+    public static SensitiveWordFilter getInstance() {
+        if (instance == null) {
+            synchronized (SensitiveWordFilter.class) {
+                if (instance == null) {
+                    instance = new SensitiveWordFilter();
+                }
+            }
+        }
+        return instance;
+    }
+    
+    /**
+     * 过滤聊天内容
+     *
+     * @return 没有敏感词时返回原字符串；按策略返回掩码后的内容，拒绝时返回null
+     */
+    public String filter(String content) {
+        checkedMessages.increment();
+        WordMatcher current = matcher.get();
+        
+        if (POLICY == Policy.REJECT) {
+            if (current.findFirst(content) < 0) {
+                return content;
+            }
+            rejectedMessages.increment();
+            return null;
+        }
+        
+        String masked = current.mask(content, MASK_CHAR);
+        if (masked != content) {
+            maskedMessages.increment();
+        }
+        return masked;
+    }
+    
+    /**
+     * 用给定的词条替换当前词典
+     */
+    public void update(Collection<String> words) {
+        long start = System.nanoTime();
+        WordMatcher compiled = WordMatcher.compile(words);
+        lastBuildMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        matcher.set(compiled);
+        reloads.increment();
+        logger.info("敏感词词典已更新: {} 个词, {} 个状态, 编译耗时 {}ms",
+                compiled.getWordCount(), compiled.getStateCount(), lastBuildMillis);
+    }
+    
+    /**
+     * 重新加载词典，加载失败时保留当前词典
+     */
+    public synchronized void reload() {
+        try {
+            if (DICTIONARY_PATH != null) {
+                Path path = Paths.get(DICTIONARY_PATH);
+                long modified = Files.getLastModifiedTime(path).toMillis();
+                try (InputStream in = Files.newInputStream(path)) {
+                    update(readWords(in));
+                }
+                dictionaryModified = modified;
+            } else {
+                try (InputStream in = SensitiveWordFilter.class.getResourceAsStream(BUILTIN_DICTIONARY)) {
+                    if (in == null) {
+                        logger.warn("未找到内置敏感词词典: {}", BUILTIN_DICTIONARY);
+                        return;
+                    }
+                    update(readWords(in));
+                }
+            }
+        } catch (IOException e) {
+            logger.error("加载敏感词词典失败: {}", DICTIONARY_PATH, e);
+        }
+    }
+    
+    private void reloadIfModified() {
+        try {
+            long modified = Files.getLastModifiedTime(Paths.get(DICTIONARY_PATH)).toMillis();
+            if (modified != dictionaryModified) {
+                reload();
+            }
+        } catch (IOException e) {
+            logger.warn("检查敏感词词典失败: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("重新加载敏感词词典失败", e);
+        }
+    }
+    
+    private static List<String> readWords(InputStream in) throws IOException {
+        List<String> words = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String word = line.trim();
+            if (!word.isEmpty() && !word.startsWith("#")) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        WordMatcher current = matcher.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("policy", POLICY.name().toLowerCase(Locale.ROOT));
+        stats.put("dictionary", DICTIONARY_PATH != null ? DICTIONARY_PATH : "builtin");
+        stats.put("words", current.getWordCount());
+        stats.put("states", current.getStateCount());
+        stats.put("lastBuildMs", lastBuildMillis);
+        stats.put("reloads", reloads.sum());
+        stats.put("checkedMessages", checkedMessages.sum());
+        stats.put("maskedMessages", maskedMessages.sum());
+        stats.put("rejectedMessages", rejectedMessages.sum());
+        return stats;
+    }
+    
+    /**
+     * 停止词典文件检查
+     */
+    public void shutdown() {
+        if (reloader != null) {
+            reloader.shutdown();
+        }
+    }
+}
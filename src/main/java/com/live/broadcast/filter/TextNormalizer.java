@@ -0,0 +1,57 @@
+package com.live.broadcast.filter;
+
+/**
+ * 敏感词匹配前的字符归一化
+ * 全角转半角、大写转小写，空白和常见分隔符视为可忽略字符；通过查表完成，不分配内存
+ */
+public final class TextNormalizer {
+    // 可忽略字符的归一化结果
+    public static final char IGNORED = 0;
+    
+    // 插在敏感词中间用来规避过滤的分隔符
+    private static final String SEPARATORS = "*.-_~|/\\·,，。、'\"`^";
+    
+    private static final char[] TABLE = new char[Character.MAX_VALUE + 1];
+    
+    static {
+        for (int i = 0; i <= Character.MAX_VALUE; i++) {
+            char c = (char) i;
+            // 全角ASCII字符和全角空格
+            if (c >= '！' && c <= '～') {
+                c = (char) (c - 0xFEE0);
+            } else if (c == '　') {
+                c = ' ';
+            }
+            
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c) || Character.isISOControl(c)
+                    || SEPARATORS.indexOf(c) >= 0) {
+                TABLE[i] = IGNORED;
+            } else {
+                TABLE[i] = Character.toLowerCase(c);
+            }
+        }
+    }
+    
+    private TextNormalizer() {}
+    
+    /**
+     * 归一化单个字符，可忽略字符返回IGNORED
+     */
+    public static char normalize(char c) {
+        return TABLE[c];
+    }
+    
+    /**
+     * 归一化词典条目，去掉可忽略字符
+     */
+    public static String normalize(String word) {
+        StringBuilder sb = new StringBuilder(word.length());
+        for (int i = 0; i < word.length(); i++) {
+            char c = TABLE[word.charAt(i)];
+            if (c != IGNORED) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
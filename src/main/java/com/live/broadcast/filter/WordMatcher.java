@@ -0,0 +1,530 @@
+package com.live.broadcast.filter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * 编译后的敏感词自动机 - 基于双数组Trie的Aho–Corasick
+ * 状态s经字符编号c的转移为 t = base[s] + c，当 check[t] == s 时转移存在；失败链接和匹配长度各用一个数组保存。
+ * 字符编号只分配给词典中出现过的字符，按出现次数从高到低编号，使双数组更紧凑；不在词典中的字符直接回到根状态。
+ * 以字母或数字开头（结尾）的匹配要求原文中紧挨着的前（后）一个字符不是字母或数字，避免拼音词条匹配到普通英文单词内部。
+ * 含有汉字的词条另外按拼音折叠编译一个自动机，只在消息同时含有汉字和字母时扫描，只接受同样混写的匹配（如"傻bi"），
+ * 一个汉字的拼音整体作为一个单位，匹配必须从单位开头开始、在单位末尾结束；纯汉字的同音字和纯拼音写法不经过它匹配。
+ * 构建完成后只读，可被任意线程并发使用；扫描过程只做数组访问，不分配内存
+ */
+public final class WordMatcher {
+    private static final int ROOT = 0;
+    
+    // 按归一化后的字符匹配
+    private final Automaton exact;
+    
+    // 汉字按拼音折叠后匹配，只包含含有汉字的词条
+    private final Automaton folded;
+    
+    private WordMatcher(Automaton exact, Automaton folded) {
+        this.exact = exact;
+        this.folded = folded;
+    }
+    
+    /**
+     * 空词典，不匹配任何内容
+     */
+    public static WordMatcher empty() {
+        return compile(Collections.emptyList());
+    }
+    
+    /**
+     * 编译词典，词条会先归一化；构建较慢，应在事件循环之外调用
+     */
+    public static WordMatcher compile(Collection<String> words) {
+        List<String> normalizedWords = new ArrayList<>(words.size());
+        List<String> foldedWords = new ArrayList<>();
+        for (String word : words) {
+            String normalized = TextNormalizer.normalize(word);
+            if (normalized.isEmpty()) {
+                continue;
+            }
+            normalizedWords.add(normalized);
+            String foldedWord = fold(normalized);
+            if (foldedWord != null) {
+                foldedWords.add(foldedWord);
+            }
+        }
+        return new WordMatcher(new Builder().build(normalizedWords, false), new Builder().build(foldedWords, true));
+    }
+    
+    /**
+     * 把词条中的汉字替换为拼音，不含汉字时返回null
+     */
+    private static String fold(String word) {
+        StringBuilder sb = null;
+        for (int i = 0; i < word.length(); i++) {
+            String syllable = Pinyin.of(word.charAt(i));
+            if (syllable != null && sb == null) {
+                sb = new StringBuilder(word.length() * 4).append(word, 0, i);
+            }
+            if (sb != null) {
+                sb.append(syllable != null ? syllable : String.valueOf(word.charAt(i)));
+            }
+        }
+        return sb != null ? sb.toString() : null;
+    }
+    
+    /**
+     * 查找第一个敏感词
+     *
+     * @return 敏感词最后一个字符在原文中的下标，没有匹配时返回-1
+     */
+    public int findFirst(CharSequence text) {
+        int end = exact.findFirst(text);
+        if (!isMixed(text)) {
+            return end;
+        }
+        int foldedEnd = folded.findFirst(text);
+        return end < 0 || foldedEnd >= 0 && foldedEnd < end ? foldedEnd : end;
+    }
+    
+    /**
+     * 把所有敏感词替换为掩码字符
+     *
+     * @return 没有匹配时返回原字符串
+     */
+    public String mask(String text, char maskChar) {
+        char[] masked = exact.mask(text, maskChar, null);
+        if (isMixed(text)) {
+            masked = folded.mask(text, maskChar, masked);
+        }
+        return masked != null ? new String(masked) : text;
+    }
+    
+    /**
+     * 原文是否同时含有收录了拼音的汉字和字母
+     */
+    private static boolean isMixed(CharSequence text) {
+        boolean han = false;
+        boolean letter = false;
+        for (int i = 0; i < text.length() && !(han && letter); i++) {
+            char c = TextNormalizer.normalize(text.charAt(i));
+            if (c >= 'a' && c <= 'z') {
+                letter = true;
+            } else if (c != TextNormalizer.IGNORED && Pinyin.of(c) != null) {
+                han = true;
+            }
+        }
+        return han && letter;
+    }
+    
+    private static boolean isWordChar(CharSequence text, int index) {
+        return isWordChar(TextNormalizer.normalize(text.charAt(index)));
+    }
+    
+    private static boolean isWordChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= '0' && c <= '9';
+    }
+    
+    /**
+     * 去重后的词条数
+     */
+    public int getWordCount() {
+        return exact.wordCount;
+    }
+    
+    public int getStateCount() {
+        return exact.stateCount + folded.stateCount;
+    }
+    
+    /**
+     * 一个编译好的自动机，折叠的自动机把原文中的汉字按拼音逐个字母送入
+     */
+    private static final class Automaton {
+        // 字符 -> 编号，0表示词典中没有该字符
+        private final char[] codes;
+        
+        private final int[] base;
+        private final int[] check;
+        private final int[] fail;
+        
+        // 在该状态结束的最长敏感词长度（送入自动机的字符数），0表示没有匹配
+        private final int[] matchLength;
+        
+        private final boolean folded;
+        private final int wordCount;
+        private final int stateCount;
+        
+        Automaton(char[] codes, int[] base, int[] check, int[] fail, int[] matchLength,
+                  boolean folded, int wordCount, int stateCount) {
+            this.codes = codes;
+            this.base = base;
+            this.check = check;
+            this.fail = fail;
+            this.matchLength = matchLength;
+            this.folded = folded;
+            this.wordCount = wordCount;
+            this.stateCount = stateCount;
+        }
+        
+        int findFirst(CharSequence text) {
+            int state = ROOT;
+            // 已送入的字符数，以及最近一个字母、汉字送入后的位置，用于检查匹配是否混写
+            int pos = 0;
+            int lastLetterEnd = -1;
+            int lastHanEnd = -1;
+            for (int i = 0; i < text.length(); i++) {
+                char c = TextNormalizer.normalize(text.charAt(i));
+                if (c == TextNormalizer.IGNORED) {
+                    continue;
+                }
+                String syllable = folded ? Pinyin.of(c) : null;
+                if (syllable != null) {
+                    state = feed(state, syllable);
+                    pos += syllable.length();
+                    lastHanEnd = pos;
+                } else {
+                    state = next(state, c);
+                    pos++;
+                    if (c >= 'a' && c <= 'z') {
+                        lastLetterEnd = pos;
+                    }
+                }
+                if (matchLength[state] > 0 && acceptedLength(text, state, i, pos, lastLetterEnd, lastHanEnd) > 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        
+        /**
+         * 在masked上掩盖所有匹配，masked为null时在第一次匹配时复制原文
+         */
+        char[] mask(String text, char maskChar, char[] masked) {
+            int state = ROOT;
+            int pos = 0;
+            int lastLetterEnd = -1;
+            int lastHanEnd = -1;
+            for (int i = 0; i < text.length(); i++) {
+                char c = TextNormalizer.normalize(text.charAt(i));
+                if (c == TextNormalizer.IGNORED) {
+                    continue;
+                }
+                String syllable = folded ? Pinyin.of(c) : null;
+                if (syllable != null) {
+                    state = feed(state, syllable);
+                    pos += syllable.length();
+                    lastHanEnd = pos;
+                } else {
+                    state = next(state, c);
+                    pos++;
+                    if (c >= 'a' && c <= 'z') {
+                        lastLetterEnd = pos;
+                    }
+                }
+                if (matchLength[state] == 0) {
+                    continue;
+                }
+                int length = acceptedLength(text, state, i, pos, lastLetterEnd, lastHanEnd);
+                if (length == 0) {
+                    continue;
+                }
+                
+                if (masked == null) {
+                    masked = text.toCharArray();
+                }
+                // 向前掩盖共length个送入字符的原文，中间夹杂的分隔符一并掩盖
+                for (int j = i; j >= 0 && length > 0; j--) {
+                    char d = TextNormalizer.normalize(text.charAt(j));
+                    if (d != TextNormalizer.IGNORED) {
+                        length -= unitLength(d);
+                    }
+                    masked[j] = maskChar;
+                }
+            }
+            return masked;
+        }
+        
+        /**
+         * 在原文下标end结束、满足单词边界的最长匹配长度，没有时返回0
+         * 最长的匹配不满足边界时沿失败链接尝试更短的匹配；折叠的自动机还要求匹配对齐汉字并且是混写，
+         * 匹配覆盖送入位置[pos - length, pos)，其中有字母（汉字）当且仅当最近一个字母（汉字）在匹配开始之后结束
+         */
+        private int acceptedLength(CharSequence text, int state, int end, int pos, int lastLetterEnd, int lastHanEnd) {
+            // 所有候选都在end结束，结尾不满足边界时都不满足
+            if (end + 1 < text.length() && isWordChar(text, end) && isWordChar(text, end + 1)) {
+                return 0;
+            }
+            // 非终止状态的匹配长度继承自失败链接，相同长度只检查一次
+            for (int s = state, previous = 0; s != ROOT && matchLength[s] > 0; s = fail[s]) {
+                int length = matchLength[s];
+                if (length == previous) {
+                    continue;
+                }
+                previous = length;
+                if (folded && (lastLetterEnd <= pos - length || lastHanEnd <= pos - length)) {
+                    continue;
+                }
+                int start = matchStart(text, end, length);
+                if (start >= 0 && (start == 0 || !isWordChar(text, start) || !isWordChar(text, start - 1))) {
+                    return length;
+                }
+            }
+            return 0;
+        }
+        
+        /**
+         * 从end向前数共length个送入字符的原文，返回匹配在原文中的起始下标；从某个汉字的拼音中间开始时返回-1
+         */
+        private int matchStart(CharSequence text, int end, int length) {
+            int j = end;
+            while (true) {
+                char c = TextNormalizer.normalize(text.charAt(j));
+                if (c != TextNormalizer.IGNORED) {
+                    length -= unitLength(c);
+                    if (length <= 0) {
+                        return length == 0 ? j : -1;
+                    }
+                }
+                j--;
+            }
+        }
+        
+        /**
+         * 逐个字母送入一个汉字的拼音
+         */
+        private int feed(int state, String syllable) {
+            for (int i = 0; i < syllable.length(); i++) {
+                state = next(state, syllable.charAt(i));
+            }
+            return state;
+        }
+        
+        private int unitLength(char c) {
+            String syllable = folded ? Pinyin.of(c) : null;
+            return syllable != null ? syllable.length() : 1;
+        }
+        
+        private int next(int state, char c) {
+            int code = codes[c];
+            if (code == 0) {
+                return ROOT;
+            }
+            while (true) {
+                int t = base[state] + code;
+                if (t < check.length && check[t] == state) {
+                    return t;
+                }
+                if (state == ROOT) {
+                    return ROOT;
+                }
+                state = fail[state];
+            }
+        }
+    }
+    
+    /**
+     * 构建器：先建普通Trie，再按层次顺序为每个节点寻找可容纳全部子节点的base，最后计算失败链接
+     */
+    private static final class Builder {
+        private int[] base = new int[1 << 16];
+        private int[] check = new int[1 << 16];
+        private int[] nextFree = new int[1 << 16];
+        private int size = 1;
+        
+        /**
+         * 编译已归一化（或折叠）的词条
+         */
+        Automaton build(List<String> normalizedWords, boolean folded) {
+            char[] codes = assignCodes(normalizedWords);
+            
+            Node root = new Node();
+            int wordCount = 0;
+            for (String word : normalizedWords) {
+                Node node = root;
+                for (int i = 0; i < word.length(); i++) {
+                    node = node.children.computeIfAbsent((int) codes[word.charAt(i)], k -> new Node());
+                }
+                if (!node.terminal) {
+                    node.terminal = true;
+                    wordCount++;
+                }
+            }
+            
+            Arrays.fill(check, -1);
+            for (int i = 0; i < nextFree.length; i++) {
+                nextFree[i] = i;
+            }
+            occupy(ROOT, ROOT);
+            root.index = ROOT;
+            
+            // 按层次顺序分配双数组位置
+            Queue<Node> queue = new ArrayDeque<>();
+            queue.add(root);
+            int stateCount = 1;
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                if (node.children.isEmpty()) {
+                    continue;
+                }
+                int b = findBase(node.children);
+                base[node.index] = b;
+                for (Map.Entry<Integer, Node> entry : node.children.entrySet()) {
+                    Node child = entry.getValue();
+                    child.index = b + entry.getKey();
+                    child.depth = node.depth + 1;
+                    occupy(child.index, node.index);
+                    size = Math.max(size, child.index + 1);
+                    queue.add(child);
+                    stateCount++;
+                }
+            }
+            
+            int[] fail = new int[size];
+            int[] matchLength = new int[size];
+            int[] finalBase = Arrays.copyOf(base, size);
+            int[] finalCheck = Arrays.copyOf(check, size);
+            
+            // 按层次顺序计算失败链接，父节点的失败链接总是先算好
+            queue.add(root);
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                for (Map.Entry<Integer, Node> entry : node.children.entrySet()) {
+                    Node child = entry.getValue();
+                    int code = entry.getKey();
+                    int target = ROOT;
+                    if (node.index != ROOT) {
+                        int f = fail[node.index];
+                        while (true) {
+                            int t = finalBase[f] + code;
+                            if (t < size && finalCheck[t] == f) {
+                                target = t;
+                                break;
+                            }
+                            if (f == ROOT) {
+                                break;
+                            }
+                            f = fail[f];
+                        }
+                    }
+                    fail[child.index] = target;
+                    matchLength[child.index] = child.terminal ? child.depth : matchLength[target];
+                    queue.add(child);
+                }
+            }
+            
+            return new Automaton(codes, finalBase, finalCheck, fail, matchLength, folded, wordCount, stateCount);
+        }
+        
+        /**
+         * 按字符出现次数从高到低分配编号，从1开始
+         */
+        private static char[] assignCodes(List<String> words) {
+            int[] counts = new int[Character.MAX_VALUE + 1];
+            for (String word : words) {
+                for (int i = 0; i < word.length(); i++) {
+                    counts[word.charAt(i)]++;
+                }
+            }
+            
+            List<Character> used = new ArrayList<>();
+            for (int c = 0; c <= Character.MAX_VALUE; c++) {
+                if (counts[c] > 0) {
+                    used.add((char) c);
+                }
+            }
+            used.sort((a, b) -> Integer.compare(counts[b], counts[a]));
+            
+            char[] codes = new char[Character.MAX_VALUE + 1];
+            for (int i = 0; i < used.size(); i++) {
+                codes[used.get(i)] = (char) (i + 1);
+            }
+            return codes;
+        }
+        
+        /**
+         * 从子节点可用的最小空闲位置开始，寻找所有子节点位置都空闲的base
+         */
+        private int findBase(TreeMap<Integer, Node> children) {
+            int[] childCodes = new int[children.size()];
+            int n = 0;
+            for (int code : children.keySet()) {
+                childCodes[n++] = code;
+            }
+            
+            int firstCode = childCodes[0];
+            int pos = findFree(firstCode + 1);
+            while (true) {
+                int b = pos - firstCode;
+                boolean fits = true;
+                for (int code : childCodes) {
+                    int t = b + code;
+                    ensureCapacity(t + 1);
+                    if (check[t] != -1) {
+                        fits = false;
+                        break;
+                    }
+                }
+                if (fits) {
+                    return b;
+                }
+                pos = findFree(pos + 1);
+            }
+        }
+        
+        /**
+         * 占用一个位置
+         */
+        private void occupy(int index, int parent) {
+            check[index] = parent;
+            nextFree[index] = index + 1;
+        }
+        
+        /**
+         * 查找不小于pos的第一个空闲位置
+         * 已占用位置指向后一个位置，查找时压缩路径，跳过连续占用的区域不需要逐个检查
+         */
+        private int findFree(int pos) {
+            ensureCapacity(pos + 1);
+            int root = pos;
+            while (nextFree[root] != root) {
+                root = nextFree[root];
+                ensureCapacity(root + 1);
+            }
+            while (nextFree[pos] != root) {
+                int next = nextFree[pos];
+                nextFree[pos] = root;
+                pos = next;
+            }
+            return root;
+        }
+        
+        private void ensureCapacity(int required) {
+            if (required <= check.length) {
+                return;
+            }
+            int newLength = Math.max(required, check.length + (check.length >> 1));
+            int oldLength = check.length;
+            base = Arrays.copyOf(base, newLength);
+            check = Arrays.copyOf(check, newLength);
+            nextFree = Arrays.copyOf(nextFree, newLength);
+            Arrays.fill(check, oldLength, newLength, -1);
+            for (int i = oldLength; i < newLength; i++) {
+                nextFree[i] = i;
+            }
+        }
+    }
+    
+    /**
+     * 构建期间使用的Trie节点
+     */
+    private static final class Node {
+        private final TreeMap<Integer, Node> children = new TreeMap<>();
+        private boolean terminal;
+        private int depth;
+        private int index;
+    }
+}
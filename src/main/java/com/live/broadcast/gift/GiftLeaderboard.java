@@ -0,0 +1,199 @@
+package com.live.broadcast.gift;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个直播间的礼物榜
+ * 送礼时只累加分段计数器（LongAdder），并把贡献有变化的用户放入待刷新队列，不加锁；
+ * 榜单由定时任务单线程刷新。贡献值只增不减，不在榜上的用户只可能挤掉榜尾，因此每次只需检查有变化的用户，
+ * 用大小为K的最小堆维护前K名
+ */
+final class GiftLeaderboard {
+    private static final Comparator<Tally> BY_RANK = Comparator.<Tally>comparingLong(tally -> -tally.rankedValue)
+            .thenComparing(tally -> tally.userId);
+    
+    private final LongAdder totalValue = new LongAdder();
+    private final LongAdder totalGifts = new LongAdder();
+    
+    // 最近一次送礼的时间，用于淘汰长时间没有送礼的榜单
+    private volatile long lastRecordMillis = System.currentTimeMillis();
+    
+    // 用户在本直播间的贡献 userId -> Tally
+    private final Map<String, Tally> tallies = new ConcurrentHashMap<>();
+    
+    // 上次刷新后贡献有变化的用户，每个用户最多入队一次
+    private final Queue<Tally> dirty = new ConcurrentLinkedQueue<>();
+    
+    // 前K名的最小堆，只在刷新线程访问
+    private final Tally[] heap;
+    private int heapSize;
+    
+    // 上次发布的榜单
+    private volatile List<GiftRank> published = Collections.emptyList();
+    
+    GiftLeaderboard(int topK) {
+        this.heap = new Tally[topK];
+    }
+    
+    /**
+     * 记录一次送礼，可在任意线程并发调用
+     */
+    void record(String userId, String username, long value, int count) {
+        Tally tally = tallies.get(userId);
+        if (tally == null) {
+            tally = tallies.computeIfAbsent(userId, Tally::new);
+        }
+        if (!username.equals(tally.username)) {
+            tally.username = username;
+        }
+        tally.value.add(value);
+        totalValue.add(value);
+        totalGifts.add(count);
+        lastRecordMillis = System.currentTimeMillis();
+        
+        if (!tally.dirty.get() && tally.dirty.compareAndSet(false, true)) {
+            dirty.offer(tally);
+        }
+    }
+    
+    /**
+     * 处理贡献有变化的用户，并与上次发布的榜单比较，只能在刷新线程调用
+     *
+     * @return 有变化的名次，榜单没有变化时返回null
+     */
+    List<GiftRank> refresh() {
+        Tally tally;
+        while ((tally = dirty.poll()) != null) {
+            // 先清除标记再读取，读取之后的累加会让用户重新入队
+            tally.dirty.set(false);
+            offer(tally, tally.value.sum());
+        }
+        
+        Tally[] ranked = Arrays.copyOf(heap, heapSize);
+        Arrays.sort(ranked, BY_RANK);
+        List<GiftRank> previous = published;
+        List<GiftRank> current = new ArrayList<>(ranked.length);
+        List<GiftRank> changes = new ArrayList<>();
+        for (int i = 0; i < ranked.length; i++) {
+            GiftRank rank = new GiftRank(i + 1, ranked[i].userId, ranked[i].username, ranked[i].rankedValue);
+            current.add(rank);
+            if (i >= previous.size() || !rank.equals(previous.get(i))) {
+                changes.add(rank);
+            }
+        }
+        if (changes.isEmpty()) {
+            return null;
+        }
+        published = Collections.unmodifiableList(current);
+        return changes;
+    }
+    
+    private void offer(Tally tally, long value) {
+        tally.rankedValue = value;
+        if (tally.heapIndex >= 0) {
+            // 已在榜上，贡献只会变大，向堆底下沉
+            siftDown(tally.heapIndex);
+        } else if (heapSize < heap.length) {
+            heap[heapSize] = tally;
+            tally.heapIndex = heapSize;
+            siftUp(heapSize++);
+        } else if (value > heap[0].rankedValue) {
+            heap[0].heapIndex = -1;
+            heap[0] = tally;
+            tally.heapIndex = 0;
+            siftDown(0);
+        }
+    }
+    
+    private void siftUp(int index) {
+        Tally tally = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].rankedValue <= tally.rankedValue) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(tally, index);
+    }
+    
+    private void siftDown(int index) {
+        Tally tally = heap[index];
+        int half = heapSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < heapSize && heap[right].rankedValue < heap[child].rankedValue) {
+                child = right;
+            }
+            if (tally.rankedValue <= heap[child].rankedValue) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(tally, index);
+    }
+    
+    private void place(Tally tally, int index) {
+        heap[index] = tally;
+        tally.heapIndex = index;
+    }
+    
+    /**
+     * 用户在本直播间的累计贡献
+     */
+    long getContribution(String userId) {
+        Tally tally = tallies.get(userId);
+        return tally != null ? tally.value.sum() : 0;
+    }
+    
+    long getTotalValue() {
+        return totalValue.sum();
+    }
+    
+    long getTotalGifts() {
+        return totalGifts.sum();
+    }
+    
+    int getGifterCount() {
+        return tallies.size();
+    }
+    
+    long getLastRecordMillis() {
+        return lastRecordMillis;
+    }
+    
+    List<GiftRank> getPublished() {
+        return published;
+    }
+    
+    /**
+     * 单个用户的贡献
+     */
+    private static final class Tally {
+        private final String userId;
+        private volatile String username;
+        private final LongAdder value = new LongAdder();
+        private final AtomicBoolean dirty = new AtomicBoolean();
+        
+        // 以下字段只在刷新线程访问
+        private long rankedValue;
+        private int heapIndex = -1;
+        
+        Tally(String userId) {
+            this.userId = userId;
+        }
+    }
+}
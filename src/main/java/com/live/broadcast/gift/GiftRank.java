@@ -0,0 +1,64 @@
+package com.live.broadcast.gift;
+
+import java.util.Objects;
+
+/**
+ * 礼物榜上的一个名次
+ */
+public final class GiftRank {
+    private final int rank;
+    private final String userId;
+    private final String username;
+    private final long value;
+    
+    public GiftRank(int rank, String userId, String username, long value) {
+        this.rank = rank;
+        this.userId = userId;
+        this.username = username;
+        this.value = value;
+    }
+    
+    public int getRank() {
+        return rank;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public long getValue() {
+        return value;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GiftRank)) {
+            return false;
+        }
+        GiftRank other = (GiftRank) o;
+        return rank == other.rank && value == other.value
+                && userId.equals(other.userId) && Objects.equals(username, other.username);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(rank, userId, value);
+    }
+    
+    @Override
+    public String toString() {
+        return "GiftRank{" +
+                "rank=" + rank +
+                ", userId='" + userId + '\'' +
+                ", username='" + username + '\'' +
+                ", value=" + value +
+                '}';
+    }
+}
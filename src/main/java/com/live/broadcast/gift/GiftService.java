@@ -0,0 +1,172 @@
+package com.live.broadcast.gift;
+
+import com.live.broadcast.manager.LiveRoomManager;
+import com.live.broadcast.model.LiveRoom;
+import com.live.broadcast.model.LiveUser;
+import com.live.broadcast.model.Message;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 礼物服务 - 单例模式
+ * 直播间和用户的礼物总额用LongAdder累加，送礼路径上没有锁；直播间礼物榜按周期刷新，
+ * 榜单有变化时向直播间广播一条只包含变化名次的gift_rank消息。
+ * 礼物榜按场次统计，直播结束时清空；本节点没有观众且长时间没有送礼的榜单也会被淘汰
+ */
+public class GiftService {
+    private static volatile GiftService instance;
+    
+    // 礼物榜名次数
+    public static final int TOP_K = Integer.getInteger("live.gift.topK", 10);
+    
+    // 礼物榜刷新间隔（毫秒）
+    public static final int RANK_INTERVAL_MILLIS = Integer.getInteger("live.gift.rankIntervalMs", 1000);
+    
+    // 本节点没有观众的直播间，超过该时间没有送礼则淘汰礼物榜（毫秒）
+    public static final int IDLE_MILLIS = Integer.getInteger("live.gift.idleMs", 30 * 60 * 1000);
+    
+    // 单次送礼的最大数量
+    public static final int MAX_COUNT = 9999;
+    
+    // 直播间礼物榜 roomId -> GiftLeaderboard
+    private final Map<String, GiftLeaderboard> leaderboards = new ConcurrentHashMap<>();
+    
+    // 用户在所有直播间的送礼总额 userId -> 金币数
+    private final Map<String, LongAdder> userTotals = new ConcurrentHashMap<>();
+    
+    private final LongAdder sentGifts = new LongAdder();
+    private final LongAdder sentValue = new LongAdder();
+    private final LongAdder rankUpdates = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    
+    private GiftService() {
+        LiveRoomManager.getInstance().getScheduler().scheduleWithFixedDelay(this::publishRanks,
+                RANK_INTERVAL_MILLIS, RANK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+    
+    public static GiftService getInstance() {
+        if (instance == null) {
+            synchronized (GiftService.class) {
+                if (instance == null) {
+                    instance = new GiftService();
+                }
+            }
+        }
+        return instance;
+    }
+    
+    /**
+     * 记录一次送礼并生成下发给观众的消息，可在任意线程并发调用
+     */
+    public Message send(String roomId, LiveUser user, GiftType type, int count) {
+        long value = (long) type.getPrice() * count;
+        
+        GiftLeaderboard leaderboard = leaderboards.get(roomId);
+        if (leaderboard == null) {
+            leaderboard = leaderboards.computeIfAbsent(roomId, k -> new GiftLeaderboard(TOP_K));
+        }
+        leaderboard.record(user.getUserId(), user.getUsername(), value, count);
+        
+        LongAdder userTotal = userTotals.get(user.getUserId());
+        if (userTotal == null) {
+            userTotal = userTotals.computeIfAbsent(user.getUserId(), k -> new LongAdder());
+        }
+        userTotal.add(value);
+        sentGifts.add(count);
+        sentValue.add(value);
+        
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("giftId", type.getId());
+        data.put("giftName", type.getDisplayName());
+        data.put("count", count);
+        data.put("value", value);
+        
+        Message message = new Message("gift", user.getUsername() + " 送出 " + type.getDisplayName() + " x" + count, roomId);
+        message.setUserId(user.getUserId());
+        message.setUsername(user.getUsername());
+        message.setTimestamp(System.currentTimeMillis());
+        message.setData(data);
+        return message;
+    }
+    
+    /**
+     * 直播结束，清空直播间的礼物榜，本节点和其他节点的停播都会调用
+     * 与之并发的送礼可能记在被移除的榜单上，随榜单一起丢弃
+     */
+    public void onLiveStop(String roomId) {
+        if (leaderboards.remove(roomId) != null) {
+            evictions.increment();
+        }
+    }
+    
+    /**
+     * 刷新所有直播间的礼物榜，广播有变化的名次，由定时任务调用
+     * 礼物榜按节点统计，名次只在本节点广播
+     */
+    private void publishRanks() {
+        long now = System.currentTimeMillis();
+        leaderboards.forEach((roomId, leaderboard) -> {
+            List<GiftRank> changes = leaderboard.refresh();
+            if (changes == null) {
+                // 没有收到停播通知的榜单（例如本节点观众已全部离开、取消了订阅）按空闲时间淘汰
+                LiveRoom room = LiveRoomManager.getInstance().getRoom(roomId);
+                if (now - leaderboard.getLastRecordMillis() > IDLE_MILLIS
+                        && (room == null || room.getViewerCount() == 0)
+                        && leaderboards.remove(roomId, leaderboard)) {
+                    evictions.increment();
+                }
+                return;
+            }
+            rankUpdates.increment();
+            
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("totalValue", leaderboard.getTotalValue());
+            data.put("size", leaderboard.getPublished().size());
+            data.put("changes", changes);
+            
+            Message message = new Message("gift_rank", null, roomId);
+            message.setData(data);
+            LiveRoomManager.getInstance().broadcastLocal(roomId, message);
+        });
+    }
+    
+    /**
+     * 获取直播间的礼物统计和最近一次发布的礼物榜
+     *
+     * @param userId 不为空时同时返回该用户的贡献
+     */
+    public Map<String, Object> getRoomStats(String roomId, String userId) {
+        GiftLeaderboard leaderboard = leaderboards.get(roomId);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("roomId", roomId);
+        stats.put("totalValue", leaderboard != null ? leaderboard.getTotalValue() : 0);
+        stats.put("totalGifts", leaderboard != null ? leaderboard.getTotalGifts() : 0);
+        stats.put("gifters", leaderboard != null ? leaderboard.getGifterCount() : 0);
+        stats.put("ranks", leaderboard != null ? leaderboard.getPublished() : List.of());
+        if (userId != null) {
+            LongAdder userTotal = userTotals.get(userId);
+            stats.put("userContribution", leaderboard != null ? leaderboard.getContribution(userId) : 0);
+            stats.put("userTotal", userTotal != null ? userTotal.sum() : 0);
+        }
+        return stats;
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rooms", leaderboards.size());
+        stats.put("gifters", userTotals.size());
+        stats.put("sentGifts", sentGifts.sum());
+        stats.put("sentValue", sentValue.sum());
+        stats.put("rankUpdates", rankUpdates.sum());
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,51 @@
+package com.live.broadcast.gift;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 礼物类型，价值以金币计
+ */
+public enum GiftType {
+    FLOWER("flower", "鲜花", 1),
+    HEART("heart", "爱心", 10),
+    ROCKET("rocket", "火箭", 500),
+    CARNIVAL("carnival", "嘉年华", 3000);
+    
+    private static final Map<String, GiftType> BY_ID = new HashMap<>();
+    
+    static {
+        for (GiftType type : values()) {
+            BY_ID.put(type.id, type);
+        }
+    }
+    
+    private final String id;
+    private final String displayName;
+    private final int price;
+    
+    GiftType(String id, String displayName, int price) {
+        this.id = id;
+        this.displayName = displayName;
+        this.price = price;
+    }
+    
+    /**
+     * 按礼物ID查找，未知ID返回null
+     */
+    public static GiftType of(String id) {
+        return id != null ? BY_ID.get(id) : null;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public String getDisplayName() {
+        return displayName;
+    }
+    
+    public int getPrice() {
+        return price;
+    }
+}
@@ -0,0 +1,153 @@
+package com.live.broadcast.handler;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * 阻塞任务执行器 - 将目录遍历、文件读写等阻塞操作移出Netty事件循环
+ * 线程池和队列都有上限，队列满时拒绝任务，由调用方返回503
+ * 注意：项目基于JDK 11，升级到JDK 21后可换成虚拟线程执行器
+ */
+public class BlockingTaskExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(BlockingTaskExecutor.class);
+    private static volatile BlockingTaskExecutor instance;
+    
+    private static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE_CAPACITY = 256;
+    
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            POOL_SIZE, POOL_SIZE, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+            new DefaultThreadFactory("http-blocking", true),
+            new ThreadPoolExecutor.AbortPolicy());
+    
+    // 路由统计 route -> RouteStats
+    private final Map<String, RouteStats> routeStats = new ConcurrentHashMap<>();
+    
+    private BlockingTaskExecutor() {}
+    
+    public static BlockingTaskExecutor getInstance() {
+        if (instance == null) {
+            synchronized (BlockingTaskExecutor.class) {
+                if (instance == null) {
+                    instance = new BlockingTaskExecutor();
+                }
+            }
+        }
+        return instance;
+    }
+    
+    /**
+     * 提交阻塞任务，完成后在指定的事件循环上回调
+     *
+     * @param route            路由名称，用于统计
+     * @param callbackExecutor 回调执行的事件循环，一般为channel所在的EventLoop
+     * @param task             阻塞任务
+     * @param callback         回调，参数为任务结果和异常（二者只有一个非空）
+     * @return 队列已满被拒绝时返回false
+     */
+    public <T> boolean submit(String route, EventExecutor callbackExecutor,
+                              Callable<T> task, BiConsumer<T, Throwable> callback) {
+        RouteStats stats = routeStats.computeIfAbsent(route, k -> new RouteStats());
+        long submitTime = System.nanoTime();
+        
+        try {
+            executor.execute(() -> {
+                long startTime = System.nanoTime();
+                T result = null;
+                Throwable error = null;
+                try {
+                    result = task.call();
+                } catch (Throwable t) {
+                    error = t;
+                }
+                stats.record(startTime - submitTime, System.nanoTime() - startTime, error != null);
+                
+                T finalResult = result;
+                Throwable finalError = error;
+                try {
+                    callbackExecutor.execute(() -> callback.accept(finalResult, finalError));
+                } catch (RejectedExecutionException e) {
+                    logger.warn("事件循环已关闭，丢弃阻塞任务结果: route={}", route);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            stats.rejected.increment();
+            logger.warn("阻塞任务队列已满，拒绝请求: route={}, 队列长度={}", route, executor.getQueue().size());
+            return false;
+        }
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> routes = new TreeMap<>();
+        routeStats.forEach((route, stats) -> routes.put(route, stats.snapshot()));
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("poolSize", POOL_SIZE);
+        result.put("activeThreads", executor.getActiveCount());
+        result.put("queueSize", executor.getQueue().size());
+        result.put("queueCapacity", QUEUE_CAPACITY);
+        result.put("routes", routes);
+        return result;
+    }
+    
+    /**
+     * 关闭执行器
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+    
+    /**
+     * 单个路由的延迟统计
+     */
+    private static class RouteStats {
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder totalQueueNanos = new LongAdder();
+        private final LongAdder totalExecNanos = new LongAdder();
+        private final AtomicLong maxExecNanos = new AtomicLong();
+        
+        void record(long queueNanos, long execNanos, boolean error) {
+            completed.increment();
+            if (error) {
+                failed.increment();
+            }
+            totalQueueNanos.add(queueNanos);
+            totalExecNanos.add(execNanos);
+            maxExecNanos.accumulateAndGet(execNanos, Math::max);
+        }
+        
+        Map<String, Object> snapshot() {
+            long count = completed.sum();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("completed", count);
+            result.put("failed", failed.sum());
+            result.put("rejected", rejected.sum());
+            result.put("avgQueueMs", count > 0 ? totalQueueNanos.sum() / count / 1_000_000.0 : 0);
+            result.put("avgExecMs", count > 0 ? totalExecNanos.sum() / count / 1_000_000.0 : 0);
+            result.put("maxExecMs", maxExecNanos.get() / 1_000_000.0);
+            return result;
+        }
+    }
+}
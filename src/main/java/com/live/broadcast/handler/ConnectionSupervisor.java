@@ -0,0 +1,164 @@
+package com.live.broadcast.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameEncoder;
+import io.netty.util.concurrent.FastThreadLocal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 连接存活检测 - 替代每个连接各自定时的IdleStateHandler
+ * 每个EventLoop只有一个定时扫描任务，扫描本EventLoop上的所有连接；收到数据时只把扫描器的粗粒度时钟写入普通字段，
+ * 不创建也不取消定时器。空闲超过ping间隔的WebSocket连接发送预先编码的ping控制帧，浏览器自动回复pong；
+ * 超过超时时间仍未收到任何数据的连接直接关闭。所有状态只在channel所属的EventLoop中访问
+ */
+public class ConnectionSupervisor extends ChannelInboundHandlerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionSupervisor.class);
+    
+    // 空闲多久后发送ping
+    private static final long PING_NANOS = TimeUnit.SECONDS.toNanos(Integer.getInteger("live.ws.pingSeconds", 30));
+    
+    // 空闲多久后关闭连接
+    private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(Integer.getInteger("live.ws.idleTimeoutSeconds", 60));
+    
+    // 扫描间隔，也是空闲时间的精度
+    private static final long SWEEP_NANOS = TimeUnit.SECONDS.toNanos(Integer.getInteger("live.ws.sweepSeconds", 5));
+    
+    // 编码好的空ping帧（FIN + opcode 0x9，长度0），WebSocket编码器对ByteBuf直接透传
+    private static final ByteBuf PING_FRAME = Unpooled.unreleasableBuffer(
+            Unpooled.directBuffer(2).writeByte(0x89).writeByte(0x00)).asReadOnly();
+    
+    private static final FastThreadLocal<Sweeper> SWEEPERS = new FastThreadLocal<>();
+    
+    private static final LongAdder connections = new LongAdder();
+    private static final LongAdder pingsSent = new LongAdder();
+    private static final LongAdder idleClosed = new LongAdder();
+    
+    private ChannelHandlerContext ctx;
+    private Sweeper sweeper;
+    
+    // 在扫描器中的位置，-1表示未登记
+    private int index = -1;
+    
+    // 最后一次收到数据时扫描器的时钟
+    private long lastReadNanos;
+    
+    // 上次收到数据后是否已发送ping
+    private boolean pingSent;
+    
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        sweeper = SWEEPERS.get();
+        if (sweeper == null) {
+            sweeper = new Sweeper(ctx.channel().eventLoop());
+            SWEEPERS.set(sweeper);
+        }
+        lastReadNanos = sweeper.clock;
+        sweeper.add(this);
+        connections.increment();
+        super.channelActive(ctx);
+    }
+    
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (index >= 0) {
+            sweeper.remove(this);
+            connections.decrement();
+        }
+        super.channelInactive(ctx);
+    }
+    
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (sweeper != null) {
+            lastReadNanos = sweeper.clock;
+            pingSent = false;
+        }
+        ctx.fireChannelRead(msg);
+    }
+    
+    /**
+     * 由扫描器调用，检查连接是否空闲
+     */
+    private void check(long now) {
+        long idle = now - lastReadNanos;
+        if (idle >= TIMEOUT_NANOS) {
+            idleClosed.increment();
+            logger.warn("客户端读取超时，关闭连接: {}", ctx.channel().remoteAddress());
+            ctx.close();
+        } else if (idle >= PING_NANOS && !pingSent && ctx.pipeline().get(WebSocketFrameEncoder.class) != null) {
+            // 握手完成后才有WebSocket编码器，握手前的连接只按超时关闭
+            pingSent = true;
+            pingsSent.increment();
+            ctx.writeAndFlush(PING_FRAME.duplicate(), ctx.voidPromise());
+        }
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("connections", connections.sum());
+        stats.put("pingSeconds", TimeUnit.NANOSECONDS.toSeconds(PING_NANOS));
+        stats.put("idleTimeoutSeconds", TimeUnit.NANOSECONDS.toSeconds(TIMEOUT_NANOS));
+        stats.put("pingsSent", pingsSent.sum());
+        stats.put("idleClosed", idleClosed.sum());
+        return stats;
+    }
+    
+    /**
+     * 单个EventLoop的连接扫描器，连接保存在数组中，删除时用末尾元素填补空位
+     */
+    private static final class Sweeper {
+        private ConnectionSupervisor[] supervisors = new ConnectionSupervisor[64];
+        private int size;
+        
+        // 粗粒度时钟，每次扫描时更新
+        private long clock = System.nanoTime();
+        
+        Sweeper(EventLoop eventLoop) {
+            eventLoop.scheduleAtFixedRate(this::sweep, SWEEP_NANOS, SWEEP_NANOS, TimeUnit.NANOSECONDS);
+        }
+        
+        void add(ConnectionSupervisor supervisor) {
+            if (size == supervisors.length) {
+                supervisors = Arrays.copyOf(supervisors, size * 2);
+            }
+            supervisor.index = size;
+            supervisors[size++] = supervisor;
+        }
+        
+        void remove(ConnectionSupervisor supervisor) {
+            int index = supervisor.index;
+            ConnectionSupervisor last = supervisors[--size];
+            supervisors[index] = last;
+            last.index = index;
+            supervisors[size] = null;
+            supervisor.index = -1;
+        }
+        
+        /**
+         * 从后往前扫描，检查过程中关闭的连接被删除时，填补进来的元素已经检查过
+         */
+        private void sweep() {
+            clock = System.nanoTime();
+            for (int i = size - 1; i >= 0; i--) {
+                if (i < size) {
+                    supervisors[i].check(clock);
+                }
+            }
+        }
+    }
+}
@@ -1,10 +1,26 @@
 package com.live.broadcast.handler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.live.broadcast.analytics.AnalyticsService;
+import com.live.broadcast.cluster.ClusterConfig;
+import com.live.broadcast.cluster.ClusterNode;
+import com.live.broadcast.cluster.EdgeRelay;
+import com.live.broadcast.cluster.StreamRegistry;
+import com.live.broadcast.cluster.StreamRelayServer;
+import com.live.broadcast.danmaku.DanmakuService;
+import com.live.broadcast.filter.SensitiveWordFilter;
+import com.live.broadcast.gift.GiftService;
 import com.live.broadcast.manager.LiveRoomManager;
+import com.live.broadcast.manager.RoomDirectory;
+import com.live.broadcast.manager.RoomMessageBatcher;
 import com.live.broadcast.model.LiveRoom;
+import com.live.broadcast.protocol.BroadcastDeflater;
+import com.live.broadcast.push.RtmpPushService;
+import com.live.broadcast.ratelimit.ChatFloodGuard;
 import com.live.broadcast.record.RecordService;
 import com.live.broadcast.record.RecordInfo;
+import com.live.broadcast.stream.HlsCache;
+import com.live.broadcast.stream.StreamManager;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFutureListener;
@@ -17,15 +33,19 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * HTTP请求处理器
@@ -50,6 +70,16 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
                 handleRoomApi(ctx, request, uri);
             } else if (uri.startsWith("/api/record")) {
                 handleRecordApi(ctx, request, uri);
+            } else if (uri.startsWith("/api/analytics/room/")) {
+                handleAnalyticsApi(ctx, request, uri);
+            } else if (uri.startsWith("/api/danmaku/")) {
+                handleDanmakuApi(ctx, request, uri);
+            } else if (uri.startsWith("/api/gift/")) {
+                handleGiftApi(ctx, request, uri);
+            } else if (uri.startsWith("/api/push/")) {
+                handlePushApi(ctx, request, uri);
+            } else if (uri.startsWith("/api/metrics")) {
+                handleMetricsApi(ctx, request);
             } else if (uri.equals("/live.html")) {
                 sendHtmlPage(ctx, request, "live.html");
             } else if (uri.equals("/viewer.html")) {
@@ -70,11 +100,28 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
      */
     private void handleRoomsApi(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
         if (request.method() == HttpMethod.GET) {
-            Map<String, LiveRoom> rooms = LiveRoomManager.getInstance().getAllRooms();
+            String uri = request.uri();
+            String cursor = getQueryParameter(uri, "cursor");
+            String streamerId = getQueryParameter(uri, "streamerId");
+            String liveParam = getQueryParameter(uri, "live");
+            Boolean live = liveParam != null ? Boolean.valueOf(liveParam) : null;
+            
+            RoomDirectory.Page page;
+            try {
+                int limit = parseIntParameter(uri, "limit", RoomDirectory.DEFAULT_PAGE_SIZE);
+                int minViewers = parseIntParameter(uri, "minViewers", 0);
+                page = LiveRoomManager.getInstance().getDirectory()
+                        .query(cursor, limit, live, streamerId, minViewers);
+            } catch (IllegalArgumentException e) {
+                sendBadRequest(ctx, request, e.getMessage());
+                return;
+            }
+            
             Map<String, Object> response = new HashMap<>();
             response.put("code", 200);
             response.put("message", "success");
-            response.put("data", rooms.values());
+            response.put("data", page.getRooms());
+            response.put("nextCursor", page.getNextCursor());
             
             sendJsonResponse(ctx, request, response);
         } else {
@@ -184,6 +231,42 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
         sendError(ctx, request, HttpResponseStatus.METHOD_NOT_ALLOWED, "方法不允许");
     }
     
+    /**
+     * 发送503响应
+     */
+    private void sendServiceUnavailable(ChannelHandlerContext ctx, FullHttpRequest request) {
+        FullHttpResponse response = new DefaultFullHttpResponse(
+                HttpVersion.HTTP_1_1,
+                HttpResponseStatus.SERVICE_UNAVAILABLE,
+                Unpooled.copiedBuffer("服务器繁忙，请稍后重试", CharsetUtil.UTF_8)
+        );
+        
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "text/plain; charset=UTF-8");
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+        response.headers().set(HttpHeaderNames.RETRY_AFTER, 1);
+        
+        ctx.write(response).addListener(ChannelFutureListener.CLOSE);
+        ctx.flush();
+    }
+    
+    /**
+     * 发送302重定向响应
+     */
+    private void sendRedirect(ChannelHandlerContext ctx, FullHttpRequest request, String location) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.FOUND);
+        response.headers().set(HttpHeaderNames.LOCATION, location);
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
+        response.headers().set(HttpHeaderNames.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, "no-cache");
+        
+        if (HttpUtil.isKeepAlive(request)) {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+            ctx.writeAndFlush(response);
+        } else {
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+    
     /**
      * 发送错误响应
      */
@@ -339,7 +422,7 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
                 "<input type=\"text\" id=\"messageInput\" placeholder=\"输入消息...\" maxlength=\"200\">" +
                 "<button onclick=\"sendMessage()\">发送</button></div></div></div>" +
                 "<script>" +
-                "let websocket;let roomId;let userId='user_'+Math.random().toString(36).substr(2,9);" +
+                "let websocket;let roomId;let lastSeq=null;let userId='user_'+Math.random().toString(36).substr(2,9);" +
                 "let username='Guest_'+Math.random().toString(36).substr(2,5);" +
                 "function getUrlParameter(name){const urlParams=new URLSearchParams(window.location.search);return urlParams.get(name);}" +
                 "function connectWebSocket(){roomId=getUrlParameter('room')||'room1';" +
@@ -349,15 +432,19 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
                 "websocket.onmessage=function(event){const message=JSON.parse(event.data);handleMessage(message);};" +
                 "websocket.onclose=function(){console.log('WebSocket连接关闭');addSystemMessage('连接已断开，正在重连...');setTimeout(connectWebSocket,3000);};" +
                 "websocket.onerror=function(error){console.error('WebSocket错误:',error);};}" +
-                "function joinRoom(){const joinMessage={type:'join',roomId:roomId,userId:userId,username:username};websocket.send(JSON.stringify(joinMessage));}" +
+                "function joinRoom(){const joinMessage={type:'join',roomId:roomId,userId:userId,username:username};if(lastSeq!==null){joinMessage.lastSeq=lastSeq;}websocket.send(JSON.stringify(joinMessage));}" +
                 "function sendMessage(){const input=document.getElementById('messageInput');const content=input.value.trim();" +
                 "if(content&&websocket.readyState===WebSocket.OPEN){const message={type:'chat',roomId:roomId,content:content};" +
                 "websocket.send(JSON.stringify(message));input.value='';}" +
                 "}" +
                 "function handleMessage(message){switch(message.type){case 'join_success':addSystemMessage('成功加入直播间');break;" +
-                "case 'chat':addChatMessage(message.username,message.content);break;" +
+                "case 'batch':message.messages.forEach(handleMessage);break;" +
+                "case 'chat':if(message.seq){lastSeq=message.seq;}addChatMessage(message.username,message.content);break;" +
                 "case 'user_join':addSystemMessage(message.content);break;" +
                 "case 'user_leave':addSystemMessage(message.content);break;" +
+                "case 'presence':addSystemMessage(message.content);break;" +
+                "case 'danmaku':addChatMessage(message.username,message.content);break;" +
+                "case 'gift':addSystemMessage(message.content);break;" +
                 "case 'live_start':addSystemMessage('直播开始了！');break;" +
                 "case 'live_stop':addSystemMessage('直播结束了');break;" +
                 "case 'error':addSystemMessage('错误: '+message.content);break;}}" +
@@ -373,6 +460,217 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
                 "</script></body></html>";
     }
     
+    /**
+     * 处理直播间观众统计API
+     */
+    private void handleAnalyticsApi(ChannelHandlerContext ctx, FullHttpRequest request, String uri) throws Exception {
+        if (request.method() != HttpMethod.GET) {
+            sendMethodNotAllowed(ctx, request);
+            return;
+        }
+        
+        String path = uri.contains("?") ? uri.substring(0, uri.indexOf('?')) : uri;
+        String[] parts = path.split("/");
+        if (parts.length < 5 || parts[4].isEmpty()) {
+            sendBadRequest(ctx, request, "房间ID不能为空");
+            return;
+        }
+        
+        String roomId = parts[4];
+        Map<String, Object> response = new HashMap<>();
+        if (LiveRoomManager.getInstance().getRoom(roomId) != null) {
+            Map<String, Object> report = AnalyticsService.getInstance().getRoomReport(roomId);
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("roomId", roomId);
+            data.put("viewerCount", LiveRoomManager.getInstance().getRoom(roomId).getViewerCount());
+            if (report != null) {
+                data.putAll(report);
+            }
+            response.put("code", 200);
+            response.put("message", "success");
+            response.put("data", data);
+        } else {
+            response.put("code", 404);
+            response.put("message", "房间不存在");
+            response.put("data", null);
+        }
+        sendJsonResponse(ctx, request, response);
+    }
+    
+    /**
+     * HLS观众标识：客户端地址和User-Agent
+     */
+    private static String hlsViewerKey(ChannelHandlerContext ctx, FullHttpRequest request) {
+        SocketAddress address = ctx.channel().remoteAddress();
+        String host = address instanceof InetSocketAddress
+                ? ((InetSocketAddress) address).getAddress().getHostAddress() : String.valueOf(address);
+        String userAgent = request.headers().get(HttpHeaderNames.USER_AGENT);
+        return "hls:" + host + "|" + (userAgent != null ? userAgent : "");
+    }
+    
+    /**
+     * 处理礼物榜API，userId参数可选
+     */
+    private void handleGiftApi(ChannelHandlerContext ctx, FullHttpRequest request, String uri) throws Exception {
+        if (request.method() != HttpMethod.GET) {
+            sendMethodNotAllowed(ctx, request);
+            return;
+        }
+        
+        String path = uri.contains("?") ? uri.substring(0, uri.indexOf('?')) : uri;
+        String[] parts = path.split("/");
+        if (parts.length < 4 || parts[3].isEmpty()) {
+            sendBadRequest(ctx, request, "房间ID不能为空");
+            return;
+        }
+        
+        String roomId = parts[3];
+        Map<String, Object> response = new HashMap<>();
+        if (LiveRoomManager.getInstance().getRoom(roomId) != null) {
+            response.put("code", 200);
+            response.put("message", "success");
+            response.put("data", GiftService.getInstance().getRoomStats(roomId, getQueryParameter(uri, "userId")));
+        } else {
+            response.put("code", 404);
+            response.put("message", "房间不存在");
+            response.put("data", null);
+        }
+        sendJsonResponse(ctx, request, response);
+    }
+    
+    /**
+     * 处理RTMP转推API
+     * GET查询转推目标和状态，POST添加目标，DELETE删除目标；目标地址通过url参数传入（需URL编码）
+     */
+    private void handlePushApi(ChannelHandlerContext ctx, FullHttpRequest request, String uri) throws Exception {
+        String path = uri.contains("?") ? uri.substring(0, uri.indexOf('?')) : uri;
+        String[] parts = path.split("/");
+        if (parts.length < 4 || parts[3].isEmpty()) {
+            sendBadRequest(ctx, request, "房间ID不能为空");
+            return;
+        }
+        String roomId = parts[3];
+        RtmpPushService pushService = RtmpPushService.getInstance();
+        
+        Map<String, Object> response = new HashMap<>();
+        if (request.method() == HttpMethod.GET) {
+            response.put("code", 200);
+            response.put("message", "success");
+            response.put("data", pushService.getTargets(roomId));
+            sendJsonResponse(ctx, request, response);
+            return;
+        }
+        if (request.method() != HttpMethod.POST && request.method() != HttpMethod.DELETE) {
+            sendMethodNotAllowed(ctx, request);
+            return;
+        }
+        
+        String url = getQueryParameter(uri, "url");
+        if (url == null || url.isEmpty()) {
+            sendBadRequest(ctx, request, "url参数不能为空");
+            return;
+        }
+        url = URLDecoder.decode(url, StandardCharsets.UTF_8);
+        
+        boolean changed;
+        if (request.method() == HttpMethod.POST) {
+            try {
+                changed = pushService.addTarget(roomId, url);
+            } catch (IllegalArgumentException e) {
+                sendBadRequest(ctx, request, e.getMessage());
+                return;
+            }
+            response.put("code", changed ? 200 : 409);
+            response.put("message", changed ? "添加转推目标成功" : "转推目标已存在");
+        } else {
+            changed = pushService.removeTarget(roomId, url);
+            response.put("code", changed ? 200 : 404);
+            response.put("message", changed ? "删除转推目标成功" : "转推目标不存在");
+        }
+        response.put("data", pushService.getTargets(roomId));
+        sendJsonResponse(ctx, request, response);
+    }
+    
+    /**
+     * 处理弹幕查询API
+     * 按毫秒时间戳范围查询；指定recordId时from和to为相对录制开始的毫秒数，默认为整个录制时段
+     */
+    private void handleDanmakuApi(ChannelHandlerContext ctx, FullHttpRequest request, String uri) throws Exception {
+        if (request.method() != HttpMethod.GET) {
+            sendMethodNotAllowed(ctx, request);
+            return;
+        }
+        
+        String path = uri.contains("?") ? uri.substring(0, uri.indexOf('?')) : uri;
+        String[] parts = path.split("/");
+        if (parts.length < 4 || parts[3].isEmpty()) {
+            sendBadRequest(ctx, request, "房间ID不能为空");
+            return;
+        }
+        String roomId = parts[3];
+        String recordId = getQueryParameter(uri, "recordId");
+        
+        long from;
+        long to;
+        int limit;
+        try {
+            from = parseLongParameter(uri, "from", 0);
+            to = parseLongParameter(uri, "to", Long.MAX_VALUE);
+            limit = parseIntParameter(uri, "limit", 1000);
+        } catch (IllegalArgumentException e) {
+            sendBadRequest(ctx, request, e.getMessage());
+            return;
+        }
+        
+        executeBlocking(ctx, request, "danmaku.query", () -> {
+            long baseTime = 0;
+            long start = from;
+            long end = to;
+            if (recordId != null) {
+                RecordInfo record = findRecord(roomId, recordId);
+                if (record == null) {
+                    return null;
+                }
+                baseTime = record.getStartTime();
+                long recordEnd = record.getEndTime() > 0 ? record.getEndTime() : System.currentTimeMillis();
+                start = baseTime + from;
+                end = to == Long.MAX_VALUE ? recordEnd : Math.min(recordEnd, baseTime + to);
+            }
+            
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("roomId", roomId);
+            data.put("baseTime", baseTime);
+            data.put("danmaku", DanmakuService.getInstance().query(roomId, start, end, limit));
+            return data;
+        }, data -> {
+            if (data == null) {
+                sendError(ctx, request, HttpResponseStatus.NOT_FOUND, "录制记录不存在");
+                return;
+            }
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("message", "success");
+            response.put("data", data);
+            sendJsonResponse(ctx, request, response);
+        });
+    }
+    
+    /**
+     * 查找录制记录，先查正在进行的录制，再查历史记录
+     */
+    private RecordInfo findRecord(String roomId, String recordId) {
+        RecordInfo active = RecordService.getInstance().getRecordInfo(roomId);
+        if (active != null && recordId.equals(active.getRecordId())) {
+            return active;
+        }
+        for (RecordInfo record : RecordService.getInstance().getHistoryRecords(roomId)) {
+            if (recordId.equals(record.getRecordId())) {
+                return record;
+            }
+        }
+        return null;
+    }
+    
     /**
      * 处理录播API
      */
@@ -424,20 +722,21 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
             return;
         }
         
-        boolean success = RecordService.getInstance().startRecord(roomId);
-        Map<String, Object> response = new HashMap<>();
-        
-        if (success) {
-            response.put("code", 200);
-            response.put("message", "开始录制成功");
-            response.put("data", RecordService.getInstance().getRecordInfo(roomId));
-        } else {
-            response.put("code", 400);
-            response.put("message", "开始录制失败");
-            response.put("data", null);
-        }
-        
-        sendJsonResponse(ctx, request, response);
+        executeBlocking(ctx, request, "record.start", () -> RecordService.getInstance().startRecord(roomId), success -> {
+            Map<String, Object> response = new HashMap<>();
+            
+            if (success) {
+                response.put("code", 200);
+                response.put("message", "开始录制成功");
+                response.put("data", RecordService.getInstance().getRecordInfo(roomId));
+            } else {
+                response.put("code", 400);
+                response.put("message", "开始录制失败");
+                response.put("data", null);
+            }
+            
+            sendJsonResponse(ctx, request, response);
+        });
     }
     
     /**
@@ -455,19 +754,20 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
             return;
         }
         
-        boolean success = RecordService.getInstance().stopRecord(roomId);
-        Map<String, Object> response = new HashMap<>();
-        
-        if (success) {
-            response.put("code", 200);
-            response.put("message", "停止录制成功");
-        } else {
-            response.put("code", 400);
-            response.put("message", "停止录制失败");
-        }
-        response.put("data", null);
-        
-        sendJsonResponse(ctx, request, response);
+        executeBlocking(ctx, request, "record.stop", () -> RecordService.getInstance().stopRecord(roomId), success -> {
+            Map<String, Object> response = new HashMap<>();
+            
+            if (success) {
+                response.put("code", 200);
+                response.put("message", "停止录制成功");
+            } else {
+                response.put("code", 400);
+                response.put("message", "停止录制失败");
+            }
+            response.put("data", null);
+            
+            sendJsonResponse(ctx, request, response);
+        });
     }
     
     /**
@@ -498,17 +798,19 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
         }
         
         String roomId = getQueryParameter(request.uri(), "roomId");
-        Map<String, Object> response = new HashMap<>();
         
-        if (roomId != null && !roomId.isEmpty()) {
-            response.put("data", RecordService.getInstance().getHistoryRecords(roomId));
-        } else {
-            response.put("data", RecordService.getInstance().getAllHistoryRecords());
-        }
-        
-        response.put("code", 200);
-        response.put("message", "success");
-        sendJsonResponse(ctx, request, response);
+        executeBlocking(ctx, request, "record.history", () -> {
+            if (roomId != null && !roomId.isEmpty()) {
+                return RecordService.getInstance().getHistoryRecords(roomId);
+            }
+            return RecordService.getInstance().getAllHistoryRecords();
+        }, records -> {
+            Map<String, Object> response = new HashMap<>();
+            response.put("data", records);
+            response.put("code", 200);
+            response.put("message", "success");
+            sendJsonResponse(ctx, request, response);
+        });
     }
     
     /**
@@ -531,13 +833,21 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
         String filePath = "records/" + roomId + "/" + recordId + ".mp4";
         Path path = Paths.get(filePath);
         
-        if (!Files.exists(path)) {
-            sendNotFound(ctx, request);
-            return;
-        }
-        
-        try {
-            byte[] content = Files.readAllBytes(path);
+        executeBlocking(ctx, request, "record.download", () -> {
+            if (!Files.exists(path)) {
+                return null;
+            }
+            try {
+                return Files.readAllBytes(path);
+            } catch (IOException e) {
+                logger.error("读取录制文件失败: {}", filePath, e);
+                return null;
+            }
+        }, content -> {
+            if (content == null) {
+                sendNotFound(ctx, request);
+                return;
+            }
             
             FullHttpResponse response = new DefaultFullHttpResponse(
                     HttpVersion.HTTP_1_1,
@@ -557,11 +867,7 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
                 ctx.write(response).addListener(ChannelFutureListener.CLOSE);
             }
             ctx.flush();
-            
-        } catch (IOException e) {
-            logger.error("读取录制文件失败: {}", filePath, e);
-            sendNotFound(ctx, request);
-        }
+        });
     }
     
     /**
@@ -581,21 +887,119 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
             return;
         }
         
-        boolean success = RecordService.getInstance().deleteRecord(roomId, recordId);
-        Map<String, Object> response = new HashMap<>();
+        executeBlocking(ctx, request, "record.delete", () -> RecordService.getInstance().deleteRecord(roomId, recordId), success -> {
+            Map<String, Object> response = new HashMap<>();
+            
+            if (success) {
+                response.put("code", 200);
+                response.put("message", "删除成功");
+            } else {
+                response.put("code", 400);
+                response.put("message", "删除失败");
+            }
+            response.put("data", null);
+            
+            sendJsonResponse(ctx, request, response);
+        });
+    }
+    
+    /**
+     * 慢消费者统计，包括各房间丢弃的消息数
+     */
+    private Map<String, Object> getSlowConsumerStats() {
+        Map<String, Object> roomDrops = new TreeMap<>();
+        LiveRoomManager.getInstance().getAllRooms().forEach((roomId, room) -> {
+            long dropped = room.getDroppedMessageCount();
+            if (dropped > 0) {
+                roomDrops.put(roomId, dropped);
+            }
+        });
         
-        if (success) {
-            response.put("code", 200);
-            response.put("message", "删除成功");
-        } else {
-            response.put("code", 400);
-            response.put("message", "删除失败");
+        Map<String, Object> stats = new LinkedHashMap<>(SlowConsumerHandler.getStats());
+        stats.put("roomDroppedMessages", roomDrops);
+        return stats;
+    }
+    
+    /**
+     * 处理监控指标API
+     */
+    private void handleMetricsApi(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
+        if (request.method() != HttpMethod.GET) {
+            sendMethodNotAllowed(ctx, request);
+            return;
+        }
+        
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("blockingExecutor", BlockingTaskExecutor.getInstance().getStats());
+        metrics.put("hlsCache", HlsCache.getInstance().getStats());
+        metrics.put("rtmpPush", RtmpPushService.getInstance().getStats());
+        metrics.put("httpCompression", SelectiveHttpContentCompressor.getStats());
+        metrics.put("rateLimit", RateLimitHandler.getStats());
+        metrics.put("chatBatching", RoomMessageBatcher.getStats());
+        metrics.put("wsDeflate", BroadcastDeflater.getStats());
+        metrics.put("slowConsumers", getSlowConsumerStats());
+        metrics.put("wsConnections", ConnectionSupervisor.getStats());
+        metrics.put("chatFilter", SensitiveWordFilter.getInstance().getStats());
+        metrics.put("chatFlood", ChatFloodGuard.getStats());
+        metrics.put("danmaku", DanmakuService.getInstance().getStats());
+        metrics.put("gift", GiftService.getInstance().getStats());
+        metrics.put("analytics", AnalyticsService.getInstance().getStats());
+        metrics.put("roomBus", LiveRoomManager.getInstance().getEventBus().getStats());
+        metrics.put("streamRegistry", StreamManager.getInstance().getRegistry().getStats());
+        metrics.put("relayOrigin", StreamRelayServer.getStats());
+        if (EdgeRelay.ENABLED) {
+            metrics.put("edgeRelay", EdgeRelay.getInstance().getStats());
         }
-        response.put("data", null);
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("code", 200);
+        response.put("message", "success");
+        response.put("data", metrics);
         
         sendJsonResponse(ctx, request, response);
     }
     
+    /**
+     * 在阻塞任务线程池中执行任务，完成后回到channel所在的事件循环发送响应
+     * 队列已满时直接返回503
+     */
+    private <T> void executeBlocking(ChannelHandlerContext ctx, FullHttpRequest request, String route,
+                                     Callable<T> task, BlockingResponder<T> responder) {
+        // 请求在channelRead0返回后会被释放，异步响应前需要保留
+        request.retain();
+        
+        boolean accepted = BlockingTaskExecutor.getInstance().submit(route, ctx.executor(), task, (result, error) -> {
+            try {
+                if (error != null) {
+                    logger.error("处理HTTP请求失败: {} {}", request.method(), request.uri(), error);
+                    sendError(ctx, request, "内部服务器错误");
+                } else {
+                    responder.respond(result);
+                }
+            } catch (Exception e) {
+                logger.error("处理HTTP请求失败: {} {}", request.method(), request.uri(), e);
+                sendError(ctx, request, "内部服务器错误");
+            } finally {
+                request.release();
+            }
+        });
+        
+        if (!accepted) {
+            try {
+                sendServiceUnavailable(ctx, request);
+            } finally {
+                request.release();
+            }
+        }
+    }
+    
+    /**
+     * 阻塞任务完成后的响应回调
+     */
+    private interface BlockingResponder<T> {
+        void respond(T result) throws Exception;
+    }
+    
     /**
      * 获取URL查询参数
      */
@@ -614,6 +1018,44 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
         return null;
     }
     
+    /**
+     * 客户端是否接受gzip编码
+     */
+    private boolean acceptsGzip(FullHttpRequest request) {
+        String acceptEncoding = request.headers().get(HttpHeaderNames.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+    
+    /**
+     * 获取整数类型的URL查询参数
+     */
+    private int parseIntParameter(String uri, String paramName, int defaultValue) {
+        String value = getQueryParameter(uri, paramName);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(paramName + "参数格式错误: " + value);
+        }
+    }
+    
+    /**
+     * 获取长整数类型的URL查询参数
+     */
+    private long parseLongParameter(String uri, String paramName, long defaultValue) {
+        String value = getQueryParameter(uri, paramName);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(paramName + "参数格式错误: " + value);
+        }
+    }
+    
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         logger.error("HTTP处理异常", cause);
@@ -622,10 +1064,12 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
     
     /**
      * 处理HLS请求
+     * 推流不在本节点时重定向到推流所在的节点；边缘节点同时开始从源站拉流，本地HLS就绪后由本节点提供
      */
     private void handleHlsRequest(ChannelHandlerContext ctx, FullHttpRequest request, String uri) throws Exception {
         // uri格式: /hls/roomId/filename
-        String[] parts = uri.split("/");
+        String requestPath = uri.contains("?") ? uri.substring(0, uri.indexOf('?')) : uri;
+        String[] parts = requestPath.split("/");
         if (parts.length < 4) {
             sendNotFound(ctx, request);
             return;
@@ -633,50 +1077,119 @@ public class HttpServerHandler extends SimpleChannelInboundHandler<FullHttpReque
         
         String roomId = parts[2];
         String fileName = parts[3];
-        String filePath = "hls/" + roomId + "/" + fileName;
         
-        try {
-            Path path = Paths.get(filePath);
-            if (!Files.exists(path)) {
-                sendNotFound(ctx, request);
+        if (EdgeRelay.ENABLED) {
+            EdgeRelay.getInstance().touch(roomId);
+        }
+        
+        // 边缘节点重定向过来的观众，在该边缘节点的HLS就绪后重定向回去，由边缘节点提供并保持拉流
+        String edgeNodeId = getQueryParameter(uri, "edge");
+        if (edgeNodeId != null && fileName.endsWith(".m3u8") && StreamRelayServer.isEdgeReady(roomId, edgeNodeId)) {
+            ClusterNode edge = ClusterConfig.findNode(edgeNodeId);
+            if (edge != null) {
+                sendRedirect(ctx, request, edge.getHttpUrl() + requestPath + "?node=" + edgeNodeId);
                 return;
             }
-            
-            byte[] content = Files.readAllBytes(path);
-            String contentType;
-            
-            if (fileName.endsWith(".m3u8")) {
-                contentType = "application/vnd.apple.mpegurl";
-            } else if (fileName.endsWith(".ts")) {
-                contentType = "video/mp2t";
-            } else {
-                contentType = "application/octet-stream";
+        }
+        
+        // 从源站拉来的流在本地HLS就绪前不由本节点提供
+        StreamManager.StreamInfo local = StreamManager.getInstance().getStreamInfo(roomId);
+        boolean servedLocally = local != null && (!local.isRelay() || EdgeRelay.getInstance().isReady(roomId));
+        
+        // 已经重定向过的请求带有node参数，不再重定向，避免节点之间的归属信息不一致时循环
+        if (!servedLocally && getQueryParameter(uri, "node") == null) {
+            StreamRegistry registry = StreamManager.getInstance().getRegistry();
+            ClusterNode owner = registry.locate(roomId);
+            if (!registry.isLocal(owner)) {
+                String location = owner.getHttpUrl() + requestPath + "?node=" + owner.getNodeId();
+                if (EdgeRelay.ENABLED) {
+                    location += "&edge=" + ClusterConfig.getNodeId();
+                }
+                sendRedirect(ctx, request, location);
+                return;
             }
-            
-            FullHttpResponse response = new DefaultFullHttpResponse(
-                    HttpVersion.HTTP_1_1,
-                    HttpResponseStatus.OK,
-                    Unpooled.copiedBuffer(content)
-            );
-            
-            response.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
-            response.headers().set(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
-            response.headers().set(HttpHeaderNames.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
-            response.headers().set(HttpHeaderNames.CACHE_CONTROL, "no-cache");
-            
-            if (HttpUtil.isKeepAlive(request)) {
-                response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
-                ctx.write(response);
-            } else {
-                ctx.write(response).addListener(ChannelFutureListener.CLOSE);
+        }
+        
+        // 播放列表优先使用预压缩版本
+        serveHlsFile(ctx, request, roomId, fileName, fileName.endsWith(".m3u8") && acceptsGzip(request));
+    }
+    
+    /**
+     * 从HLS缓存读取文件并响应，预压缩版本不存在时改用原始文件
+     */
+    private void serveHlsFile(ChannelHandlerContext ctx, FullHttpRequest request, String roomId,
+                              String fileName, boolean precompressed) {
+        String filePath = "hls/" + roomId + "/" + fileName;
+        
+        // 请求在channelRead0返回后会被释放，缓存未命中时异步响应前需要保留
+        request.retain();
+        HlsCache.getInstance().get(precompressed ? filePath + ".gz" : filePath, ctx.executor(), (content, error) -> {
+            try {
+                if (error instanceof RejectedExecutionException) {
+                    sendServiceUnavailable(ctx, request);
+                } else if (error != null) {
+                    logger.error("读取HLS文件失败: {}", filePath, error);
+                    sendNotFound(ctx, request);
+                } else if (content == null) {
+                    if (precompressed) {
+                        serveHlsFile(ctx, request, roomId, fileName, false);
+                    } else {
+                        sendNotFound(ctx, request);
+                    }
+                } else {
+                    sendHlsFile(ctx, request, roomId, fileName, content, precompressed);
+                }
+            } finally {
+                request.release();
             }
-            ctx.flush();
-            
-            logger.debug("服务HLS文件: {}", filePath);
-            
-        } catch (IOException e) {
-            logger.error("读取HLS文件失败: {}", filePath, e);
-            sendNotFound(ctx, request);
+        });
+    }
+    
+    /**
+     * 发送HLS文件，内容是缓存缓冲区的retainedDuplicate，由响应写出后释放
+     */
+    private void sendHlsFile(ChannelHandlerContext ctx, FullHttpRequest request, String roomId, String fileName,
+                             HlsCache.Content content, boolean precompressed) {
+        // 播放器会周期性刷新播放列表，按播放列表请求统计HLS观众
+        if (fileName.endsWith(".m3u8")) {
+            AnalyticsService.getInstance().onHlsHit(roomId, hlsViewerKey(ctx, request));
         }
+        if (precompressed) {
+            SelectiveHttpContentCompressor.recordPrecompressed(content.getOriginalSize(), content.getData().readableBytes());
+        }
+        
+        String contentType;
+        if (fileName.endsWith(".m3u8")) {
+            contentType = "application/vnd.apple.mpegurl";
+        } else if (fileName.endsWith(".ts")) {
+            contentType = "video/mp2t";
+        } else {
+            contentType = "application/octet-stream";
+        }
+        
+        FullHttpResponse response = new DefaultFullHttpResponse(
+                HttpVersion.HTTP_1_1,
+                HttpResponseStatus.OK,
+                content.getData()
+        );
+        
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType);
+        response.headers().set(HttpHeaderNames.CONTENT_LENGTH, response.content().readableBytes());
+        response.headers().set(HttpHeaderNames.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        response.headers().set(HttpHeaderNames.CACHE_CONTROL, "no-cache");
+        if (precompressed) {
+            response.headers().set(HttpHeaderNames.CONTENT_ENCODING, HttpHeaderValues.GZIP);
+            response.headers().set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+        }
+        
+        if (HttpUtil.isKeepAlive(request)) {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+            ctx.write(response);
+        } else {
+            ctx.write(response).addListener(ChannelFutureListener.CLOSE);
+        }
+        ctx.flush();
+        
+        logger.debug("服务HLS文件: roomId={}, file={}", roomId, fileName);
     }
 }
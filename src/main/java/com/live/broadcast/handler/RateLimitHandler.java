@@ -0,0 +1,169 @@
+package com.live.broadcast.handler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.live.broadcast.model.Message;
+import com.live.broadcast.protocol.EncodedMessage;
+import com.live.broadcast.protocol.WireProtocol;
+import com.live.broadcast.ratelimit.KeyedRateLimiter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 限流处理器 - 按客户端IP和路由类别限流
+ * HTTP管道中放在消息聚合器之后，WebSocket管道中放在协议处理器之前（同时限制握手和数据帧）
+ * 被限流的请求直接返回预先编码好的429响应或错误帧，不进入业务处理器
+ */
+@ChannelHandler.Sharable
+public class RateLimitHandler extends ChannelInboundHandlerAdapter {
+    private static final int MAX_TRACKED_IPS = 100_000;
+    private static final int IDLE_SECONDS = 60;
+    
+    /**
+     * 路由类别及每个IP的默认限流参数
+     * 可通过系统属性live.ratelimit.<路由>.rate和live.ratelimit.<路由>.burst覆盖，路由名为小写，如live.ratelimit.playlist.rate
+     */
+    public enum Route {
+        PLAYLIST(5, 20),
+        SEGMENT(20, 60),
+        RECORD_API(2, 5),
+        API(20, 50),
+        PAGE(10, 30),
+        WS_HANDSHAKE(2, 10),
+        WS_MESSAGE(20, 40);
+        
+        private final double ratePerSecond;
+        private final int burst;
+        
+        Route(int ratePerSecond, int burst) {
+            String prefix = "live.ratelimit." + name().toLowerCase() + ".";
+            this.ratePerSecond = Integer.getInteger(prefix + "rate", ratePerSecond);
+            this.burst = Integer.getInteger(prefix + "burst", burst);
+        }
+    }
+    
+    // HTTP服务器和WebSocket服务器共用同一组限流器
+    private static final Map<Route, KeyedRateLimiter<InetAddress>> LIMITERS = new EnumMap<>(Route.class);
+    
+    static {
+        for (Route route : Route.values()) {
+            LIMITERS.put(route, new KeyedRateLimiter<>(route.ratePerSecond, route.burst, MAX_TRACKED_IPS, IDLE_SECONDS));
+        }
+    }
+    
+    // 预先编码的响应体，只读且不可释放，每次发送时共享底层内存
+    private static final ByteBuf TOO_MANY_REQUESTS_BODY = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(
+            "{\"code\":429,\"message\":\"请求过于频繁，请稍后重试\"}".getBytes(StandardCharsets.UTF_8)).asReadOnly());
+    
+    // 预先按所有协议编码的错误消息，按连接协商的协议发送文本帧或二进制帧
+    private static final EncodedMessage RATE_LIMITED_MESSAGE = encodeRateLimited();
+    
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        Route route = classify(msg);
+        if (route == null) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        
+        InetAddress address = clientAddress(ctx.channel().remoteAddress());
+        if (address == null || LIMITERS.get(route).tryAcquire(address)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        
+        try {
+            if (msg instanceof FullHttpRequest) {
+                sendTooManyRequests(ctx, (FullHttpRequest) msg);
+            } else {
+                ctx.writeAndFlush(WireProtocol.of(ctx.channel()).newFrame(RATE_LIMITED_MESSAGE));
+            }
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+    
+    /**
+     * 判断消息所属的路由类别，返回null表示不限流
+     */
+    private static Route classify(Object msg) {
+        if (msg instanceof FullHttpRequest) {
+            String uri = ((FullHttpRequest) msg).uri();
+            if (uri.startsWith("/ws")) {
+                return Route.WS_HANDSHAKE;
+            } else if (uri.startsWith("/hls/")) {
+                return uri.contains(".m3u8") ? Route.PLAYLIST : Route.SEGMENT;
+            } else if (uri.startsWith("/api/record")) {
+                return Route.RECORD_API;
+            } else if (uri.startsWith("/api/")) {
+                return Route.API;
+            }
+            return Route.PAGE;
+        }
+        if (msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame) {
+            return Route.WS_MESSAGE;
+        }
+        return null;
+    }
+    
+    private static InetAddress clientAddress(SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            return ((InetSocketAddress) address).getAddress();
+        }
+        return null;
+    }
+    
+    private static EncodedMessage encodeRateLimited() {
+        try {
+            return EncodedMessage.encode(new Message("error", "消息发送过于频繁，请稍后重试", null));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static void sendTooManyRequests(ChannelHandlerContext ctx, FullHttpRequest request) {
+        FullHttpResponse response = new DefaultFullHttpResponse(
+                HttpVersion.HTTP_1_1, HttpResponseStatus.TOO_MANY_REQUESTS, TOO_MANY_REQUESTS_BODY.duplicate());
+        response.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json; charset=UTF-8");
+        response.headers().setInt(HttpHeaderNames.CONTENT_LENGTH, TOO_MANY_REQUESTS_BODY.readableBytes());
+        response.headers().set(HttpHeaderNames.RETRY_AFTER, 1);
+        
+        if (HttpUtil.isKeepAlive(request)) {
+            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+            ctx.writeAndFlush(response);
+        } else {
+            ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+    
+    /**
+     * 获取各路由类别的限流统计
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        LIMITERS.forEach((route, limiter) -> stats.put(route.name(), limiter.getStats()));
+        return stats;
+    }
+}
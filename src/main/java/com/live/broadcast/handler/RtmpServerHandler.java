@@ -165,9 +165,10 @@ public class RtmpServerHandler extends ChannelInboundHandlerAdapter {
         if (streamKey != null && dataSize > 0) {
             // 这里简化处理，假设都是视频数据
             // 实际应该解析FLV标签确定数据类型
+            // buf由channelRead释放，消费者各自持有retainedDuplicate
             StreamManager.getInstance().handleStreamData(
                 streamKey, 
-                buf.copy(), 
+                buf, 
                 StreamManager.StreamDataType.VIDEO
             );
         }
@@ -0,0 +1,130 @@
+package com.live.broadcast.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.compression.StandardCompressionOptions;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按内容类型选择性压缩的HTTP压缩器
+ * 只压缩JSON、播放列表、MPD和HTML等文本内容，且超过大小阈值才压缩；视频分片等媒体数据直接透传
+ * 已设置Content-Encoding的响应（如预压缩的播放列表）也直接透传
+ */
+public class SelectiveHttpContentCompressor extends HttpContentCompressor {
+    // 小于该大小的响应不压缩
+    public static final int MIN_COMPRESS_SIZE = 1024;
+    
+    private static final LongAdder rawBytes = new LongAdder();
+    private static final LongAdder compressedBytes = new LongAdder();
+    private static final LongAdder compressedResponses = new LongAdder();
+    private static final LongAdder skippedResponses = new LongAdder();
+    private static final LongAdder precompressedResponses = new LongAdder();
+    
+    // 当前响应是否正在压缩
+    private boolean compressing;
+    
+    public SelectiveHttpContentCompressor() {
+        super(MIN_COMPRESS_SIZE, StandardCompressionOptions.gzip(), StandardCompressionOptions.deflate());
+    }
+    
+    @Override
+    protected Result beginEncode(HttpResponse httpResponse, String acceptEncoding) throws Exception {
+        if (!canCompress(httpResponse)) {
+            skippedResponses.increment();
+            return null;
+        }
+        
+        // 只有可能被压缩的响应才随Accept-Encoding变化
+        httpResponse.headers().set(HttpHeaderNames.VARY, HttpHeaderNames.ACCEPT_ENCODING);
+        Result result = super.beginEncode(httpResponse, acceptEncoding);
+        if (result == null) {
+            skippedResponses.increment();
+        } else {
+            compressedResponses.increment();
+            compressing = true;
+        }
+        return result;
+    }
+    
+    @Override
+    protected void encode(ChannelHandlerContext ctx, HttpObject msg, List<Object> out) throws Exception {
+        // 压缩会消耗原始内容，需要先记录原始大小
+        int rawSize = msg instanceof HttpContent ? ((HttpContent) msg).content().readableBytes() : 0;
+        
+        super.encode(ctx, msg, out);
+        
+        if (compressing) {
+            rawBytes.add(rawSize);
+            for (Object item : out) {
+                if (item instanceof HttpContent) {
+                    compressedBytes.add(((HttpContent) item).content().readableBytes());
+                }
+            }
+            if (msg instanceof LastHttpContent) {
+                compressing = false;
+            }
+        }
+    }
+    
+    /**
+     * 判断响应是否会按客户端的Accept-Encoding压缩：内容类型可压缩、未设置Content-Encoding，
+     * 完整响应还需要达到大小阈值
+     */
+    private static boolean canCompress(HttpResponse httpResponse) {
+        if (!isCompressible(httpResponse.headers().get(HttpHeaderNames.CONTENT_TYPE))
+                || httpResponse.headers().contains(HttpHeaderNames.CONTENT_ENCODING)) {
+            return false;
+        }
+        return !(httpResponse instanceof HttpContent)
+                || ((HttpContent) httpResponse).content().readableBytes() >= MIN_COMPRESS_SIZE;
+    }
+    
+    /**
+     * 判断内容类型是否值得压缩
+     */
+    static boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase();
+        return type.startsWith("application/json")
+                || type.startsWith("application/vnd.apple.mpegurl")
+                || type.startsWith("application/x-mpegurl")
+                || type.startsWith("application/dash+xml")
+                || type.startsWith("text/html");
+    }
+    
+    /**
+     * 记录一次预压缩内容的直接输出
+     */
+    public static void recordPrecompressed(long originalSize, long compressedSize) {
+        precompressedResponses.increment();
+        rawBytes.add(originalSize);
+        compressedBytes.add(compressedSize);
+    }
+    
+    /**
+     * 获取压缩统计
+     */
+    public static Map<String, Object> getStats() {
+        long raw = rawBytes.sum();
+        long compressed = compressedBytes.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("rawBytes", raw);
+        stats.put("compressedBytes", compressed);
+        stats.put("ratio", raw > 0 ? (double) compressed / raw : 0);
+        stats.put("compressedResponses", compressedResponses.sum());
+        stats.put("precompressedResponses", precompressedResponses.sum());
+        stats.put("skippedResponses", skippedResponses.sum());
+        return stats;
+    }
+}
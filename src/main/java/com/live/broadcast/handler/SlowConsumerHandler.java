@@ -0,0 +1,149 @@
+package com.live.broadcast.handler;
+
+import com.live.broadcast.protocol.BroadcastPayload;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 慢消费者处理器 - 根据channel可写状态决定广播消息的去留
+ * channel不可写时丢弃低优先级消息，高优先级消息放入有界队列，可写后补发；长时间不可写或队列溢出的连接直接断开
+ * 所有状态只在channel所属的EventLoop中访问
+ */
+public class SlowConsumerHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(SlowConsumerHandler.class);
+    
+    private static final AttributeKey<SlowConsumerHandler> KEY = AttributeKey.valueOf("slowConsumer");
+    
+    // 不可写期间最多缓存的高优先级帧数
+    private static final int MAX_PENDING_FRAMES = 16;
+    
+    // 连续不可写超过该时间的连接视为掉队，直接断开
+    private static final long MAX_UNWRITABLE_NANOS = TimeUnit.SECONDS.toNanos(30);
+    
+    private static final LongAdder droppedFrames = new LongAdder();
+    private static final LongAdder queuedFrames = new LongAdder();
+    private static final LongAdder overflowDisconnects = new LongAdder();
+    private static final LongAdder laggardDisconnects = new LongAdder();
+    
+    private final ArrayDeque<WebSocketFrame> pending = new ArrayDeque<>();
+    private Channel channel;
+    
+    // 开始不可写的时间，0表示当前可写
+    private long unwritableSince;
+    
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        channel = ctx.channel();
+        channel.attr(KEY).set(this);
+    }
+    
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        channel.attr(KEY).set(null);
+        releasePending();
+    }
+    
+    /**
+     * 在channel所属的EventLoop中写入广播帧（不flush）
+     *
+     * @return 消息被丢弃时返回false
+     */
+    public static boolean write(Channel channel, BroadcastPayload payload) {
+        SlowConsumerHandler handler = channel.attr(KEY).get();
+        if (handler == null) {
+            channel.write(payload.newFrame(channel), channel.voidPromise());
+            return true;
+        }
+        return handler.write(payload);
+    }
+    
+    private boolean write(BroadcastPayload payload) {
+        if (channel.isWritable()) {
+            drainPending();
+            if (channel.isWritable()) {
+                unwritableSince = 0;
+                channel.write(payload.newFrame(channel), channel.voidPromise());
+                return true;
+            }
+        }
+        
+        long now = System.nanoTime();
+        if (unwritableSince == 0) {
+            unwritableSince = now;
+        } else if (now - unwritableSince > MAX_UNWRITABLE_NANOS) {
+            laggardDisconnects.increment();
+            logger.warn("连接长时间不可写，断开: {}", channel.remoteAddress());
+            channel.close();
+            return false;
+        }
+        
+        if (!payload.isHighPriority()) {
+            droppedFrames.increment();
+            return false;
+        }
+        if (pending.size() >= MAX_PENDING_FRAMES) {
+            overflowDisconnects.increment();
+            logger.warn("高优先级消息队列已满，断开: {}", channel.remoteAddress());
+            channel.close();
+            return false;
+        }
+        pending.add(payload.newFrame(channel));
+        queuedFrames.increment();
+        return true;
+    }
+    
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            unwritableSince = 0;
+            if (!pending.isEmpty()) {
+                drainPending();
+                ctx.channel().flush();
+            }
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+    
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        releasePending();
+        super.channelInactive(ctx);
+    }
+    
+    private void drainPending() {
+        WebSocketFrame frame;
+        while (channel.isWritable() && (frame = pending.poll()) != null) {
+            channel.write(frame, channel.voidPromise());
+        }
+    }
+    
+    private void releasePending() {
+        WebSocketFrame frame;
+        while ((frame = pending.poll()) != null) {
+            frame.release();
+        }
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("droppedFrames", droppedFrames.sum());
+        stats.put("queuedFrames", queuedFrames.sum());
+        stats.put("overflowDisconnects", overflowDisconnects.sum());
+        stats.put("laggardDisconnects", laggardDisconnects.sum());
+        return stats;
+    }
+}
@@ -1,28 +1,58 @@
 package com.live.broadcast.handler;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.live.broadcast.danmaku.DanmakuService;
+import com.live.broadcast.filter.SensitiveWordFilter;
+import com.live.broadcast.gift.GiftService;
+import com.live.broadcast.gift.GiftType;
 import com.live.broadcast.manager.LiveRoomManager;
+import com.live.broadcast.model.LiveRoom;
 import com.live.broadcast.model.LiveUser;
 import com.live.broadcast.model.Message;
+import com.live.broadcast.protocol.BinaryMessageCodec;
+import com.live.broadcast.protocol.BroadcastDeflater;
+import com.live.broadcast.protocol.EncodedMessage;
+import com.live.broadcast.protocol.InboundMessage;
+import com.live.broadcast.protocol.JsonMessageParser;
+import com.live.broadcast.protocol.WireProtocol;
+import com.live.broadcast.ratelimit.ChatFloodGuard;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
-import io.netty.handler.timeout.IdleState;
-import io.netty.handler.timeout.IdleStateEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 /**
  * WebSocket消息处理器
+ * 文本帧按JSON解析，二进制帧按BinaryMessageCodec解析，解析结果统一分发
  */
-public class WebSocketServerHandler extends SimpleChannelInboundHandler<TextWebSocketFrame> {
+public class WebSocketServerHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketServerHandler.class);
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    
+    // 刷屏拒绝的回复预先编码，刷屏时不需要再序列化
+    private static final Map<ChatFloodGuard.Verdict, EncodedMessage> FLOOD_REPLIES = new EnumMap<>(ChatFloodGuard.Verdict.class);
+    
+    static {
+        FLOOD_REPLIES.put(ChatFloodGuard.Verdict.USER_LIMITED, encodeError("发言过于频繁，请稍后再试"));
+        FLOOD_REPLIES.put(ChatFloodGuard.Verdict.ROOM_LIMITED, encodeError("直播间消息过多，请稍后再试"));
+        FLOOD_REPLIES.put(ChatFloodGuard.Verdict.DUPLICATE, encodeError("请勿重复发送相同内容"));
+    }
+    
+    // 心跳回复预先编码，所有连接共享，不带时间戳
+    private static final EncodedMessage PONG = encodePong();
     
     private LiveUser user;
     
+    // 复用的上行消息对象
+    private final InboundMessage inbound = new InboundMessage();
+    
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         logger.info("客户端连接: {}", ctx.channel().remoteAddress());
@@ -35,7 +65,7 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<TextWebS
         
         // 用户离开直播间
         if (user != null) {
-            LiveRoomManager.getInstance().leaveRoom(user, ctx.channel());
+            LiveRoomManager.getInstance().leaveRoom(ctx.channel());
         }
         
         super.channelInactive(ctx);
@@ -44,58 +74,103 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<TextWebS
     @Override
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
         if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete) {
-            logger.info("WebSocket握手完成: {}", ctx.channel().remoteAddress());
-        } else if (evt instanceof IdleStateEvent) {
-            IdleStateEvent idleEvent = (IdleStateEvent) evt;
-            if (idleEvent.state() == IdleState.READER_IDLE) {
-                logger.warn("客户端读取超时，关闭连接: {}", ctx.channel().remoteAddress());
-                ctx.channel().close();
-            }
+            String subprotocol = ((WebSocketServerProtocolHandler.HandshakeComplete) evt).selectedSubprotocol();
+            WireProtocol protocol = WireProtocol.fromSubprotocol(subprotocol);
+            WireProtocol.set(ctx.channel(), protocol);
+            BroadcastDeflater.markNegotiated(ctx.channel());
+            logger.info("WebSocket握手完成: {}, 协议: {}, 压缩: {}", ctx.channel().remoteAddress(), protocol,
+                    BroadcastDeflater.isNegotiated(ctx.channel()));
         }
         super.userEventTriggered(ctx, evt);
     }
     
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame msg) throws Exception {
-        String text = msg.text();
-        logger.debug("收到消息: {}", text);
-        
+    protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) throws Exception {
         try {
-            JsonNode jsonNode = objectMapper.readTree(text);
-            String type = jsonNode.get("type").asText();
-            
-            switch (type) {
-                case "join":
-                    handleJoin(ctx, jsonNode);
-                    break;
-                case "leave":
-                    handleLeave(ctx, jsonNode);
-                    break;
-                case "chat":
-                    handleChat(ctx, jsonNode);
-                    break;
-                case "heartbeat":
-                    handleHeartbeat(ctx);
-                    break;
-                default:
-                    logger.warn("未知消息类型: {}", type);
+            if (frame instanceof BinaryWebSocketFrame) {
+                BinaryMessageCodec.decode(frame.content(), inbound);
+            } else if (frame instanceof TextWebSocketFrame) {
+                JsonMessageParser.parse(frame.content(), inbound);
+            } else {
+                return;
             }
-        } catch (Exception e) {
-            logger.error("处理消息失败: {}", text, e);
+        } catch (CorruptedFrameException e) {
+            logger.warn("消息格式错误: {}, {}", ctx.channel().remoteAddress(), e.getMessage());
             sendError(ctx, "消息格式错误");
+            return;
         }
+        
+        if (logger.isDebugEnabled()) {
+            logger.debug("收到消息: {}", inbound);
+        }
+        dispatch(ctx, inbound);
+    }
+    
+    /**
+     * 按消息类型分发，缺少必填字段的消息直接拒绝
+     */
+    private void dispatch(ChannelHandlerContext ctx, InboundMessage message) {
+        String type = message.getType();
+        if (type == null) {
+            sendError(ctx, "缺少字段: type");
+            return;
+        }
+        
+        switch (type) {
+            case "join":
+                if (requireField(ctx, message.getRoomId(), "roomId")
+                        && requireField(ctx, message.getUserId(), "userId")
+                        && requireField(ctx, message.getUsername(), "username")) {
+                    handleJoin(ctx, message);
+                }
+                break;
+            case "leave":
+                handleLeave(ctx);
+                break;
+            case "chat":
+                if (requireField(ctx, message.getRoomId(), "roomId")
+                        && requireField(ctx, message.getContent(), "content")) {
+                    handleChat(ctx, message);
+                }
+                break;
+            case "danmaku":
+                if (requireField(ctx, message.getRoomId(), "roomId")
+                        && requireField(ctx, message.getContent(), "content")) {
+                    handleDanmaku(ctx, message);
+                }
+                break;
+            case "gift":
+                if (requireField(ctx, message.getRoomId(), "roomId")
+                        && requireField(ctx, message.getContent(), "content")) {
+                    handleGift(ctx, message);
+                }
+                break;
+            case "heartbeat":
+                handleHeartbeat(ctx);
+                break;
+            default:
+                logger.warn("未知消息类型: {}", type);
+        }
+    }
+    
+    private boolean requireField(ChannelHandlerContext ctx, String value, String field) {
+        if (value == null || value.isEmpty()) {
+            sendError(ctx, "缺少字段: " + field);
+            return false;
+        }
+        return true;
     }
     
     /**
      * 处理加入直播间
      */
-    private void handleJoin(ChannelHandlerContext ctx, JsonNode jsonNode) {
-        String roomId = jsonNode.get("roomId").asText();
-        String userId = jsonNode.get("userId").asText();
-        String username = jsonNode.get("username").asText();
+    private void handleJoin(ChannelHandlerContext ctx, InboundMessage message) {
+        String roomId = message.getRoomId();
+        String userId = message.getUserId();
+        String username = message.getUsername();
         
         user = new LiveUser(userId, username, ctx.channel());
-        LiveRoomManager.getInstance().joinRoom(roomId, user);
+        LiveRoomManager.getInstance().joinRoom(roomId, user, message.getLastSeq());
         
         // 发送加入成功消息
         Message joinMessage = new Message("join_success", "加入直播间成功", roomId);
@@ -107,9 +182,9 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<TextWebS
     /**
      * 处理离开直播间
      */
-    private void handleLeave(ChannelHandlerContext ctx, JsonNode jsonNode) {
+    private void handleLeave(ChannelHandlerContext ctx) {
         if (user != null) {
-            LiveRoomManager.getInstance().leaveRoom(user, ctx.channel());
+            LiveRoomManager.getInstance().leaveRoom(ctx.channel());
             logger.info("用户 {} 离开直播间", user.getUsername());
         }
     }
@@ -117,32 +192,111 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<TextWebS
     /**
      * 处理聊天消息
      */
-    private void handleChat(ChannelHandlerContext ctx, JsonNode jsonNode) {
-        if (user == null) {
-            sendError(ctx, "请先加入直播间");
+    private void handleChat(ChannelHandlerContext ctx, InboundMessage message) {
+        String content = acceptContent(ctx, message);
+        if (content == null) {
             return;
         }
         
-        String content = jsonNode.get("content").asText();
-        String roomId = jsonNode.get("roomId").asText();
-        
+        String roomId = message.getRoomId();
         Message chatMessage = new Message("chat", content, roomId);
         chatMessage.setUserId(user.getUserId());
         chatMessage.setUsername(user.getUsername());
         chatMessage.setTimestamp(System.currentTimeMillis());
         
-        // 广播消息到直播间所有用户
-        LiveRoomManager.getInstance().broadcastToRoom(roomId, chatMessage);
+        // 广播消息到直播间所有用户，热门房间会合并后批量下发
+        LiveRoomManager.getInstance().broadcastChat(roomId, chatMessage);
+        
+        logger.debug("用户 {} 在直播间 {} 发送消息: {}", user.getUsername(), roomId, content);
+    }
+    
+    /**
+     * 处理弹幕
+     */
+    private void handleDanmaku(ChannelHandlerContext ctx, InboundMessage message) {
+        String content = acceptContent(ctx, message);
+        if (content == null) {
+            return;
+        }
         
-        logger.info("用户 {} 在直播间 {} 发送消息: {}", user.getUsername(), roomId, content);
+        String roomId = message.getRoomId();
+        Message danmaku = DanmakuService.getInstance().publish(roomId, user, content);
+        if (danmaku == null) {
+            sendError(ctx, "直播未开始，无法发送弹幕");
+            return;
+        }
+        LiveRoomManager.getInstance().broadcastBatched(roomId, danmaku);
     }
     
     /**
-     * 处理心跳
+     * 处理送礼，content为礼物ID，count为数量（默认1）
+     * 连击送礼是正常行为，不经过聊天的刷屏控制
+     */
+    private void handleGift(ChannelHandlerContext ctx, InboundMessage message) {
+        if (user == null) {
+            sendError(ctx, "请先加入直播间");
+            return;
+        }
+        
+        GiftType type = GiftType.of(message.getContent());
+        if (type == null) {
+            sendError(ctx, "未知礼物");
+            return;
+        }
+        long count = message.getCount() != null ? message.getCount() : 1;
+        if (count < 1 || count > GiftService.MAX_COUNT) {
+            sendError(ctx, "礼物数量应为1到" + GiftService.MAX_COUNT);
+            return;
+        }
+        
+        // 只能给当前加入的直播间送礼
+        String roomId = message.getRoomId();
+        if (roomId == null || !roomId.equals(LiveRoomManager.getInstance().getJoinedRoomId(ctx.channel()))) {
+            sendError(ctx, "只能给已加入的直播间送礼");
+            return;
+        }
+        if (LiveRoomManager.getInstance().getRoom(roomId) == null) {
+            sendError(ctx, "直播间不存在");
+            return;
+        }
+        
+        Message gift = GiftService.getInstance().send(roomId, user, type, (int) count);
+        LiveRoomManager.getInstance().broadcastBatched(roomId, gift);
+    }
+    
+    /**
+     * 聊天和弹幕共用的检查：是否已加入、刷屏控制、敏感词过滤
+     *
+     * @return 可以广播的内容，被拒绝时返回null（已回复错误）
+     */
+    private String acceptContent(ChannelHandlerContext ctx, InboundMessage message) {
+        if (user == null) {
+            sendError(ctx, "请先加入直播间");
+            return null;
+        }
+        
+        // 刷屏控制：重复内容、用户频率、直播间频率
+        LiveRoom room = LiveRoomManager.getInstance().getRoom(message.getRoomId());
+        ChatFloodGuard.Verdict verdict = ChatFloodGuard.of(ctx.channel())
+                .check(message.getContent(), room != null ? room.getChatBucket() : null);
+        if (verdict != ChatFloodGuard.Verdict.ACCEPTED) {
+            ctx.writeAndFlush(WireProtocol.of(ctx.channel()).newFrame(FLOOD_REPLIES.get(verdict)));
+            return null;
+        }
+        
+        // 敏感词过滤，按策略掩码或拒绝
+        String content = SensitiveWordFilter.getInstance().filter(message.getContent());
+        if (content == null) {
+            sendError(ctx, "消息包含敏感词");
+        }
+        return content;
+    }
+    
+    /**
+     * 处理心跳，连接存活由ConnectionSupervisor检测，这里只回复共享的pong
      */
     private void handleHeartbeat(ChannelHandlerContext ctx) {
-        Message pongMessage = new Message("pong", "pong", null);
-        sendMessage(ctx, pongMessage);
+        ctx.writeAndFlush(WireProtocol.of(ctx.channel()).newFrame(PONG), ctx.voidPromise());
     }
     
     /**
@@ -150,13 +304,30 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler<TextWebS
      */
     private void sendMessage(ChannelHandlerContext ctx, Message message) {
         try {
-            String json = objectMapper.writeValueAsString(message);
-            ctx.writeAndFlush(new TextWebSocketFrame(json));
+            ctx.writeAndFlush(WireProtocol.of(ctx.channel()).encode(message));
         } catch (Exception e) {
             logger.error("发送消息失败", e);
         }
     }
     
+    private static EncodedMessage encodePong() {
+        Message pong = new Message("pong", "pong", null);
+        pong.setTimestamp(0);
+        try {
+            return EncodedMessage.encode(pong);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static EncodedMessage encodeError(String error) {
+        try {
+            return EncodedMessage.encode(new Message("error", error, null));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
     /**
      * 发送错误消息
      */
@@ -1,35 +1,93 @@
 package com.live.broadcast.manager;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.live.broadcast.analytics.AnalyticsService;
+import com.live.broadcast.cluster.ClusterConfig;
+import com.live.broadcast.cluster.RoomEvent;
+import com.live.broadcast.cluster.RoomEventBus;
+import com.live.broadcast.gift.GiftService;
+import com.live.broadcast.handler.SlowConsumerHandler;
 import com.live.broadcast.model.LiveRoom;
 import com.live.broadcast.model.LiveUser;
 import com.live.broadcast.model.Message;
+import com.live.broadcast.model.ViewerGroup;
+import com.live.broadcast.protocol.EncodedMessage;
+import com.live.broadcast.protocol.BroadcastPayload;
+import com.live.broadcast.protocol.WireProtocol;
 import com.live.broadcast.record.RecordService;
+import com.live.broadcast.stream.StreamManager;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 直播间管理器 - 单例模式
  */
 public class LiveRoomManager {
     private static final Logger logger = LoggerFactory.getLogger(LiveRoomManager.class);
-    private static final ObjectMapper objectMapper = new ObjectMapper();
     private static volatile LiveRoomManager instance;
     
     // 直播间映射 roomId -> LiveRoom
     private final Map<String, LiveRoom> rooms = new ConcurrentHashMap<>();
     
-    // 用户与房间的映射 Channel -> roomId
-    private final Map<Channel, String> userRoomMap = new ConcurrentHashMap<>();
+    // channel当前所在的房间和加入时登记的观众
+    private static final AttributeKey<Membership> MEMBERSHIP = AttributeKey.valueOf("membership");
+    
+    // 直播间目录索引
+    private final RoomDirectory directory = new RoomDirectory();
+    
+    // 聊天历史 roomId -> RoomHistory
+    private final Map<String, RoomHistory> histories = new ConcurrentHashMap<>();
+    
+    // 聊天消息合并器 roomId -> RoomMessageBatcher
+    private final Map<String, RoomMessageBatcher> batchers = new ConcurrentHashMap<>();
+    
+    // 进出房间消息汇总，汇总的是本节点的进出，只在本节点广播
+    private final PresenceAggregator presence = new PresenceAggregator(this::broadcastLocal);
+    
+    // 节点间的直播间事件总线
+    private final RoomEventBus bus = ClusterConfig.createEventBus();
+    
+    // 本节点在总线上的订阅状态 roomId -> 订阅状态，观众数在0和1之间变化时切换
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    
+    // 房间相关的定时任务
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("room-scheduler", true));
     
     private LiveRoomManager() {
         // 创建一些默认直播间
         createDefaultRooms();
+        
+        // 定时刷新目录索引中观众数的变化
+        scheduler.scheduleWithFixedDelay(directory::refreshDirty, 1, 1, TimeUnit.SECONDS);
+        
+        // 定时发送大房间的进出汇总
+        scheduler.scheduleWithFixedDelay(presence::flush, PresenceAggregator.DIGEST_INTERVAL_MILLIS,
+                PresenceAggregator.DIGEST_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        
+        bus.start(new RoomEventBus.Listener() {
+            @Override
+            public void onEvent(RoomEvent event) {
+                onRemoteEvent(event);
+            }
+            
+            @Override
+            public void onRemoteSubscribe(String nodeId, String roomId) {
+                sendLiveState(nodeId, roomId);
+            }
+        });
     }
     
     public static LiveRoomManager getInstance() {
@@ -59,6 +117,7 @@ public class LiveRoomManager {
     public LiveRoom createRoom(String roomId, String title, String streamerId, String streamerName) {
         LiveRoom room = new LiveRoom(roomId, title, streamerId, streamerName);
         rooms.put(roomId, room);
+        directory.update(room);
         logger.info("创建直播间: {}", room);
         return room;
     }
@@ -77,57 +136,100 @@ public class LiveRoomManager {
         return rooms;
     }
     
+    /**
+     * 获取直播间目录索引
+     */
+    public RoomDirectory getDirectory() {
+        return directory;
+    }
+    
+    /**
+     * 获取节点间事件总线
+     */
+    public RoomEventBus getEventBus() {
+        return bus;
+    }
+    
+    /**
+     * 获取房间定时任务调度器
+     */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+    
     /**
      * 用户加入直播间
      */
     public void joinRoom(String roomId, LiveUser user) {
+        joinRoom(roomId, user, null);
+    }
+    
+    /**
+     * 用户加入直播间，并补发聊天历史
+     *
+     * @param lastSeq 客户端最后收到的消息序号，为空时补发最近的消息
+     */
+    public void joinRoom(String roomId, LiveUser user, Long lastSeq) {
         LiveRoom room = rooms.get(roomId);
         if (room == null) {
             logger.warn("直播间不存在: {}", roomId);
             return;
         }
         
-        // 如果用户已在其他房间，先离开
-        String currentRoomId = userRoomMap.get(user.getChannel());
-        if (currentRoomId != null && !currentRoomId.equals(roomId)) {
-            leaveRoom(user, user.getChannel());
-        }
+        // 连接上已加入过房间（包括同一房间）时，先移除之前登记的观众，避免同一连接在房间中重复
+        Channel channel = user.getChannel();
+        leaveRoom(channel);
         
         // 加入新房间
         room.addViewer(user);
-        userRoomMap.put(user.getChannel(), roomId);
+        channel.attr(MEMBERSHIP).set(new Membership(roomId, user));
+        directory.markDirty(room);
+        updateSubscription(room);
+        AnalyticsService.getInstance().onJoin(roomId, user.getUserId(), room.getViewerCount());
         
-        // 广播用户加入消息
-        Message joinMessage = new Message("user_join", user.getUsername() + " 加入了直播间", roomId);
-        joinMessage.setUserId(user.getUserId());
-        joinMessage.setUsername(user.getUsername());
-        broadcastToRoom(roomId, joinMessage);
+        // 广播用户加入消息，大房间只计入汇总
+        if (presence.record(room, user, true)) {
+            Message joinMessage = new Message("user_join", user.getUsername() + " 加入了直播间", roomId);
+            joinMessage.setUserId(user.getUserId());
+            joinMessage.setUsername(user.getUsername());
+            broadcastToRoom(roomId, joinMessage);
+        }
         
         // 发送房间信息给新用户
         sendRoomInfo(user.getChannel(), room);
         
+        // 补发错过的聊天消息
+        sendHistory(channel, roomId, lastSeq);
+        
         logger.info("用户 {} 加入直播间 {}, 当前观众数: {}", 
                 user.getUsername(), roomId, room.getViewerCount());
     }
     
     /**
-     * 用户离开直播间
+     * 连接离开当前所在的直播间，移除的是加入时登记的观众
      */
-    public void leaveRoom(LiveUser user, Channel channel) {
-        String roomId = userRoomMap.remove(channel);
-        if (roomId == null) {
+    public void leaveRoom(Channel channel) {
+        Membership membership = channel.attr(MEMBERSHIP).getAndSet(null);
+        if (membership == null) {
             return;
         }
+        String roomId = membership.roomId;
+        LiveUser user = membership.user;
         
         LiveRoom room = rooms.get(roomId);
         if (room != null) {
             room.removeViewer(user);
+            directory.markDirty(room);
+            updateSubscription(room);
+            AnalyticsService.getInstance().onLeave(roomId, System.currentTimeMillis() - user.getJoinTime());
             
-            // 广播用户离开消息
-            Message leaveMessage = new Message("user_leave", user.getUsername() + " 离开了直播间", roomId);
-            leaveMessage.setUserId(user.getUserId());
-            leaveMessage.setUsername(user.getUsername());
-            broadcastToRoom(roomId, leaveMessage);
+            // 广播用户离开消息，大房间只计入汇总
+            if (presence.record(room, user, false)) {
+                Message leaveMessage = new Message("user_leave", user.getUsername() + " 离开了直播间", roomId);
+                leaveMessage.setUserId(user.getUserId());
+                leaveMessage.setUsername(user.getUsername());
+                broadcastToRoom(roomId, leaveMessage);
+            }
             
             logger.info("用户 {} 离开直播间 {}, 当前观众数: {}", 
                     user.getUsername(), roomId, room.getViewerCount());
@@ -135,33 +237,288 @@ public class LiveRoomManager {
     }
     
     /**
-     * 向房间广播消息
+     * 连接当前加入的直播间，未加入时返回null
+     */
+    public String getJoinedRoomId(Channel channel) {
+        Membership membership = channel.attr(MEMBERSHIP).get();
+        return membership != null ? membership.roomId : null;
+    }
+    
+    /**
+     * 有本地观众时订阅直播间，最后一个观众离开后取消订阅
+     * 观众数变化后登记一次同步请求，同一时刻只有一个线程执行同步：它按当前观众数订阅或取消订阅，
+     * 直到处理完同步期间登记的所有请求，因此最后一次同步总是在最后一次观众数变化之后读取观众数。
+     * 每次加入和离开都要做一次原子自增，但不持有房间的锁，也不阻塞其他线程
+     */
+    private void updateSubscription(LiveRoom room) {
+        String roomId = room.getRoomId();
+        Subscription subscription = subscriptions.get(roomId);
+        if (subscription == null) {
+            subscription = subscriptions.computeIfAbsent(roomId, k -> new Subscription());
+        }
+        if (subscription.requests.getAndIncrement() != 0) {
+            return;
+        }
+        int pending = 1;
+        do {
+            boolean wanted = room.getViewerCount() > 0;
+            if (subscription.subscribed != wanted) {
+                subscription.subscribed = wanted;
+                if (wanted) {
+                    bus.subscribe(roomId);
+                } else {
+                    bus.unsubscribe(roomId);
+                }
+            }
+            pending = subscription.requests.addAndGet(-pending);
+        } while (pending != 0);
+    }
+    
+    /**
+     * 其他节点开始订阅时，持有推流的节点向它补发开播状态，之后的开停播变化照常发布
+     */
+    private void sendLiveState(String nodeId, String roomId) {
+        LiveRoom room = rooms.get(roomId);
+        if (room == null || !room.isLive() || !StreamManager.getInstance().getRegistry().holdsStream(roomId)) {
+            return;
+        }
+        bus.send(nodeId, RoomEvent.of(RoomEvent.Type.LIVE_START, roomId, new Message("live_start", "直播开始", roomId)));
+    }
+    
+    /**
+     * 向房间广播消息，同时发布给订阅了该房间的其他节点
      */
     public void broadcastToRoom(String roomId, Message message) {
+        broadcastLocal(roomId, message);
+        publish(RoomEvent.Type.MESSAGE, roomId, message);
+    }
+    
+    /**
+     * 只向本节点的观众广播消息
+     * 消息按每种协议只编码一次，观众按所在的EventLoop分组，每个EventLoop只提交一个任务，写完该组所有channel后再统一flush
+     */
+    public void broadcastLocal(String roomId, Message message) {
         LiveRoom room = rooms.get(roomId);
         if (room == null) {
             logger.warn("广播消息失败，房间不存在: {}", roomId);
             return;
         }
         
+        BroadcastPayload payload;
         try {
-            String json = objectMapper.writeValueAsString(message);
-            TextWebSocketFrame frame = new TextWebSocketFrame(json);
-            
-            room.getViewers().forEach(viewer -> {
-                Channel channel = viewer.getChannel();
-                if (channel.isActive()) {
-                    channel.writeAndFlush(frame.retain());
-                } else {
-                    // 清理无效的连接
-                    room.removeViewer(viewer);
-                    userRoomMap.remove(channel);
-                }
-            });
-            
-            frame.release();
+            payload = BroadcastPayload.encode(message);
         } catch (Exception e) {
             logger.error("广播消息失败", e);
+            return;
+        }
+        
+        try {
+            broadcastFrame(room, payload);
+        } finally {
+            payload.release();
+        }
+    }
+    
+    /**
+     * 广播聊天消息，同时发布给订阅了该房间的其他节点
+     */
+    public void broadcastChat(String roomId, Message message) {
+        LiveRoom room = rooms.get(roomId);
+        if (room == null) {
+            logger.warn("广播消息失败，房间不存在: {}", roomId);
+            return;
+        }
+        
+        publish(RoomEvent.Type.MESSAGE, roomId, message);
+        deliverChat(room, message);
+    }
+    
+    /**
+     * 向本节点的观众下发聊天消息，序号由本节点分配
+     * 小房间立即下发；观众较多的房间先缓存，按周期合并成一个批量帧下发
+     */
+    private void deliverChat(LiveRoom room, Message message) {
+        String roomId = room.getRoomId();
+        
+        // 分配序号并保存到历史，编码结果同时用于广播
+        RoomHistory history = histories.computeIfAbsent(roomId, RoomHistory::new);
+        EncodedMessage encoded;
+        try {
+            message.setSeq(history.nextSeq());
+            encoded = EncodedMessage.encode(message);
+        } catch (Exception e) {
+            logger.error("广播消息失败", e);
+            return;
+        }
+        history.put(message.getSeq(), encoded);
+        
+        int viewerCount = room.getViewerCount();
+        if (viewerCount < RoomMessageBatcher.BATCH_THRESHOLD) {
+            BroadcastPayload payload = BroadcastPayload.of(encoded);
+            try {
+                broadcastFrame(room, payload);
+            } finally {
+                payload.release();
+            }
+            return;
+        }
+        
+        RoomMessageBatcher batcher = batchers.computeIfAbsent(roomId, k -> newBatcher(room));
+        if (!batcher.offer(encoded, RoomMessageBatcher.tickMillis(viewerCount))) {
+            logger.debug("聊天消息缓存已满，丢弃消息: roomId={}", roomId);
+        }
+    }
+    
+    /**
+     * 合并广播弹幕、礼物等消息，同时发布给订阅了该房间的其他节点
+     */
+    public void broadcastBatched(String roomId, Message message) {
+        LiveRoom room = rooms.get(roomId);
+        if (room == null) {
+            logger.warn("广播消息失败，房间不存在: {}", roomId);
+            return;
+        }
+        
+        publish(RoomEvent.Type.MESSAGE, roomId, message);
+        deliverBatched(room, message);
+    }
+    
+    /**
+     * 向本节点的观众合并下发消息
+     * 这类消息密度高且不要求逐条实时，不论房间大小都合并成批量帧下发，缓存已满时丢弃
+     */
+    private void deliverBatched(LiveRoom room, Message message) {
+        String roomId = room.getRoomId();
+        EncodedMessage encoded;
+        try {
+            encoded = EncodedMessage.encode(message);
+        } catch (Exception e) {
+            logger.error("广播消息失败", e);
+            return;
+        }
+        
+        RoomMessageBatcher batcher = batchers.computeIfAbsent(roomId, k -> newBatcher(room));
+        if (!batcher.offer(encoded, RoomMessageBatcher.tickMillis(room.getViewerCount()))) {
+            logger.debug("消息缓存已满，丢弃{}消息: roomId={}", message.getType(), roomId);
+        }
+    }
+    
+    /**
+     * 发布给其他节点，没有节点订阅该房间时不编码
+     */
+    private void publish(RoomEvent.Type type, String roomId, Message message) {
+        if (!bus.hasRemoteSubscribers(roomId)) {
+            return;
+        }
+        try {
+            bus.publish(RoomEvent.of(type, roomId, message));
+        } catch (Exception e) {
+            logger.error("发布直播间事件失败: roomId={}", roomId, e);
+        }
+    }
+    
+    /**
+     * 处理其他节点发布的事件，只在本节点广播一次，不再转发
+     * 开停播事件同步直播间状态，录播和统计由推流所在的节点负责；推流归属声明交给归属登记
+     */
+    private void onRemoteEvent(RoomEvent event) {
+        if (event.getType() == RoomEvent.Type.STREAM_CLAIM || event.getType() == RoomEvent.Type.STREAM_RELEASE) {
+            StreamManager.getInstance().getRegistry().onRemoteEvent(event);
+            return;
+        }
+        
+        LiveRoom room = rooms.get(event.getRoomId());
+        if (room == null) {
+            return;
+        }
+        Message message = event.decodeMessage(ByteBufAllocator.DEFAULT);
+        switch (event.getType()) {
+            case LIVE_START:
+            case LIVE_STOP:
+                // 订阅时补发的状态可能与本地一致，只在状态变化时通知观众
+                boolean live = event.getType() == RoomEvent.Type.LIVE_START;
+                if (room.isLive() != live) {
+                    room.setLive(live);
+                    directory.update(room);
+                    if (!live) {
+                        GiftService.getInstance().onLiveStop(room.getRoomId());
+                    }
+                    broadcastLocal(room.getRoomId(), message);
+                }
+                break;
+            default:
+                switch (message.getType()) {
+                    case "chat":
+                        deliverChat(room, message);
+                        break;
+                    case "danmaku":
+                    case "gift":
+                        deliverBatched(room, message);
+                        break;
+                    default:
+                        broadcastLocal(room.getRoomId(), message);
+                        break;
+                }
+                break;
+        }
+    }
+    
+    private RoomMessageBatcher newBatcher(LiveRoom room) {
+        return new RoomMessageBatcher(room.getRoomId(), scheduler, payload -> broadcastFrame(room, payload));
+    }
+    
+    /**
+     * 将已编码的内容发送给房间内所有观众，不改变payload的引用计数
+     */
+    private void broadcastFrame(LiveRoom room, BroadcastPayload payload) {
+        for (ViewerGroup group : room.getViewerGroups()) {
+            BroadcastPayload shared = payload.retain();
+            try {
+                group.getEventLoop().execute(() -> writeAndFlushAll(room, group, shared));
+            } catch (RejectedExecutionException e) {
+                shared.release();
+                logger.warn("事件循环已关闭，丢弃广播消息: roomId={}", room.getRoomId());
+            }
+        }
+    }
+    
+    /**
+     * 在channel所属的EventLoop中执行：先写入所有channel，再逐个flush
+     * 不可写的channel由SlowConsumerHandler决定丢弃或排队
+     */
+    private static void writeAndFlushAll(LiveRoom room, ViewerGroup group, BroadcastPayload shared) {
+        try {
+            int dropped = 0;
+            for (LiveUser viewer : group.getViewers()) {
+                Channel channel = viewer.getChannel();
+                if (channel.isActive() && !SlowConsumerHandler.write(channel, shared)) {
+                    dropped++;
+                }
+            }
+            if (dropped > 0) {
+                room.recordDroppedMessages(dropped);
+            }
+            for (LiveUser viewer : group.getViewers()) {
+                viewer.getChannel().flush();
+            }
+        } finally {
+            shared.release();
+        }
+    }
+    
+    /**
+     * 把序号之后的聊天历史合并成一个批量帧发送
+     */
+    private void sendHistory(Channel channel, String roomId, Long lastSeq) {
+        RoomHistory history = histories.get(roomId);
+        if (history == null) {
+            return;
+        }
+        
+        WireProtocol protocol = WireProtocol.of(channel);
+        ByteBuf replay = history.encodeReplay(lastSeq, protocol);
+        if (replay != null) {
+            channel.writeAndFlush(protocol.newFrame(replay));
         }
     }
     
@@ -173,8 +530,7 @@ public class LiveRoomManager {
             Message roomInfoMessage = new Message("room_info", "房间信息", room.getRoomId());
             // 这里可以添加更多房间信息，比如观众列表等
             
-            String json = objectMapper.writeValueAsString(roomInfoMessage);
-            channel.writeAndFlush(new TextWebSocketFrame(json));
+            channel.writeAndFlush(WireProtocol.of(channel).encode(roomInfoMessage));
         } catch (Exception e) {
             logger.error("发送房间信息失败", e);
         }
@@ -187,8 +543,11 @@ public class LiveRoomManager {
         LiveRoom room = rooms.get(roomId);
         if (room != null) {
             room.setLive(true);
+            directory.update(room);
+            AnalyticsService.getInstance().onLiveStart(roomId);
             Message liveStartMessage = new Message("live_start", "直播开始", roomId);
-            broadcastToRoom(roomId, liveStartMessage);
+            broadcastLocal(roomId, liveStartMessage);
+            publish(RoomEvent.Type.LIVE_START, roomId, liveStartMessage);
             
             // 通知录播服务
             RecordService.getInstance().onLiveStart(roomId);
@@ -204,8 +563,12 @@ public class LiveRoomManager {
         LiveRoom room = rooms.get(roomId);
         if (room != null) {
             room.setLive(false);
+            directory.update(room);
+            AnalyticsService.getInstance().onLiveStop(roomId);
+            GiftService.getInstance().onLiveStop(roomId);
             Message liveStopMessage = new Message("live_stop", "直播结束", roomId);
-            broadcastToRoom(roomId, liveStopMessage);
+            broadcastLocal(roomId, liveStopMessage);
+            publish(RoomEvent.Type.LIVE_STOP, roomId, liveStopMessage);
             
             // 通知录播服务
             RecordService.getInstance().onLiveStop(roomId);
@@ -220,7 +583,7 @@ public class LiveRoomManager {
     public void printStatistics() {
         logger.info("=== 直播系统统计 ===");
         logger.info("直播间总数: {}", rooms.size());
-        logger.info("在线用户总数: {}", userRoomMap.size());
+        logger.info("在线用户总数: {}", rooms.values().stream().mapToInt(LiveRoom::getViewerCount).sum());
         
         rooms.forEach((roomId, room) -> {
             logger.info("房间 {}: {} 观众, 状态: {}", 
@@ -228,4 +591,28 @@ public class LiveRoomManager {
         });
         logger.info("==================");
     }
+    
+    /**
+     * 一个直播间在总线上的订阅状态
+     */
+    private static final class Subscription {
+        // 未处理的同步请求数，从0变为1的线程负责同步
+        private final AtomicInteger requests = new AtomicInteger();
+        
+        // 只由正在同步的线程读写，通过requests的原子操作保证可见性
+        private boolean subscribed;
+    }
+    
+    /**
+     * channel加入的房间和登记的观众，离开时按此移除
+     */
+    private static final class Membership {
+        private final String roomId;
+        private final LiveUser user;
+        
+        private Membership(String roomId, LiveUser user) {
+            this.roomId = roomId;
+            this.user = user;
+        }
+    }
 }
@@ -0,0 +1,120 @@
+package com.live.broadcast.manager;
+
+import com.live.broadcast.model.LiveRoom;
+import com.live.broadcast.model.LiveUser;
+import com.live.broadcast.model.Message;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * 进出房间消息汇总器
+ * 小房间和VIP用户（主播本人或配置的用户）仍逐条通知；大房间的进出只计数，按周期广播一条汇总消息
+ */
+public class PresenceAggregator {
+    // 观众数达到该值的房间改为汇总通知
+    public static final int DIGEST_THRESHOLD = Integer.getInteger("live.presence.threshold", 100);
+    
+    // 汇总消息的发送间隔（毫秒）
+    public static final int DIGEST_INTERVAL_MILLIS = Integer.getInteger("live.presence.intervalMs", 2000);
+    
+    // 始终逐条通知的用户ID，逗号分隔
+    private static final Set<String> VIP_USERS = parseUsers(System.getProperty("live.presence.vipUsers", ""));
+    
+    // 待汇总的计数 roomId -> Counts
+    private final Map<String, Counts> pending = new ConcurrentHashMap<>();
+    
+    private final BiConsumer<String, Message> sink;
+    
+    /**
+     * @param sink 汇总消息的发送方式，参数为房间ID和消息
+     */
+    public PresenceAggregator(BiConsumer<String, Message> sink) {
+        this.sink = sink;
+    }
+    
+    /**
+     * 用户进入或离开房间后调用
+     *
+     * @return 需要逐条通知时返回true，否则已计入汇总
+     */
+    public boolean record(LiveRoom room, LiveUser user, boolean joined) {
+        if (room.getViewerCount() < DIGEST_THRESHOLD || isVip(room, user)) {
+            return true;
+        }
+        
+        Counts counts = pending.computeIfAbsent(room.getRoomId(), k -> new Counts(room));
+        (joined ? counts.joined : counts.left).incrementAndGet();
+        return false;
+    }
+    
+    private static boolean isVip(LiveRoom room, LiveUser user) {
+        String userId = user.getUserId();
+        return userId != null && (userId.equals(room.getStreamerId()) || VIP_USERS.contains(userId));
+    }
+    
+    /**
+     * 发送所有房间的汇总消息，由定时任务调用
+     */
+    public void flush() {
+        pending.forEach((roomId, counts) -> {
+            int joined = counts.joined.getAndSet(0);
+            int left = counts.left.getAndSet(0);
+            if (joined == 0 && left == 0) {
+                pending.remove(roomId, counts);
+                return;
+            }
+            
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("joined", joined);
+            data.put("left", left);
+            data.put("viewerCount", counts.room.getViewerCount());
+            
+            Message digest = new Message("presence", formatDigest(joined, left, counts.room.getViewerCount()), roomId);
+            digest.setData(data);
+            sink.accept(roomId, digest);
+        });
+    }
+    
+    private static String formatDigest(int joined, int left, int viewerCount) {
+        StringBuilder sb = new StringBuilder();
+        if (joined > 0) {
+            sb.append('+').append(joined).append(" 人加入");
+        }
+        if (left > 0) {
+            if (sb.length() > 0) {
+                sb.append("，");
+            }
+            sb.append(left).append(" 人离开");
+        }
+        sb.append("，当前观众 ").append(viewerCount);
+        return sb.toString();
+    }
+    
+    private static Set<String> parseUsers(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+    
+    /**
+     * 单个房间的进出计数
+     */
+    private static final class Counts {
+        private final LiveRoom room;
+        private final AtomicInteger joined = new AtomicInteger();
+        private final AtomicInteger left = new AtomicInteger();
+        
+        Counts(LiveRoom room) {
+            this.room = room;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.live.broadcast.manager;
+
+import com.live.broadcast.model.LiveRoom;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * 直播间目录索引 - 按直播状态、观众数排序，支持按主播筛选和游标分页
+ * 索引基于ConcurrentSkipListSet，读操作不加锁；观众数变化只标记为脏数据，由定时任务批量重排
+ */
+public class RoomDirectory {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+    
+    // 排序规则：直播中优先，观众数降序，房间ID升序
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        if (a.live != b.live) {
+            return a.live ? -1 : 1;
+        }
+        if (a.viewerCount != b.viewerCount) {
+            return Integer.compare(b.viewerCount, a.viewerCount);
+        }
+        return a.roomId.compareTo(b.roomId);
+    };
+    
+    // 主索引
+    private final NavigableSet<Entry> ordered = new ConcurrentSkipListSet<>(ORDER);
+    
+    // 二级索引 streamerId -> 该主播的房间
+    private final Map<String, NavigableSet<Entry>> byStreamer = new ConcurrentHashMap<>();
+    
+    // 房间当前在索引中的条目 roomId -> Entry
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+    
+    // 待刷新的房间 roomId -> LiveRoom
+    private final Map<String, LiveRoom> dirtyRooms = new ConcurrentHashMap<>();
+    
+    /**
+     * 立即更新房间在索引中的位置
+     */
+    public void update(LiveRoom room) {
+        dirtyRooms.remove(room.getRoomId());
+        current.compute(room.getRoomId(), (roomId, old) -> {
+            Entry entry = new Entry(room);
+            if (old != null && old.sameKey(entry)) {
+                return old;
+            }
+            if (old != null) {
+                unindex(old);
+            }
+            ordered.add(entry);
+            byStreamer.computeIfAbsent(entry.streamerId, k -> new ConcurrentSkipListSet<>(ORDER)).add(entry);
+            return entry;
+        });
+    }
+    
+    /**
+     * 标记房间排序字段已变化，等待下一次批量刷新
+     */
+    public void markDirty(LiveRoom room) {
+        dirtyRooms.put(room.getRoomId(), room);
+    }
+    
+    /**
+     * 批量刷新脏数据
+     */
+    public void refreshDirty() {
+        Iterator<LiveRoom> iterator = dirtyRooms.values().iterator();
+        while (iterator.hasNext()) {
+            LiveRoom room = iterator.next();
+            iterator.remove();
+            if (current.containsKey(room.getRoomId())) {
+                update(room);
+            }
+        }
+    }
+    
+    /**
+     * 从索引中移除房间
+     */
+    public void remove(String roomId) {
+        dirtyRooms.remove(roomId);
+        current.computeIfPresent(roomId, (id, old) -> {
+            unindex(old);
+            return null;
+        });
+    }
+    
+    private void unindex(Entry entry) {
+        ordered.remove(entry);
+        NavigableSet<Entry> streamerRooms = byStreamer.get(entry.streamerId);
+        if (streamerRooms != null) {
+            streamerRooms.remove(entry);
+        }
+    }
+    
+    /**
+     * 分页查询
+     *
+     * @param cursor     上一页返回的游标，为空表示第一页
+     * @param limit      每页数量
+     * @param live       直播状态过滤，为空表示不过滤
+     * @param streamerId 主播过滤，为空表示不过滤
+     * @param minViewers 最少观众数
+     */
+    public Page query(String cursor, int limit, Boolean live, String streamerId, int minViewers) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        
+        NavigableSet<Entry> source = ordered;
+        if (streamerId != null) {
+            source = byStreamer.get(streamerId);
+            if (source == null) {
+                return new Page(new ArrayList<>(), null);
+            }
+        }
+        
+        if (cursor != null) {
+            source = source.tailSet(decodeCursor(cursor), false);
+        } else if (Boolean.FALSE.equals(live)) {
+            // 未开播房间都排在直播中房间之后，直接跳过
+            source = source.tailSet(new Entry(false, Integer.MAX_VALUE, ""), true);
+        }
+        
+        List<LiveRoom> rooms = new ArrayList<>(pageSize);
+        Entry last = null;
+        boolean hasMore = false;
+        for (Entry entry : source) {
+            if (live != null && entry.live != live) {
+                if (live) {
+                    break;
+                }
+                continue;
+            }
+            if (entry.viewerCount < minViewers) {
+                // 同一直播状态内按观众数降序，后面的条目不会再满足条件
+                if (live != null || !entry.live) {
+                    break;
+                }
+                continue;
+            }
+            if (rooms.size() == pageSize) {
+                hasMore = true;
+                break;
+            }
+            rooms.add(entry.room);
+            last = entry;
+        }
+        
+        return new Page(rooms, hasMore ? encodeCursor(last) : null);
+    }
+    
+    /**
+     * 索引中的房间数
+     */
+    public int size() {
+        return current.size();
+    }
+    
+    private static String encodeCursor(Entry entry) {
+        String raw = (entry.live ? "1" : "0") + ":" + entry.viewerCount + ":" + entry.roomId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static Entry decodeCursor(String cursor) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("游标格式错误: " + cursor, e);
+        }
+        
+        String[] parts = raw.split(":", 3);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("游标格式错误: " + cursor);
+        }
+        try {
+            return new Entry("1".equals(parts[0]), Integer.parseInt(parts[1]), parts[2]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("游标格式错误: " + cursor, e);
+        }
+    }
+    
+    /**
+     * 分页结果
+     */
+    public static class Page {
+        private final List<LiveRoom> rooms;
+        private final String nextCursor;
+        
+        public Page(List<LiveRoom> rooms, String nextCursor) {
+            this.rooms = rooms;
+            this.nextCursor = nextCursor;
+        }
+        
+        public List<LiveRoom> getRooms() { return rooms; }
+        public String getNextCursor() { return nextCursor; }
+    }
+    
+    /**
+     * 索引条目，保存排序字段的快照
+     */
+    private static final class Entry {
+        private final String roomId;
+        private final String streamerId;
+        private final boolean live;
+        private final int viewerCount;
+        private final LiveRoom room;
+        
+        Entry(LiveRoom room) {
+            this.roomId = room.getRoomId();
+            this.streamerId = room.getStreamerId() != null ? room.getStreamerId() : "";
+            this.live = room.isLive();
+            this.viewerCount = room.getViewerCount();
+            this.room = room;
+        }
+        
+        // 仅用于游标定位
+        Entry(boolean live, int viewerCount, String roomId) {
+            this.roomId = roomId;
+            this.streamerId = "";
+            this.live = live;
+            this.viewerCount = viewerCount;
+            this.room = null;
+        }
+        
+        boolean sameKey(Entry other) {
+            return live == other.live
+                    && viewerCount == other.viewerCount
+                    && streamerId.equals(other.streamerId);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.live.broadcast.manager;
+
+import com.live.broadcast.protocol.BatchEncoder;
+import com.live.broadcast.protocol.EncodedMessage;
+import com.live.broadcast.protocol.WireProtocol;
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 房间聊天历史 - 固定容量的环形缓冲区
+ * 保存已编码的消息字节和递增序号，新观众加入或断线重连时直接按序号补发，不需要重新序列化
+ */
+public class RoomHistory {
+    // 每个房间保留的消息条数
+    public static final int CAPACITY = Integer.getInteger("live.chat.history.size", 200);
+    
+    // 客户端没有提供序号时补发的条数
+    public static final int DEFAULT_REPLAY = Integer.getInteger("live.chat.history.replay", 50);
+    
+    private final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(CAPACITY);
+    private final BatchEncoder encoder;
+    
+    // 下一条消息的序号，从1开始
+    private final AtomicLong nextSeq = new AtomicLong(1);
+    
+    public RoomHistory(String roomId) {
+        this.encoder = new BatchEncoder(roomId);
+    }
+    
+    /**
+     * 分配下一条消息的序号
+     */
+    public long nextSeq() {
+        return nextSeq.getAndIncrement();
+    }
+    
+    /**
+     * 保存已编码的消息，覆盖同一位置上更早的消息
+     */
+    public void put(long seq, EncodedMessage message) {
+        ring.set(slot(seq), new Entry(seq, message));
+    }
+    
+    /**
+     * 获取指定序号之后的消息
+     *
+     * @param lastSeq 客户端最后收到的序号，为空时返回最近的DEFAULT_REPLAY条
+     */
+    public List<EncodedMessage> since(Long lastSeq) {
+        long latest = nextSeq.get() - 1;
+        // 序号超过最新序号说明服务端已重启，按首次加入处理
+        long from = lastSeq != null && lastSeq <= latest ? lastSeq + 1 : latest - DEFAULT_REPLAY + 1;
+        // 只能补发仍在缓冲区中的消息
+        from = Math.max(from, Math.max(1, latest - CAPACITY + 1));
+        
+        List<EncodedMessage> messages = new ArrayList<>((int) Math.max(0, latest - from + 1));
+        for (long seq = from; seq <= latest; seq++) {
+            Entry entry = ring.get(slot(seq));
+            // 序号已分配但尚未写入，或已被覆盖的位置直接跳过
+            if (entry != null && entry.seq == seq) {
+                messages.add(entry.message);
+            }
+        }
+        return messages;
+    }
+    
+    /**
+     * 把需要补发的消息编码成一个批量帧
+     *
+     * @return 没有需要补发的消息时返回null
+     */
+    public ByteBuf encodeReplay(Long lastSeq, WireProtocol protocol) {
+        List<EncodedMessage> messages = since(lastSeq);
+        return messages.isEmpty() ? null : encoder.encode(messages, protocol);
+    }
+    
+    private static int slot(long seq) {
+        return (int) (seq % CAPACITY);
+    }
+    
+    /**
+     * 环形缓冲区中的一条消息
+     */
+    private static final class Entry {
+        private final long seq;
+        private final EncodedMessage message;
+        
+        Entry(long seq, EncodedMessage message) {
+            this.seq = seq;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.live.broadcast.manager;
+
+import com.live.broadcast.protocol.BatchEncoder;
+import com.live.broadcast.protocol.BroadcastPayload;
+import com.live.broadcast.protocol.EncodedMessage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 房间消息合并器 - 把一个周期内的聊天消息合并成一个批量帧广播
+ * 消息入队时已按JSON和二进制协议各编码一次，批量帧由BatchEncoder直接拼接字节
+ */
+public class RoomMessageBatcher {
+    // 观众数低于该值的房间不合并，消息立即下发
+    public static final int BATCH_THRESHOLD = Integer.getInteger("live.chat.batch.threshold", 50);
+    
+    // 合并周期的上下限（毫秒），观众越多周期越长
+    public static final int MIN_TICK_MILLIS = Integer.getInteger("live.chat.batch.minTickMs", 50);
+    public static final int MAX_TICK_MILLIS = Integer.getInteger("live.chat.batch.maxTickMs", 100);
+    
+    // 单个周期内最多缓存的消息数，超出的消息直接丢弃
+    private static final int MAX_PENDING = 1000;
+    
+    private static final LongAdder batchedMessages = new LongAdder();
+    private static final LongAdder batchesSent = new LongAdder();
+    private static final LongAdder droppedMessages = new LongAdder();
+    
+    private final BatchEncoder encoder;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<BroadcastPayload> sink;
+    
+    private final Queue<EncodedMessage> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    
+    /**
+     * @param sink 接收批量帧内容，调用结束后内容会被释放
+     */
+    public RoomMessageBatcher(String roomId, ScheduledExecutorService scheduler, Consumer<BroadcastPayload> sink) {
+        this.encoder = new BatchEncoder(roomId);
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+    
+    /**
+     * 根据房间观众数计算合并周期
+     */
+    public static int tickMillis(int viewerCount) {
+        if (viewerCount >= BATCH_THRESHOLD * 100) {
+            return MAX_TICK_MILLIS;
+        }
+        // 观众数从阈值增长到阈值的100倍时，周期从下限线性过渡到上限（按数量级）
+        double scale = Math.log10(Math.max(1.0, (double) viewerCount / BATCH_THRESHOLD)) / 2;
+        return MIN_TICK_MILLIS + (int) ((MAX_TICK_MILLIS - MIN_TICK_MILLIS) * scale);
+    }
+    
+    /**
+     * 加入一条已编码的消息，等待下一次合并发送
+     *
+     * @return 缓存已满时返回false
+     */
+    public boolean offer(EncodedMessage message, int tickMillis) {
+        if (pendingCount.incrementAndGet() > MAX_PENDING) {
+            pendingCount.decrementAndGet();
+            droppedMessages.increment();
+            return false;
+        }
+        pending.offer(message);
+        
+        if (scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flush, tickMillis, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+    
+    /**
+     * 发送当前缓存的所有消息
+     */
+    private void flush() {
+        scheduled.set(false);
+        
+        List<EncodedMessage> messages = new ArrayList<>();
+        EncodedMessage message;
+        while ((message = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            messages.add(message);
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+        
+        BroadcastPayload payload = encoder.encode(messages);
+        batchedMessages.add(messages.size());
+        batchesSent.increment();
+        try {
+            sink.accept(payload);
+        } finally {
+            payload.release();
+        }
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long batches = batchesSent.sum();
+        long messages = batchedMessages.sum();
+        stats.put("threshold", BATCH_THRESHOLD);
+        stats.put("minTickMs", MIN_TICK_MILLIS);
+        stats.put("maxTickMs", MAX_TICK_MILLIS);
+        stats.put("batchesSent", batches);
+        stats.put("batchedMessages", messages);
+        stats.put("avgBatchSize", batches > 0 ? (double) messages / batches : 0);
+        stats.put("droppedMessages", droppedMessages.sum());
+        return stats;
+    }
+}
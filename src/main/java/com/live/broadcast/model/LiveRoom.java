@@ -1,7 +1,14 @@
 package com.live.broadcast.model;
 
-import java.util.Set;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.live.broadcast.ratelimit.ChatFloodGuard;
+import com.live.broadcast.ratelimit.TokenBucket;
+import io.netty.channel.EventLoop;
+
+import java.util.Collection;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 直播间模型
@@ -13,10 +20,18 @@ public class LiveRoom {
     private String streamerName;
     private boolean isLive;
     private long createTime;
-    private int viewerCount;
     
-    // 观众列表
-    private final Set<LiveUser> viewers = ConcurrentHashMap.newKeySet();
+    // 观众按所在的EventLoop分组 EventLoop -> ViewerGroup
+    private final Map<EventLoop, ViewerGroup> viewerGroups = new ConcurrentHashMap<>();
+    
+    // 观众数，分段计数避免竞争
+    private final LongAdder viewerCount = new LongAdder();
+    
+    // 因观众连接不可写而丢弃的消息数
+    private final LongAdder droppedMessages = new LongAdder();
+    
+    // 直播间发言令牌桶，限制广播到所有观众的聊天消息总速率
+    private final TokenBucket chatBucket = new TokenBucket(ChatFloodGuard.ROOM_RATE, ChatFloodGuard.ROOM_BURST);
     
     public LiveRoom(String roomId, String title, String streamerId, String streamerName) {
         this.roomId = roomId;
@@ -25,30 +40,79 @@ public class LiveRoom {
         this.streamerName = streamerName;
         this.createTime = System.currentTimeMillis();
         this.isLive = false;
-        this.viewerCount = 0;
     }
     
     /**
-     * 添加观众
+     * 添加观众，在观众channel所属的EventLoop中执行
+     */
+    public void addViewer(LiveUser viewer) {
+        EventLoop eventLoop = viewer.getChannel().eventLoop();
+        ViewerGroup group = viewerGroups.get(eventLoop);
+        if (group == null) {
+            // 分组数量不超过EventLoop数量，只在首次出现时创建
+            group = viewerGroups.computeIfAbsent(eventLoop, ViewerGroup::new);
+        }
+        ViewerGroup target = group;
+        runInEventLoop(eventLoop, () -> {
+            if (target.add(viewer)) {
+                viewerCount.increment();
+            }
+        });
+    }
+    
+    /**
+     * 移除观众，在观众channel所属的EventLoop中执行
+     */
+    public void removeViewer(LiveUser viewer) {
+        EventLoop eventLoop = viewer.getChannel().eventLoop();
+        ViewerGroup group = viewerGroups.get(eventLoop);
+        if (group == null) {
+            return;
+        }
+        runInEventLoop(eventLoop, () -> {
+            if (group.remove(viewer)) {
+                viewerCount.decrement();
+            }
+        });
+    }
+    
+    private static void runInEventLoop(EventLoop eventLoop, Runnable task) {
+        if (eventLoop.inEventLoop()) {
+            task.run();
+        } else {
+            eventLoop.execute(task);
+        }
+    }
+    
+    /**
+     * 获取按EventLoop分组的观众，每个分组只能在对应的EventLoop中访问
      */
-    public synchronized void addViewer(LiveUser viewer) {
-        viewers.add(viewer);
-        viewerCount = viewers.size();
+    @JsonIgnore
+    public Collection<ViewerGroup> getViewerGroups() {
+        return viewerGroups.values();
     }
     
     /**
-     * 移除观众
+     * 记录丢弃的消息数
      */
-    public synchronized void removeViewer(LiveUser viewer) {
-        viewers.remove(viewer);
-        viewerCount = viewers.size();
+    public void recordDroppedMessages(int count) {
+        droppedMessages.add(count);
     }
     
     /**
-     * 获取所有观众
+     * 获取丢弃的消息数
      */
-    public Set<LiveUser> getViewers() {
-        return viewers;
+    @JsonIgnore
+    public long getDroppedMessageCount() {
+        return droppedMessages.sum();
+    }
+    
+    /**
+     * 获取直播间发言令牌桶
+     */
+    @JsonIgnore
+    public TokenBucket getChatBucket() {
+        return chatBucket;
     }
     
     public String getRoomId() {
@@ -100,11 +164,7 @@ public class LiveRoom {
     }
     
     public int getViewerCount() {
-        return viewerCount;
-    }
-    
-    public void setViewerCount(int viewerCount) {
-        this.viewerCount = viewerCount;
+        return (int) viewerCount.sum();
     }
     
     @Override
@@ -116,7 +176,7 @@ public class LiveRoom {
                 ", streamerName='" + streamerName + '\'' +
                 ", isLive=" + isLive +
                 ", createTime=" + createTime +
-                ", viewerCount=" + viewerCount +
+                ", viewerCount=" + viewerCount.sum() +
                 '}';
     }
 }
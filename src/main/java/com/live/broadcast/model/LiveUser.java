@@ -2,6 +2,8 @@ package com.live.broadcast.model;
 
 import io.netty.channel.Channel;
 
+import java.util.Objects;
+
 /**
  * 直播用户模型
  */
@@ -50,6 +52,26 @@ public class LiveUser {
         this.joinTime = joinTime;
     }
     
+    /**
+     * 同一个连接上的同一个用户视为相等
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LiveUser)) {
+            return false;
+        }
+        LiveUser other = (LiveUser) o;
+        return channel == other.channel && Objects.equals(userId, other.userId);
+    }
+    
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(channel) + Objects.hashCode(userId);
+    }
+    
     @Override
     public String toString() {
         return "LiveUser{" +
@@ -1,5 +1,9 @@
 package com.live.broadcast.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Map;
+
 /**
  * 消息模型
  */
@@ -11,6 +15,14 @@ public class Message {
     private String username;
     private long timestamp;
     
+    // 附加数据，为空时不序列化
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Object> data;
+    
+    // 聊天消息在房间内的序号，客户端重连时用于补发
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long seq;
+    
     public Message() {
     }
     
@@ -69,6 +81,22 @@ public class Message {
         this.timestamp = timestamp;
     }
     
+    public Map<String, Object> getData() {
+        return data;
+    }
+    
+    public void setData(Map<String, Object> data) {
+        this.data = data;
+    }
+    
+    public Long getSeq() {
+        return seq;
+    }
+    
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+    
     @Override
     public String toString() {
         return "Message{" +
@@ -0,0 +1,57 @@
+package com.live.broadcast.model;
+
+import io.netty.channel.EventLoop;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 同一个EventLoop上的房间观众
+ * 只能在所属EventLoop的线程中访问，不需要任何锁
+ */
+public final class ViewerGroup {
+    private final EventLoop eventLoop;
+    private final Set<LiveUser> viewers = new HashSet<>();
+    
+    public ViewerGroup(EventLoop eventLoop) {
+        this.eventLoop = eventLoop;
+    }
+    
+    public EventLoop getEventLoop() {
+        return eventLoop;
+    }
+    
+    /**
+     * 添加观众，已存在时返回false
+     */
+    public boolean add(LiveUser viewer) {
+        assert eventLoop.inEventLoop();
+        return viewers.add(viewer);
+    }
+    
+    /**
+     * 移除观众，不存在时返回false
+     */
+    public boolean remove(LiveUser viewer) {
+        assert eventLoop.inEventLoop();
+        return viewers.remove(viewer);
+    }
+    
+    /**
+     * 获取所有观众
+     */
+    public Set<LiveUser> getViewers() {
+        assert eventLoop.inEventLoop();
+        return viewers;
+    }
+    
+    /**
+     * 复制观众列表，用于需要在其他线程遍历的场景
+     */
+    public List<LiveUser> snapshot() {
+        assert eventLoop.inEventLoop();
+        return new ArrayList<>(viewers);
+    }
+}
@@ -0,0 +1,83 @@
+package com.live.broadcast.protocol;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 批量帧编码器 - 直接拼接已编码消息的字节，不重新序列化
+ * JSON为{"type":"batch","roomId":"...","messages":[...]}，二进制格式见BinaryMessageCodec
+ */
+public final class BatchEncoder {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final byte[] JSON_SUFFIX = "]}".getBytes(StandardCharsets.UTF_8);
+    
+    private final byte[] jsonPrefix;
+    private final byte[] binaryHeader;
+    
+    public BatchEncoder(String roomId) {
+        try {
+            this.jsonPrefix = ("{\"type\":\"batch\",\"roomId\":" + objectMapper.writeValueAsString(roomId)
+                    + ",\"messages\":[").getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("房间ID无法编码: " + roomId, e);
+        }
+        this.binaryHeader = BinaryMessageCodec.encodeBatchHeader(roomId);
+    }
+    
+    /**
+     * 编码为广播内容，只有一条消息时不包装成批量帧
+     */
+    public BroadcastPayload encode(List<EncodedMessage> messages) {
+        if (messages.size() == 1) {
+            return BroadcastPayload.of(messages.get(0));
+        }
+        return new BroadcastPayload(encodeJson(messages), encodeBinary(messages));
+    }
+    
+    /**
+     * 按指定协议编码批量帧内容
+     */
+    public ByteBuf encode(List<EncodedMessage> messages, WireProtocol protocol) {
+        return protocol == WireProtocol.BINARY ? encodeBinary(messages) : encodeJson(messages);
+    }
+    
+    private ByteBuf encodeJson(List<EncodedMessage> messages) {
+        int size = jsonPrefix.length + JSON_SUFFIX.length;
+        for (EncodedMessage message : messages) {
+            size += message.getJson().length + 1;
+        }
+        
+        ByteBuf content = Unpooled.buffer(size);
+        content.writeBytes(jsonPrefix);
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                content.writeByte(',');
+            }
+            content.writeBytes(messages.get(i).getJson());
+        }
+        content.writeBytes(JSON_SUFFIX);
+        return content;
+    }
+    
+    private ByteBuf encodeBinary(List<EncodedMessage> messages) {
+        int size = binaryHeader.length + BinaryMessageCodec.varIntSize(messages.size());
+        for (EncodedMessage message : messages) {
+            int length = message.getBinary().length;
+            size += BinaryMessageCodec.varIntSize(length) + length;
+        }
+        
+        ByteBuf content = Unpooled.buffer(size);
+        content.writeBytes(binaryHeader);
+        BinaryMessageCodec.writeVarInt(content, messages.size());
+        for (EncodedMessage message : messages) {
+            BinaryMessageCodec.writeVarInt(content, message.getBinary().length);
+            content.writeBytes(message.getBinary());
+        }
+        return content;
+    }
+}
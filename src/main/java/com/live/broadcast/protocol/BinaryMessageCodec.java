@@ -0,0 +1,355 @@
+package com.live.broadcast.protocol;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.live.broadcast.model.Message;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 二进制消息编解码器
+ *
+ * 单条消息格式：
+ * <pre>
+ * +--------+------------------+-----------------------------------+
+ * | 类型 1B | 字段掩码 varint    | 按掩码位从低到高出现的字段              |
+ * +--------+------------------+-----------------------------------+
+ * </pre>
+ * 字符串字段为 varint长度 + UTF-8字节，时间戳和序号为8字节大端整数，附加数据为 varint长度 + JSON，数量为varint。
+ * 下行消息的序号为聊天消息的房间内序号，上行join消息的序号为客户端最后收到的序号；数量只用于上行gift消息。
+ * 掩码小于128时只占1字节，带序号或数量的消息掩码占2字节。
+ * 批量消息：类型为BATCH，掩码只含房间ID，之后是 varint条数 + 每条的(varint长度 + 单条消息)
+ */
+public final class BinaryMessageCodec {
+    // 消息类型编号，0表示未登记的类型，类型名以字符串字段携带
+    private static final String[] TYPES = {
+            null, "join", "leave", "chat", "heartbeat", "join_success", "user_join", "user_leave",
+            "room_info", "live_start", "live_stop", "pong", "error", "batch", "presence", "danmaku",
+            "gift", "gift_rank"
+    };
+    private static final Map<String, Integer> TYPE_IDS = new HashMap<>();
+    
+    static {
+        for (int i = 1; i < TYPES.length; i++) {
+            TYPE_IDS.put(TYPES[i], i);
+        }
+    }
+    
+    public static final int TYPE_UNKNOWN = 0;
+    public static final int TYPE_BATCH = 13;
+    
+    // 字段掩码
+    private static final int FIELD_TYPE_NAME = 1;
+    private static final int FIELD_ROOM_ID = 1 << 1;
+    private static final int FIELD_USER_ID = 1 << 2;
+    private static final int FIELD_USERNAME = 1 << 3;
+    private static final int FIELD_CONTENT = 1 << 4;
+    private static final int FIELD_TIMESTAMP = 1 << 5;
+    private static final int FIELD_DATA = 1 << 6;
+    private static final int FIELD_SEQ = 1 << 7;
+    private static final int FIELD_COUNT = 1 << 8;
+    
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    
+    // 单个字符串字段的最大字节数
+    private static final int MAX_STRING_BYTES = 64 * 1024;
+    
+    private BinaryMessageCodec() {}
+    
+    /**
+     * 编码消息到新分配的缓冲区
+     */
+    public static ByteBuf encode(ByteBufAllocator alloc, Message message) {
+        ByteBuf out = alloc.buffer(64);
+        encode(out, message);
+        return out;
+    }
+    
+    /**
+     * 编码消息为字节数组，用于需要缓存的场景
+     */
+    public static byte[] encodeToBytes(Message message) {
+        ByteBuf out = ByteBufAllocator.DEFAULT.heapBuffer(64);
+        try {
+            encode(out, message);
+            return ByteBufUtil.getBytes(out);
+        } finally {
+            out.release();
+        }
+    }
+    
+    /**
+     * 编码消息
+     */
+    public static void encode(ByteBuf out, Message message) {
+        Integer typeId = message.getType() != null ? TYPE_IDS.get(message.getType()) : null;
+        
+        int mask = 0;
+        if (typeId == null) {
+            mask |= FIELD_TYPE_NAME;
+        }
+        if (message.getRoomId() != null) {
+            mask |= FIELD_ROOM_ID;
+        }
+        if (message.getUserId() != null) {
+            mask |= FIELD_USER_ID;
+        }
+        if (message.getUsername() != null) {
+            mask |= FIELD_USERNAME;
+        }
+        if (message.getContent() != null) {
+            mask |= FIELD_CONTENT;
+        }
+        if (message.getTimestamp() != 0) {
+            mask |= FIELD_TIMESTAMP;
+        }
+        if (message.getData() != null) {
+            mask |= FIELD_DATA;
+        }
+        if (message.getSeq() != null) {
+            mask |= FIELD_SEQ;
+        }
+        
+        out.writeByte(typeId != null ? typeId : TYPE_UNKNOWN);
+        writeVarInt(out, mask);
+        if ((mask & FIELD_TYPE_NAME) != 0) {
+            writeString(out, message.getType() != null ? message.getType() : "");
+        }
+        if ((mask & FIELD_ROOM_ID) != 0) {
+            writeString(out, message.getRoomId());
+        }
+        if ((mask & FIELD_USER_ID) != 0) {
+            writeString(out, message.getUserId());
+        }
+        if ((mask & FIELD_USERNAME) != 0) {
+            writeString(out, message.getUsername());
+        }
+        if ((mask & FIELD_CONTENT) != 0) {
+            writeString(out, message.getContent());
+        }
+        if ((mask & FIELD_TIMESTAMP) != 0) {
+            out.writeLong(message.getTimestamp());
+        }
+        if ((mask & FIELD_DATA) != 0) {
+            writeData(out, message.getData());
+        }
+        if ((mask & FIELD_SEQ) != 0) {
+            out.writeLong(message.getSeq());
+        }
+    }
+    
+    /**
+     * 解码客户端上行消息
+     */
+    public static void decode(ByteBuf in, InboundMessage out) {
+        out.clear();
+        if (in.readableBytes() < 2) {
+            throw new CorruptedFrameException("消息长度不足");
+        }
+        
+        int typeId = in.readUnsignedByte();
+        int mask = readVarInt(in);
+        if (typeId >= TYPES.length) {
+            throw new CorruptedFrameException("未知消息类型编号: " + typeId);
+        }
+        
+        String typeName = (mask & FIELD_TYPE_NAME) != 0 ? readString(in) : null;
+        out.setType(typeId != TYPE_UNKNOWN ? TYPES[typeId] : typeName);
+        if ((mask & FIELD_ROOM_ID) != 0) {
+            out.setRoomId(readString(in));
+        }
+        if ((mask & FIELD_USER_ID) != 0) {
+            out.setUserId(readString(in));
+        }
+        if ((mask & FIELD_USERNAME) != 0) {
+            out.setUsername(readString(in));
+        }
+        if ((mask & FIELD_CONTENT) != 0) {
+            out.setContent(readString(in));
+        }
+        if ((mask & FIELD_TIMESTAMP) != 0) {
+            if (in.readableBytes() < 8) {
+                throw new CorruptedFrameException("时间戳长度不足");
+            }
+            in.skipBytes(8);
+        }
+        if ((mask & FIELD_DATA) != 0) {
+            // 上行消息不使用附加数据
+            int length = readVarInt(in);
+            if (length < 0 || length > in.readableBytes()) {
+                throw new CorruptedFrameException("附加数据长度错误: " + length);
+            }
+            in.skipBytes(length);
+        }
+        if ((mask & FIELD_SEQ) != 0) {
+            if (in.readableBytes() < 8) {
+                throw new CorruptedFrameException("序号长度不足");
+            }
+            out.setLastSeq(in.readLong());
+        }
+        if ((mask & FIELD_COUNT) != 0) {
+            out.setCount((long) readVarInt(in));
+        }
+    }
+    
+    /**
+     * 解码完整的下行消息，用于节点间转发，附加数据按JSON解析
+     */
+    public static Message decodeMessage(ByteBuf in) {
+        if (in.readableBytes() < 2) {
+            throw new CorruptedFrameException("消息长度不足");
+        }
+        
+        int typeId = in.readUnsignedByte();
+        int mask = readVarInt(in);
+        if (typeId >= TYPES.length || typeId == TYPE_BATCH) {
+            throw new CorruptedFrameException("无法解码的消息类型编号: " + typeId);
+        }
+        
+        Message message = new Message();
+        String typeName = (mask & FIELD_TYPE_NAME) != 0 ? readString(in) : null;
+        message.setType(typeId != TYPE_UNKNOWN ? TYPES[typeId] : typeName);
+        if ((mask & FIELD_ROOM_ID) != 0) {
+            message.setRoomId(readString(in));
+        }
+        if ((mask & FIELD_USER_ID) != 0) {
+            message.setUserId(readString(in));
+        }
+        if ((mask & FIELD_USERNAME) != 0) {
+            message.setUsername(readString(in));
+        }
+        if ((mask & FIELD_CONTENT) != 0) {
+            message.setContent(readString(in));
+        }
+        if ((mask & FIELD_TIMESTAMP) != 0) {
+            if (in.readableBytes() < 8) {
+                throw new CorruptedFrameException("时间戳长度不足");
+            }
+            message.setTimestamp(in.readLong());
+        }
+        if ((mask & FIELD_DATA) != 0) {
+            message.setData(readData(in));
+        }
+        if ((mask & FIELD_SEQ) != 0) {
+            if (in.readableBytes() < 8) {
+                throw new CorruptedFrameException("序号长度不足");
+            }
+            message.setSeq(in.readLong());
+        }
+        if ((mask & FIELD_COUNT) != 0) {
+            // 下行消息的数量在附加数据中，这里只跳过
+            readVarInt(in);
+        }
+        return message;
+    }
+    
+    /**
+     * 编码批量消息的头部：类型、掩码和房间ID，后面需要紧跟条数和消息
+     */
+    public static byte[] encodeBatchHeader(String roomId) {
+        ByteBuf out = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            out.writeByte(TYPE_BATCH);
+            writeVarInt(out, FIELD_ROOM_ID);
+            writeString(out, roomId);
+            return ByteBufUtil.getBytes(out);
+        } finally {
+            out.release();
+        }
+    }
+    
+    /**
+     * 写入varint编码的无符号整数
+     */
+    public static void writeVarInt(ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+    
+    /**
+     * varint编码后的字节数
+     */
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+    
+    /**
+     * 读取varint编码的无符号整数
+     */
+    public static int readVarInt(ByteBuf in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (!in.isReadable()) {
+                throw new CorruptedFrameException("varint长度不足");
+            }
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new CorruptedFrameException("varint过长");
+    }
+    
+    private static void writeData(ByteBuf out, Map<String, Object> data) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(data);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("附加数据无法编码", e);
+        }
+        writeVarInt(out, json.length);
+        out.writeBytes(json);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readData(ByteBuf in) {
+        int length = readVarInt(in);
+        if (length < 0 || length > in.readableBytes()) {
+            throw new CorruptedFrameException("附加数据长度错误: " + length);
+        }
+        try (InputStream stream = new ByteBufInputStream(in.readSlice(length))) {
+            return objectMapper.readValue(stream, Map.class);
+        } catch (IOException e) {
+            throw new CorruptedFrameException("附加数据格式错误", e);
+        }
+    }
+    
+    /**
+     * 写入varint长度 + UTF-8字节的字符串
+     */
+    public static void writeString(ByteBuf out, String value) {
+        writeVarInt(out, ByteBufUtil.utf8Bytes(value));
+        ByteBufUtil.writeUtf8(out, value);
+    }
+    
+    /**
+     * 读取varint长度 + UTF-8字节的字符串
+     */
+    public static String readString(ByteBuf in) {
+        int length = readVarInt(in);
+        if (length < 0 || length > MAX_STRING_BYTES || length > in.readableBytes()) {
+            throw new CorruptedFrameException("字符串长度错误: " + length);
+        }
+        String value = in.toString(in.readerIndex(), length, StandardCharsets.UTF_8);
+        in.skipBytes(length);
+        return value;
+    }
+}
@@ -0,0 +1,149 @@
+package com.live.broadcast.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionEncoder;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import io.netty.util.AttributeKey;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * 广播消息的permessage-deflate压缩
+ * 每条广播消息只压缩一次（不保留上下文），压缩结果在所有协商了该扩展的观众之间共享；
+ * 连接级的压缩器不启用，单播消息按未压缩帧发送（RFC 7692允许逐条选择是否压缩）
+ */
+public final class BroadcastDeflater {
+    private static final int COMPRESSION_LEVEL = 6;
+    
+    // 小于该大小的消息不压缩
+    private static final int MIN_DEFLATE_SIZE = 64;
+    
+    // 同步刷新产生的结尾字节，按RFC 7692需要去掉
+    private static final int TAIL_LENGTH = 4;
+    
+    private static final AttributeKey<Boolean> NEGOTIATED = AttributeKey.valueOf("permessageDeflate");
+    
+    // 压缩器跟随调用线程复用，每条消息前重置，保证消息之间没有上下文依赖
+    private static final ThreadLocal<Deflater> DEFLATER =
+            ThreadLocal.withInitial(() -> new Deflater(COMPRESSION_LEVEL, true));
+    
+    // 连接级编码器跳过所有帧，只保留协商能力和上行解压
+    private static final WebSocketExtensionFilterProvider SKIP_ENCODER = new WebSocketExtensionFilterProvider() {
+        @Override
+        public WebSocketExtensionFilter encoderFilter() {
+            return WebSocketExtensionFilter.ALWAYS_SKIP;
+        }
+        
+        @Override
+        public WebSocketExtensionFilter decoderFilter() {
+            return WebSocketExtensionFilter.NEVER_SKIP;
+        }
+    };
+    
+    private static final LongAdder rawBytes = new LongAdder();
+    private static final LongAdder deflatedBytes = new LongAdder();
+    private static final LongAdder deflatedMessages = new LongAdder();
+    private static final LongAdder skippedMessages = new LongAdder();
+    private static final LongAdder deflateNanos = new LongAdder();
+    private static final LongAdder deflatedFramesSent = new LongAdder();
+    private static final LongAdder bytesSaved = new LongAdder();
+    
+    private BroadcastDeflater() {}
+    
+    /**
+     * 创建服务端扩展握手器
+     * 不接受客户端限制服务端窗口大小，这样共享的压缩结果对所有观众都有效
+     */
+    public static PerMessageDeflateServerExtensionHandshaker newHandshaker() {
+        return new PerMessageDeflateServerExtensionHandshaker(COMPRESSION_LEVEL, false,
+                15, true, false, SKIP_ENCODER);
+    }
+    
+    /**
+     * 握手完成后记录是否协商了压缩扩展
+     */
+    public static void markNegotiated(Channel channel) {
+        channel.attr(NEGOTIATED).set(channel.pipeline().get(WebSocketExtensionEncoder.class) != null);
+    }
+    
+    /**
+     * channel是否可以接收压缩帧
+     */
+    public static boolean isNegotiated(Channel channel) {
+        return Boolean.TRUE.equals(channel.attr(NEGOTIATED).get());
+    }
+    
+    /**
+     * 压缩消息内容，不改变raw的读索引
+     *
+     * @return 压缩后没有变小时返回null
+     */
+    public static ByteBuf deflate(ByteBuf raw) {
+        int length = raw.readableBytes();
+        if (length < MIN_DEFLATE_SIZE) {
+            skippedMessages.increment();
+            return null;
+        }
+        
+        long startTime = System.nanoTime();
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(raw.nioBuffer());
+        
+        ByteBuf out = Unpooled.buffer(length / 2 + 64);
+        int written;
+        do {
+            out.ensureWritable(256);
+            written = deflater.deflate(out.array(), out.arrayOffset() + out.writerIndex(),
+                    out.writableBytes(), Deflater.SYNC_FLUSH);
+            out.writerIndex(out.writerIndex() + written);
+        } while (written > 0 && !out.isWritable());
+        deflateNanos.add(System.nanoTime() - startTime);
+        
+        int compressedLength = out.readableBytes() - TAIL_LENGTH;
+        if (compressedLength <= 0 || compressedLength >= length) {
+            out.release();
+            skippedMessages.increment();
+            return null;
+        }
+        out.writerIndex(out.writerIndex() - TAIL_LENGTH);
+        
+        rawBytes.add(length);
+        deflatedBytes.add(compressedLength);
+        deflatedMessages.increment();
+        return out;
+    }
+    
+    /**
+     * 记录一次压缩帧的发送
+     */
+    static void recordSent(int rawLength, int deflatedLength) {
+        deflatedFramesSent.increment();
+        bytesSaved.add(rawLength - deflatedLength);
+    }
+    
+    /**
+     * 获取压缩统计
+     */
+    public static Map<String, Object> getStats() {
+        long raw = rawBytes.sum();
+        long messages = deflatedMessages.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("deflatedMessages", messages);
+        stats.put("skippedMessages", skippedMessages.sum());
+        stats.put("rawBytes", raw);
+        stats.put("deflatedBytes", deflatedBytes.sum());
+        stats.put("ratio", raw > 0 ? (double) deflatedBytes.sum() / raw : 0);
+        stats.put("avgDeflateMicros", messages > 0 ? deflateNanos.sum() / messages / 1000.0 : 0);
+        stats.put("deflatedFramesSent", deflatedFramesSent.sum());
+        stats.put("bytesSaved", bytesSaved.sum());
+        return stats;
+    }
+}
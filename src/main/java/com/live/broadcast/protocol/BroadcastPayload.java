@@ -0,0 +1,129 @@
+package com.live.broadcast.protocol;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.live.broadcast.model.Message;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import io.netty.util.AbstractReferenceCounted;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 广播内容 - 同一条消息按每种协议各编码一次，所有观众共享
+ * 协商了permessage-deflate的观众使用压缩版本，压缩结果在第一次需要时生成
+ */
+public class BroadcastPayload extends AbstractReferenceCounted {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    
+    // 慢消费者也必须送达的消息类型
+    private static final Set<String> HIGH_PRIORITY_TYPES = new HashSet<>(Arrays.asList("live_start", "live_stop", "error"));
+    
+    private final Encoded json;
+    private final Encoded binary;
+    private final boolean highPriority;
+    
+    public BroadcastPayload(ByteBuf json, ByteBuf binary) {
+        this(json, binary, false);
+    }
+    
+    public BroadcastPayload(ByteBuf json, ByteBuf binary, boolean highPriority) {
+        this.json = new Encoded(json);
+        this.binary = new Encoded(binary);
+        this.highPriority = highPriority;
+    }
+    
+    /**
+     * 按所有协议编码消息
+     */
+    public static BroadcastPayload encode(Message message) throws JsonProcessingException {
+        ByteBuf json = Unpooled.wrappedBuffer(objectMapper.writeValueAsBytes(message));
+        return new BroadcastPayload(json, BinaryMessageCodec.encode(ByteBufAllocator.DEFAULT, message),
+                HIGH_PRIORITY_TYPES.contains(message.getType()));
+    }
+    
+    /**
+     * 由已编码的消息创建广播内容，共享字节数组
+     */
+    public static BroadcastPayload of(EncodedMessage message) {
+        return new BroadcastPayload(Unpooled.wrappedBuffer(message.getJson()), Unpooled.wrappedBuffer(message.getBinary()));
+    }
+    
+    /**
+     * 是否为高优先级消息，channel不可写时也不能丢弃
+     */
+    public boolean isHighPriority() {
+        return highPriority;
+    }
+    
+    /**
+     * 为指定channel创建帧，帧共享底层内存
+     */
+    public WebSocketFrame newFrame(Channel channel) {
+        WireProtocol protocol = WireProtocol.of(channel);
+        Encoded encoded = protocol == WireProtocol.BINARY ? binary : json;
+        
+        if (BroadcastDeflater.isNegotiated(channel)) {
+            ByteBuf deflated = encoded.deflated();
+            if (deflated != null) {
+                BroadcastDeflater.recordSent(encoded.raw.readableBytes(), deflated.readableBytes());
+                return protocol.newFrame(WebSocketExtension.RSV1, deflated.retainedDuplicate());
+            }
+        }
+        return protocol.newFrame(encoded.raw.retainedDuplicate());
+    }
+    
+    @Override
+    public BroadcastPayload retain() {
+        super.retain();
+        return this;
+    }
+    
+    @Override
+    protected void deallocate() {
+        json.release();
+        binary.release();
+    }
+    
+    @Override
+    public BroadcastPayload touch(Object hint) {
+        return this;
+    }
+    
+    /**
+     * 单个协议的编码结果
+     */
+    private static final class Encoded {
+        private final ByteBuf raw;
+        private ByteBuf deflated;
+        private boolean deflateAttempted;
+        
+        Encoded(ByteBuf raw) {
+            this.raw = raw;
+        }
+        
+        /**
+         * 获取压缩版本，压缩后没有变小时返回null
+         */
+        synchronized ByteBuf deflated() {
+            if (!deflateAttempted) {
+                deflated = BroadcastDeflater.deflate(raw);
+                deflateAttempted = true;
+            }
+            return deflated;
+        }
+        
+        synchronized void release() {
+            raw.release();
+            if (deflated != null) {
+                deflated.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.live.broadcast.protocol;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.live.broadcast.model.Message;
+
+/**
+ * 按所有协议编码好的单条消息，以紧凑的字节数组保存，用于缓存和合并
+ */
+public final class EncodedMessage {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    
+    private final byte[] json;
+    private final byte[] binary;
+    
+    public EncodedMessage(byte[] json, byte[] binary) {
+        this.json = json;
+        this.binary = binary;
+    }
+    
+    /**
+     * 按所有协议编码消息
+     */
+    public static EncodedMessage encode(Message message) throws JsonProcessingException {
+        return new EncodedMessage(objectMapper.writeValueAsBytes(message), BinaryMessageCodec.encodeToBytes(message));
+    }
+    
+    public byte[] getJson() {
+        return json;
+    }
+    
+    public byte[] getBinary() {
+        return binary;
+    }
+}
@@ -0,0 +1,100 @@
+package com.live.broadcast.protocol;
+
+/**
+ * 客户端上行消息
+ * 可变对象，每个连接复用一个实例，解析下一条消息前先调用clear
+ */
+public class InboundMessage {
+    private String type;
+    private String roomId;
+    private String userId;
+    private String username;
+    private String content;
+    
+    // join消息携带的最后收到的聊天序号
+    private Long lastSeq;
+    
+    // gift消息的礼物数量
+    private Long count;
+    
+    /**
+     * 清空所有字段
+     */
+    public void clear() {
+        type = null;
+        roomId = null;
+        userId = null;
+        username = null;
+        content = null;
+        lastSeq = null;
+        count = null;
+    }
+    
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    public String getRoomId() {
+        return roomId;
+    }
+    
+    public void setRoomId(String roomId) {
+        this.roomId = roomId;
+    }
+    
+    public String getUserId() {
+        return userId;
+    }
+    
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    public void setUsername(String username) {
+        this.username = username;
+    }
+    
+    public String getContent() {
+        return content;
+    }
+    
+    public void setContent(String content) {
+        this.content = content;
+    }
+    
+    public Long getLastSeq() {
+        return lastSeq;
+    }
+    
+    public void setLastSeq(Long lastSeq) {
+        this.lastSeq = lastSeq;
+    }
+    
+    public Long getCount() {
+        return count;
+    }
+    
+    public void setCount(Long count) {
+        this.count = count;
+    }
+    
+    @Override
+    public String toString() {
+        return "InboundMessage{" +
+                "type='" + type + '\'' +
+                ", roomId='" + roomId + '\'' +
+                ", userId='" + userId + '\'' +
+                ", username='" + username + '\'' +
+                ", lastSeq=" + lastSeq +
+                ", count=" + count +
+                '}';
+    }
+}
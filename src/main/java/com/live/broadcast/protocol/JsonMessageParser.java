@@ -0,0 +1,103 @@
+package com.live.broadcast.protocol;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JSON上行消息解析器
+ * 使用流式JsonParser直接从帧的ByteBuf解析，不先解码成String，也不构建JsonNode树；未知字段直接跳过
+ */
+public final class JsonMessageParser {
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    
+    private JsonMessageParser() {}
+    
+    /**
+     * 解析消息到复用的InboundMessage，不改变content的读索引
+     */
+    public static void parse(ByteBuf content, InboundMessage out) {
+        out.clear();
+        try (JsonParser parser = createParser(content)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new CorruptedFrameException("消息不是JSON对象");
+            }
+            
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "type":
+                        out.setType(scalarText(parser, token));
+                        break;
+                    case "roomId":
+                        out.setRoomId(scalarText(parser, token));
+                        break;
+                    case "userId":
+                        out.setUserId(scalarText(parser, token));
+                        break;
+                    case "username":
+                        out.setUsername(scalarText(parser, token));
+                        break;
+                    case "content":
+                        out.setContent(scalarText(parser, token));
+                        break;
+                    case "lastSeq":
+                        out.setLastSeq(scalarLong(parser, token));
+                        break;
+                    case "count":
+                        out.setCount(scalarLong(parser, token));
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            
+            if (parser.currentToken() != JsonToken.END_OBJECT) {
+                throw new CorruptedFrameException("JSON对象不完整");
+            }
+        } catch (IOException e) {
+            throw new CorruptedFrameException("JSON格式错误", e);
+        }
+    }
+    
+    private static JsonParser createParser(ByteBuf content) throws IOException {
+        if (content.hasArray()) {
+            return jsonFactory.createParser(content.array(),
+                    content.arrayOffset() + content.readerIndex(), content.readableBytes());
+        }
+        InputStream in = new ByteBufInputStream(content.duplicate());
+        return jsonFactory.createParser(in);
+    }
+    
+    /**
+     * 字符串和数字、布尔值都按文本读取，对象和数组视为缺失
+     */
+    private static String scalarText(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token.isScalarValue()) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+    
+    /**
+     * 读取整数字段，不是整数时视为缺失
+     */
+    private static Long scalarLong(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        parser.skipChildren();
+        return null;
+    }
+}
@@ -0,0 +1,25 @@
+package com.live.broadcast.protocol;
+
+/**
+ * 字符串的64位哈希，供一致性哈希环和HyperLogLog共用
+ * 直播间在集群中的归属节点由哈希值决定，修改算法会让所有节点上的直播间重新分布，必须保持不变
+ */
+public final class StringHash {
+    private StringHash() {}
+    
+    /**
+     * FNV-1a后再用MurmurHash3的fmix64打散，各位分布均匀
+     */
+    public static long hash64(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,95 @@
+package com.live.broadcast.protocol;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.live.broadcast.model.Message;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.AttributeKey;
+
+/**
+ * WebSocket消息协议 - 握手时通过子协议协商
+ * live.json为JSON文本帧，live.bin为紧凑的二进制帧；未协商子协议的老客户端使用JSON
+ */
+public enum WireProtocol {
+    JSON("live.json"),
+    BINARY("live.bin");
+    
+    // 服务端支持的子协议列表，按优先级排列
+    public static final String SUBPROTOCOLS = BINARY.subprotocol + "," + JSON.subprotocol;
+    
+    private static final AttributeKey<WireProtocol> KEY = AttributeKey.valueOf("wireProtocol");
+    
+    private final String subprotocol;
+    
+    WireProtocol(String subprotocol) {
+        this.subprotocol = subprotocol;
+    }
+    
+    public String getSubprotocol() {
+        return subprotocol;
+    }
+    
+    /**
+     * 根据握手协商出的子协议确定消息协议
+     */
+    public static WireProtocol fromSubprotocol(String subprotocol) {
+        return BINARY.subprotocol.equals(subprotocol) ? BINARY : JSON;
+    }
+    
+    /**
+     * 记录channel使用的消息协议
+     */
+    public static void set(Channel channel, WireProtocol protocol) {
+        channel.attr(KEY).set(protocol);
+    }
+    
+    /**
+     * 获取channel使用的消息协议
+     */
+    public static WireProtocol of(Channel channel) {
+        WireProtocol protocol = channel.attr(KEY).get();
+        return protocol != null ? protocol : JSON;
+    }
+    
+    /**
+     * 编码单条消息为对应类型的帧
+     */
+    public WebSocketFrame encode(Message message) throws JsonProcessingException {
+        if (this == BINARY) {
+            return new BinaryWebSocketFrame(BinaryMessageCodec.encode(ByteBufAllocator.DEFAULT, message));
+        }
+        return new TextWebSocketFrame(Unpooled.wrappedBuffer(Holder.OBJECT_MAPPER.writeValueAsBytes(message)));
+    }
+    
+    /**
+     * 用已编码的内容创建对应类型的帧
+     */
+    public WebSocketFrame newFrame(ByteBuf content) {
+        return this == BINARY ? new BinaryWebSocketFrame(content) : new TextWebSocketFrame(content);
+    }
+    
+    /**
+     * 用预先编码的消息创建帧，共享字节数组
+     */
+    public WebSocketFrame newFrame(EncodedMessage message) {
+        return newFrame(Unpooled.wrappedBuffer(this == BINARY ? message.getBinary() : message.getJson()));
+    }
+    
+    /**
+     * 用已编码的内容创建带扩展标志位的帧
+     */
+    public WebSocketFrame newFrame(int rsv, ByteBuf content) {
+        return this == BINARY ? new BinaryWebSocketFrame(true, rsv, content) : new TextWebSocketFrame(true, rsv, content);
+    }
+    
+    // 枚举常量先于静态字段初始化，ObjectMapper放在内部类中
+    private static final class Holder {
+        private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    }
+}
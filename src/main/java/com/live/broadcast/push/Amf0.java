@@ -0,0 +1,135 @@
+package com.live.broadcast.push;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AMF0编解码 - 只支持RTMP命令消息用到的类型
+ */
+final class Amf0 {
+    private static final int NUMBER = 0x00;
+    private static final int BOOLEAN = 0x01;
+    private static final int STRING = 0x02;
+    private static final int OBJECT = 0x03;
+    private static final int NULL = 0x05;
+    private static final int UNDEFINED = 0x06;
+    private static final int ECMA_ARRAY = 0x08;
+    private static final int OBJECT_END = 0x09;
+    private static final int STRICT_ARRAY = 0x0A;
+    private static final int DATE = 0x0B;
+    private static final int LONG_STRING = 0x0C;
+    
+    private Amf0() {}
+    
+    /**
+     * 写入一个值，支持数字、布尔、字符串、Map（对象）和null
+     */
+    static void write(ByteBuf out, Object value) {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Number) {
+            out.writeByte(NUMBER);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes(CharsetUtil.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                out.writeByte(LONG_STRING);
+                out.writeInt(bytes.length);
+            } else {
+                out.writeByte(STRING);
+                out.writeShort(bytes.length);
+            }
+            out.writeBytes(bytes);
+        } else if (value instanceof Map) {
+            out.writeByte(OBJECT);
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                writeKey(out, entry.getKey().toString());
+                write(out, entry.getValue());
+            }
+            writeKey(out, "");
+            out.writeByte(OBJECT_END);
+        } else {
+            throw new IllegalArgumentException("不支持的AMF0类型: " + value.getClass().getName());
+        }
+    }
+    
+    /**
+     * 读取缓冲区中剩余的所有值
+     */
+    static List<Object> readAll(ByteBuf in) {
+        List<Object> values = new ArrayList<>();
+        while (in.isReadable()) {
+            values.add(read(in));
+        }
+        return values;
+    }
+    
+    static Object read(ByteBuf in) {
+        int type = in.readUnsignedByte();
+        switch (type) {
+            case NUMBER:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case STRING:
+                return readString(in, in.readUnsignedShort());
+            case LONG_STRING:
+                return readString(in, in.readInt());
+            case OBJECT:
+                return readProperties(in);
+            case ECMA_ARRAY:
+                in.skipBytes(4);
+                return readProperties(in);
+            case STRICT_ARRAY: {
+                int count = in.readInt();
+                List<Object> list = new ArrayList<>(Math.min(count, 64));
+                for (int i = 0; i < count; i++) {
+                    list.add(read(in));
+                }
+                return list;
+            }
+            case DATE: {
+                double time = in.readDouble();
+                in.skipBytes(2);
+                return time;
+            }
+            case NULL:
+            case UNDEFINED:
+                return null;
+            default:
+                throw new IllegalArgumentException("不支持的AMF0类型: " + type);
+        }
+    }
+    
+    private static Map<String, Object> readProperties(ByteBuf in) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        while (true) {
+            String key = readString(in, in.readUnsignedShort());
+            if (key.isEmpty() && in.getUnsignedByte(in.readerIndex()) == OBJECT_END) {
+                in.skipBytes(1);
+                return properties;
+            }
+            properties.put(key, read(in));
+        }
+    }
+    
+    private static void writeKey(ByteBuf out, String key) {
+        byte[] bytes = key.getBytes(CharsetUtil.UTF_8);
+        out.writeShort(bytes.length);
+        out.writeBytes(bytes);
+    }
+    
+    private static String readString(ByteBuf in, int length) {
+        String value = in.toString(in.readerIndex(), length, CharsetUtil.UTF_8);
+        in.skipBytes(length);
+        return value;
+    }
+}
@@ -0,0 +1,147 @@
+package com.live.broadcast.push;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RTMP分块解码 - 按块流合并成完整的消息，处理对端的块大小设置
+ * 推流端只需要解析服务器的命令响应，消息长度有上限，超过时关闭连接
+ */
+final class RtmpChunkDecoder extends ByteToMessageDecoder {
+    private static final int MAX_MESSAGE_LENGTH = 1024 * 1024;
+    
+    private int chunkSize = 128;
+    private final Map<Integer, ChunkStream> streams = new HashMap<>();
+    
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        while (in.isReadable()) {
+            int start = in.readerIndex();
+            RtmpMessage msg = decodeChunk(ctx, in);
+            if (in.readerIndex() == start) {
+                return;
+            }
+            if (msg != null) {
+                out.add(msg);
+            }
+        }
+    }
+    
+    /**
+     * 解析一个块，数据不完整时不移动读索引并返回null
+     */
+    private RtmpMessage decodeChunk(ChannelHandlerContext ctx, ByteBuf in) {
+        int start = in.readerIndex();
+        int first = in.readUnsignedByte();
+        int fmt = first >> 6;
+        int csid = first & 0x3F;
+        if (csid == 0) {
+            if (!in.isReadable()) {
+                in.readerIndex(start);
+                return null;
+            }
+            csid = 64 + in.readUnsignedByte();
+        } else if (csid == 1) {
+            if (in.readableBytes() < 2) {
+                in.readerIndex(start);
+                return null;
+            }
+            csid = 64 + in.readUnsignedByte() + in.readUnsignedByte() * 256;
+        }
+        
+        int headerLength = fmt == 0 ? 11 : fmt == 1 ? 7 : fmt == 2 ? 3 : 0;
+        if (in.readableBytes() < headerLength) {
+            in.readerIndex(start);
+            return null;
+        }
+        ChunkStream stream = streams.computeIfAbsent(csid, k -> new ChunkStream());
+        if (fmt != 0 && stream.typeId == 0) {
+            throw new CorruptedFrameException("块流缺少消息头: csid=" + csid);
+        }
+        
+        // 先解析到局部变量，整块数据到齐后才更新块流状态
+        long timestamp = fmt <= 2 ? in.readUnsignedMedium() : stream.timestampField;
+        int length = fmt <= 1 ? in.readUnsignedMedium() : stream.length;
+        int typeId = fmt <= 1 ? in.readUnsignedByte() : stream.typeId;
+        int streamId = fmt == 0 ? in.readIntLE() : stream.streamId;
+        boolean extended = timestamp == 0xFFFFFF;
+        if (extended) {
+            if (in.readableBytes() < 4) {
+                in.readerIndex(start);
+                return null;
+            }
+            timestamp = in.readUnsignedInt();
+        }
+        if (length > MAX_MESSAGE_LENGTH) {
+            throw new CorruptedFrameException("RTMP消息过长: " + length);
+        }
+        
+        boolean newMessage = stream.payload == null;
+        int received = newMessage ? 0 : stream.payload.readableBytes();
+        int size = Math.min(chunkSize, length - received);
+        if (in.readableBytes() < size) {
+            in.readerIndex(start);
+            return null;
+        }
+        
+        if (fmt <= 2) {
+            stream.timestampField = extended ? 0xFFFFFF : timestamp;
+        }
+        stream.length = length;
+        stream.typeId = typeId;
+        stream.streamId = streamId;
+        if (newMessage) {
+            // fmt 0是绝对时间戳，其余是相对上一条消息的增量
+            if (fmt == 0) {
+                stream.timestamp = timestamp;
+                stream.delta = 0;
+            } else {
+                if (fmt != 3) {
+                    stream.delta = timestamp;
+                }
+                stream.timestamp += stream.delta;
+            }
+            stream.payload = ctx.alloc().buffer(length);
+        }
+        stream.payload.writeBytes(in, size);
+        
+        if (stream.payload.readableBytes() < length) {
+            return null;
+        }
+        ByteBuf payload = stream.payload;
+        stream.payload = null;
+        if (typeId == RtmpMessage.SET_CHUNK_SIZE && payload.readableBytes() >= 4) {
+            chunkSize = payload.getInt(payload.readerIndex()) & 0x7FFFFFFF;
+        }
+        return new RtmpMessage(csid, typeId, streamId, stream.timestamp, payload);
+    }
+    
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) {
+        streams.values().forEach(stream -> {
+            if (stream.payload != null) {
+                stream.payload.release();
+                stream.payload = null;
+            }
+        });
+    }
+    
+    /**
+     * 一个块流上最近一条消息的消息头和未收完的数据
+     */
+    private static final class ChunkStream {
+        private long timestamp;
+        private long timestampField;
+        private long delta;
+        private int length;
+        private int typeId;
+        private int streamId;
+        private ByteBuf payload;
+    }
+}
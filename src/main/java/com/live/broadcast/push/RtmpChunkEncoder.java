@@ -0,0 +1,60 @@
+package com.live.broadcast.push;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
+
+/**
+ * RTMP分块编码 - 每条消息的第一块使用完整的消息头（fmt 0），后续块只有1字节的块头（fmt 3）
+ * 块数据是消息内容的retainedSlice，和块头组合成CompositeByteBuf写出，媒体数据不复制
+ */
+final class RtmpChunkEncoder extends MessageToMessageEncoder<RtmpMessage> {
+    private static final int MAX_TIMESTAMP = 0xFFFFFF;
+    
+    private int chunkSize = 128;
+    
+    @Override
+    protected void encode(ChannelHandlerContext ctx, RtmpMessage msg, List<Object> out) {
+        ByteBuf payload = msg.content();
+        int length = payload.readableBytes();
+        int csid = msg.getChunkStreamId();
+        boolean extended = msg.getTimestamp() >= MAX_TIMESTAMP;
+        
+        ByteBuf header = ctx.alloc().buffer(16);
+        header.writeByte(csid & 0x3F);
+        header.writeMedium(extended ? MAX_TIMESTAMP : (int) msg.getTimestamp());
+        header.writeMedium(length);
+        header.writeByte(msg.getTypeId());
+        header.writeIntLE(msg.getStreamId());
+        if (extended) {
+            header.writeInt((int) msg.getTimestamp());
+        }
+        
+        CompositeByteBuf chunks = ctx.alloc().compositeBuffer(length / chunkSize * 2 + 2);
+        int offset = payload.readerIndex();
+        int end = offset + length;
+        while (true) {
+            int size = Math.min(chunkSize, end - offset);
+            chunks.addComponent(true, header);
+            chunks.addComponent(true, payload.retainedSlice(offset, size));
+            offset += size;
+            if (offset >= end) {
+                break;
+            }
+            header = ctx.alloc().buffer(5);
+            header.writeByte(0xC0 | (csid & 0x3F));
+            if (extended) {
+                header.writeInt((int) msg.getTimestamp());
+            }
+        }
+        
+        // 本端发出的块大小设置在这条消息之后生效
+        if (msg.getTypeId() == RtmpMessage.SET_CHUNK_SIZE) {
+            chunkSize = payload.getInt(payload.readerIndex());
+        }
+        out.add(chunks);
+    }
+}
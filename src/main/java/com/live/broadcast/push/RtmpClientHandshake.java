@@ -0,0 +1,49 @@
+package com.live.broadcast.push;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RTMP客户端简单握手：连接后发送C0+C1，收到S0+S1+S2后回复C2（S1原样返回）
+ * 握手完成后触发HANDSHAKE_COMPLETE事件并移除自身，之后收到的数据交给分块解码器
+ */
+final class RtmpClientHandshake extends ByteToMessageDecoder {
+    static final Object HANDSHAKE_COMPLETE = new Object();
+    
+    private static final int RTMP_VERSION = 3;
+    private static final int HANDSHAKE_SIZE = 1536;
+    
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        ByteBuf c0c1 = ctx.alloc().buffer(1 + HANDSHAKE_SIZE);
+        c0c1.writeByte(RTMP_VERSION);
+        c0c1.writeInt(0);
+        c0c1.writeInt(0);
+        byte[] random = new byte[HANDSHAKE_SIZE - 8];
+        ThreadLocalRandom.current().nextBytes(random);
+        c0c1.writeBytes(random);
+        ctx.writeAndFlush(c0c1, ctx.voidPromise());
+        super.channelActive(ctx);
+    }
+    
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        if (in.readableBytes() < 1 + HANDSHAKE_SIZE * 2) {
+            return;
+        }
+        int version = in.readUnsignedByte();
+        if (version != RTMP_VERSION) {
+            throw new CorruptedFrameException("不支持的RTMP版本: " + version);
+        }
+        ctx.writeAndFlush(in.readRetainedSlice(HANDSHAKE_SIZE), ctx.voidPromise());
+        in.skipBytes(HANDSHAKE_SIZE);
+        
+        ctx.fireUserEventTriggered(HANDSHAKE_COMPLETE);
+        ctx.pipeline().remove(this);
+    }
+}
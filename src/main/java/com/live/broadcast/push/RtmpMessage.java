@@ -0,0 +1,69 @@
+package com.live.broadcast.push;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.buffer.Unpooled;
+
+/**
+ * 一条完整的RTMP消息，分块由RtmpChunkEncoder/RtmpChunkDecoder负责
+ */
+final class RtmpMessage extends DefaultByteBufHolder {
+    static final int SET_CHUNK_SIZE = 1;
+    static final int WINDOW_ACK_SIZE = 5;
+    static final int SET_PEER_BANDWIDTH = 6;
+    static final int AUDIO = 8;
+    static final int VIDEO = 9;
+    static final int DATA_AMF0 = 18;
+    static final int COMMAND_AMF0 = 20;
+    
+    // 块流ID：协议控制消息固定为2，其余按消息类型分开，避免不同类型的消息互相插入
+    static final int CSID_CONTROL = 2;
+    static final int CSID_COMMAND = 3;
+    static final int CSID_AUDIO = 4;
+    static final int CSID_DATA = 5;
+    static final int CSID_VIDEO = 6;
+    
+    private final int chunkStreamId;
+    private final int typeId;
+    private final int streamId;
+    private final long timestamp;
+    
+    RtmpMessage(int chunkStreamId, int typeId, int streamId, long timestamp, ByteBuf payload) {
+        super(payload);
+        this.chunkStreamId = chunkStreamId;
+        this.typeId = typeId;
+        this.streamId = streamId;
+        this.timestamp = timestamp;
+    }
+    
+    /**
+     * AMF0命令消息
+     */
+    static RtmpMessage command(int streamId, Object... values) {
+        ByteBuf payload = Unpooled.buffer(128);
+        for (Object value : values) {
+            Amf0.write(payload, value);
+        }
+        return new RtmpMessage(CSID_COMMAND, COMMAND_AMF0, streamId, 0, payload);
+    }
+    
+    static RtmpMessage setChunkSize(int chunkSize) {
+        return new RtmpMessage(CSID_CONTROL, SET_CHUNK_SIZE, 0, 0, Unpooled.buffer(4).writeInt(chunkSize));
+    }
+    
+    int getChunkStreamId() {
+        return chunkStreamId;
+    }
+    
+    int getTypeId() {
+        return typeId;
+    }
+    
+    int getStreamId() {
+        return streamId;
+    }
+    
+    long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,526 @@
+package com.live.broadcast.push;
+
+import com.live.broadcast.stream.StreamManager;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoop;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RTMP转推 - 作为直播间的流消费者，把流数据推到一个下游RTMP地址
+ * 握手后依次发送connect、createStream、publish，收到NetStream.Publish.Start后开始发送媒体数据。
+ * 断线后按指数退避重连，重连成功后先补发元数据、音视频序列头和最近一个GOP，下游可以立即解码。
+ * 连接跟不上时数据暂存在有上限的队列中，超过上限时清空队列并等待下一个关键帧。
+ * 所有状态只在分配到的事件循环中修改，流数据的引用直接转交给RTMP消息，不复制。
+ *
+ * 限制：RTMP消息的时间戳是数据到达本节点时距推流开始的毫秒数（StreamInfo.getMediaTimeMillis），不是源流的时间戳。
+ * 入口RtmpServerHandler是简化实现，不解析RTMP块，StreamConsumer拿不到FLV tag的时间戳，
+ * 因此下游收到的DTS带有网络和调度抖动，音视频之间也没有源流中的对应关系；下游对时间戳要求严格时（如YouTube、Twitch）
+ * 可能出现音画不同步或卡顿。入口改为完整的RTMP实现后，应通过StreamConsumer透传源时间戳
+ */
+public class RtmpPushConsumer implements StreamManager.StreamConsumer {
+    private static final Logger logger = LoggerFactory.getLogger(RtmpPushConsumer.class);
+    
+    // 发送的块大小，减少块头开销
+    private static final int CHUNK_SIZE = 4096;
+    
+    private static final int TXN_CONNECT = 1;
+    private static final int TXN_CREATE_STREAM = 4;
+    
+    // 连接跟不上时最多暂存的数据量
+    private static final long MAX_PENDING_BYTES = Integer.getInteger("live.push.bufferKb", 2048) * 1024L;
+    
+    // GOP缓存上限，超过时丢弃缓存直到下一个关键帧
+    private static final long MAX_GOP_BYTES = Integer.getInteger("live.push.gopKb", 4096) * 1024L;
+    
+    private static final long INITIAL_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(Integer.getInteger("live.push.maxBackoffSeconds", 30));
+    
+    /**
+     * 转推状态
+     */
+    public enum State {
+        CONNECTING,
+        PUBLISHING,
+        RECONNECTING,
+        STOPPED
+    }
+    
+    private final RtmpPushService service;
+    private final String roomId;
+    private final String url;
+    private final RtmpUrl target;
+    private final StreamManager.StreamInfo streamInfo;
+    private final EventLoop eventLoop;
+    private final Bootstrap bootstrap;
+    
+    // 以下状态只在eventLoop中访问
+    private final GopCache gop = new GopCache();
+    private final ArrayDeque<Frame> pending = new ArrayDeque<>();
+    private long pendingBytes;
+    private boolean waitKeyframe;
+    private Channel channel;
+    private int messageStreamId;
+    private boolean publishing;
+    private boolean stopped;
+    private int attempts;
+    
+    // 只在eventLoop中写，供API读取
+    private volatile State state = State.CONNECTING;
+    private volatile long framesSent;
+    private volatile long bytesSent;
+    private volatile long framesDropped;
+    private volatile long reconnects;
+    
+    RtmpPushConsumer(RtmpPushService service, String roomId, String url, StreamManager.StreamInfo streamInfo,
+                     EventLoop eventLoop, Bootstrap bootstrap) {
+        this.service = service;
+        this.roomId = roomId;
+        this.url = url;
+        this.target = RtmpUrl.parse(url);
+        this.streamInfo = streamInfo;
+        this.eventLoop = eventLoop;
+        this.bootstrap = bootstrap.clone(eventLoop).handler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel ch) {
+                ch.pipeline().addLast(new RtmpClientHandshake());
+                ch.pipeline().addLast(new RtmpChunkDecoder());
+                ch.pipeline().addLast(new RtmpChunkEncoder());
+                ch.pipeline().addLast(new SessionHandler());
+            }
+        });
+    }
+    
+    public String getRoomId() {
+        return roomId;
+    }
+    
+    public String getUrl() {
+        return url;
+    }
+    
+    public State getState() {
+        return state;
+    }
+    
+    void start() {
+        execute(this::connect);
+    }
+    
+    /**
+     * 停止转推并断开连接
+     */
+    void stop() {
+        execute(this::shutdown);
+    }
+    
+    @Override
+    public void onStreamData(ByteBuf data, StreamManager.StreamDataType dataType) {
+        Frame frame = new Frame(dataType, streamInfo.getMediaTimeMillis(), data);
+        try {
+            eventLoop.execute(() -> onFrame(frame));
+        } catch (RejectedExecutionException e) {
+            data.release();
+        }
+    }
+    
+    @Override
+    public void onStreamEnd() {
+        stop();
+        service.onPushEnded(this);
+    }
+    
+    /**
+     * 转推状态和统计
+     */
+    public Map<String, Object> getInfo() {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("url", url);
+        info.put("state", state);
+        info.put("framesSent", framesSent);
+        info.put("bytesSent", bytesSent);
+        info.put("framesDropped", framesDropped);
+        info.put("reconnects", reconnects);
+        return info;
+    }
+    
+    private void execute(Runnable task) {
+        try {
+            eventLoop.execute(task);
+        } catch (RejectedExecutionException e) {
+            logger.warn("转推事件循环已关闭: roomId={}, url={}", roomId, url);
+        }
+    }
+    
+    private void connect() {
+        if (stopped) {
+            return;
+        }
+        state = attempts == 0 ? State.CONNECTING : State.RECONNECTING;
+        bootstrap.connect(target.getHost(), target.getPort()).addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess()) {
+                logger.warn("连接转推目标失败: roomId={}, url={}, 原因: {}", roomId, url, future.cause().getMessage());
+                scheduleReconnect();
+                return;
+            }
+            channel = future.channel();
+            if (stopped) {
+                channel.close();
+            }
+        });
+    }
+    
+    private void scheduleReconnect() {
+        if (stopped) {
+            return;
+        }
+        long delay = Math.min(INITIAL_BACKOFF_MILLIS << Math.min(attempts, 16), MAX_BACKOFF_MILLIS);
+        attempts++;
+        state = State.RECONNECTING;
+        logger.info("{}毫秒后重连转推目标: roomId={}, url={}", delay, roomId, url);
+        eventLoop.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+    }
+    
+    private void shutdown() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        state = State.STOPPED;
+        clearPending();
+        gop.clear();
+        if (channel != null) {
+            if (publishing) {
+                channel.writeAndFlush(RtmpMessage.command(0, "deleteStream", 0, null, messageStreamId))
+                        .addListener(ChannelFutureListener.CLOSE);
+            } else {
+                channel.close();
+            }
+        }
+        logger.info("停止转推: roomId={}, url={}", roomId, url);
+    }
+    
+    private void onFrame(Frame frame) {
+        if (stopped) {
+            frame.release();
+            return;
+        }
+        gop.add(frame);
+        if (publishing) {
+            send(frame);
+        } else {
+            frame.release();
+        }
+    }
+    
+    /**
+     * 下游开始接收推流，先补发GOP缓存
+     */
+    private void onPublishStart() {
+        publishing = true;
+        attempts = 0;
+        waitKeyframe = false;
+        state = State.PUBLISHING;
+        logger.info("开始转推: roomId={}, url={}", roomId, url);
+        for (Frame frame : gop.snapshot()) {
+            send(frame);
+        }
+    }
+    
+    private void send(Frame frame) {
+        if (waitKeyframe) {
+            if (frame.isKeyframe()) {
+                waitKeyframe = false;
+            } else if (!frame.isSequenceHeader()) {
+                drop(frame);
+                return;
+            }
+        }
+        if (!pending.isEmpty() || !channel.isWritable()) {
+            pending.add(frame);
+            pendingBytes += frame.size();
+            if (pendingBytes > MAX_PENDING_BYTES) {
+                logger.warn("转推目标跟不上，丢弃{}帧并等待关键帧: roomId={}, url={}", pending.size(), roomId, url);
+                clearPending();
+                waitKeyframe = true;
+            }
+            return;
+        }
+        write(frame);
+        channel.flush();
+    }
+    
+    private void write(Frame frame) {
+        framesSent++;
+        bytesSent += frame.size();
+        service.recordSent(frame.size());
+        channel.write(frame.toMessage(messageStreamId), channel.voidPromise());
+    }
+    
+    private void drainPending() {
+        while (!pending.isEmpty() && channel.isWritable()) {
+            Frame frame = pending.poll();
+            pendingBytes -= frame.size();
+            write(frame);
+        }
+        channel.flush();
+    }
+    
+    private void drop(Frame frame) {
+        framesDropped++;
+        service.recordDropped(1);
+        frame.release();
+    }
+    
+    private void clearPending() {
+        framesDropped += pending.size();
+        service.recordDropped(pending.size());
+        pending.forEach(Frame::release);
+        pending.clear();
+        pendingBytes = 0;
+    }
+    
+    private void onDisconnected() {
+        boolean wasPublishing = publishing;
+        publishing = false;
+        channel = null;
+        clearPending();
+        if (!stopped) {
+            if (wasPublishing) {
+                reconnects++;
+                service.recordReconnect();
+            }
+            logger.warn("转推连接断开: roomId={}, url={}", roomId, url);
+            scheduleReconnect();
+        }
+    }
+    
+    /**
+     * 处理下游服务器的命令响应
+     */
+    private final class SessionHandler extends SimpleChannelInboundHandler<RtmpMessage> {
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt != RtmpClientHandshake.HANDSHAKE_COMPLETE) {
+                super.userEventTriggered(ctx, evt);
+                return;
+            }
+            Map<String, Object> params = new LinkedHashMap<>();
+            params.put("app", target.getApp());
+            params.put("type", "nonprivate");
+            params.put("flashVer", "FMLE/3.0 (compatible; FMSc/1.0)");
+            params.put("tcUrl", target.getTcUrl());
+            ctx.write(RtmpMessage.setChunkSize(CHUNK_SIZE));
+            ctx.writeAndFlush(RtmpMessage.command(0, "connect", TXN_CONNECT, params));
+        }
+        
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, RtmpMessage msg) {
+            if (msg.getTypeId() != RtmpMessage.COMMAND_AMF0) {
+                return;
+            }
+            List<Object> values = Amf0.readAll(msg.content());
+            if (values.size() < 2 || !(values.get(0) instanceof String)) {
+                return;
+            }
+            String name = (String) values.get(0);
+            int txn = values.get(1) instanceof Number ? ((Number) values.get(1)).intValue() : 0;
+            
+            if ("_result".equals(name) && txn == TXN_CONNECT) {
+                String streamName = target.getStreamName();
+                ctx.write(RtmpMessage.command(0, "releaseStream", 2, null, streamName));
+                ctx.write(RtmpMessage.command(0, "FCPublish", 3, null, streamName));
+                ctx.writeAndFlush(RtmpMessage.command(0, "createStream", TXN_CREATE_STREAM, null));
+            } else if ("_result".equals(name) && txn == TXN_CREATE_STREAM) {
+                messageStreamId = values.size() > 3 && values.get(3) instanceof Number
+                        ? ((Number) values.get(3)).intValue() : 1;
+                ctx.writeAndFlush(RtmpMessage.command(messageStreamId, "publish", 5, null, target.getStreamName(), "live"));
+            } else if ("onStatus".equals(name) && values.size() > 3 && values.get(3) instanceof Map) {
+                Map<?, ?> info = (Map<?, ?>) values.get(3);
+                if ("NetStream.Publish.Start".equals(info.get("code"))) {
+                    onPublishStart();
+                } else if ("error".equals(info.get("level"))) {
+                    logger.warn("转推目标拒绝推流: roomId={}, url={}, code={}", roomId, url, info.get("code"));
+                    ctx.close();
+                }
+            } else if ("_error".equals(name)) {
+                logger.warn("转推目标返回错误: roomId={}, url={}, 响应: {}", roomId, url, values);
+                ctx.close();
+            }
+        }
+        
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            if (ctx.channel().isWritable() && channel == ctx.channel()) {
+                drainPending();
+            }
+            super.channelWritabilityChanged(ctx);
+        }
+        
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            if (channel == ctx.channel()) {
+                onDisconnected();
+            }
+            super.channelInactive(ctx);
+        }
+        
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.warn("转推连接异常: roomId={}, url={}, 原因: {}", roomId, url, cause.getMessage());
+            ctx.close();
+        }
+    }
+    
+    /**
+     * 一帧流数据，data的引用由Frame持有
+     */
+    private static final class Frame {
+        private final StreamManager.StreamDataType type;
+        private final long timestamp;
+        private final ByteBuf data;
+        
+        Frame(StreamManager.StreamDataType type, long timestamp, ByteBuf data) {
+            this.type = type;
+            this.timestamp = timestamp;
+            this.data = data;
+        }
+        
+        int size() {
+            return data.readableBytes();
+        }
+        
+        /**
+         * 视频关键帧：FLV视频标签第一个字节的高4位为1
+         */
+        boolean isKeyframe() {
+            return type == StreamManager.StreamDataType.VIDEO && size() > 0
+                    && (data.getUnsignedByte(data.readerIndex()) >> 4) == 1;
+        }
+        
+        /**
+         * AVC序列头（关键帧且AVCPacketType为0）或AAC序列头（SoundFormat为10且AACPacketType为0）
+         */
+        boolean isSequenceHeader() {
+            if (size() < 2 || data.getUnsignedByte(data.readerIndex() + 1) != 0) {
+                return false;
+            }
+            int first = data.getUnsignedByte(data.readerIndex());
+            return type == StreamManager.StreamDataType.VIDEO ? first == 0x17
+                    : type == StreamManager.StreamDataType.AUDIO && (first >> 4) == 10;
+        }
+        
+        Frame retainedDuplicate() {
+            return new Frame(type, timestamp, data.retainedDuplicate());
+        }
+        
+        void release() {
+            data.release();
+        }
+        
+        /**
+         * 转成RTMP消息，data的引用转交给消息
+         */
+        RtmpMessage toMessage(int streamId) {
+            switch (type) {
+                case AUDIO:
+                    return new RtmpMessage(RtmpMessage.CSID_AUDIO, RtmpMessage.AUDIO, streamId, timestamp, data);
+                case METADATA: {
+                    ByteBuf header = Unpooled.buffer(16);
+                    Amf0.write(header, "@setDataFrame");
+                    return new RtmpMessage(RtmpMessage.CSID_DATA, RtmpMessage.DATA_AMF0, streamId, timestamp,
+                            Unpooled.wrappedBuffer(header, data));
+                }
+                default:
+                    return new RtmpMessage(RtmpMessage.CSID_VIDEO, RtmpMessage.VIDEO, streamId, timestamp, data);
+            }
+        }
+    }
+    
+    /**
+     * 重连时补发的数据：元数据、音视频序列头和从最近一个关键帧开始的所有帧
+     * 缓存的是retainedDuplicate，同一直播间的多个转推目标共享底层数据
+     */
+    private static final class GopCache {
+        private Frame metadata;
+        private Frame videoHeader;
+        private Frame audioHeader;
+        private final List<Frame> frames = new ArrayList<>();
+        private long bytes;
+        
+        void add(Frame frame) {
+            if (frame.type == StreamManager.StreamDataType.METADATA) {
+                metadata = replace(metadata, frame);
+            } else if (frame.isSequenceHeader()) {
+                if (frame.type == StreamManager.StreamDataType.VIDEO) {
+                    videoHeader = replace(videoHeader, frame);
+                } else {
+                    audioHeader = replace(audioHeader, frame);
+                }
+            } else if (frame.isKeyframe()) {
+                clearFrames();
+                append(frame);
+            } else if (!frames.isEmpty()) {
+                append(frame);
+                if (bytes > MAX_GOP_BYTES) {
+                    clearFrames();
+                }
+            }
+        }
+        
+        /**
+         * 按发送顺序返回缓存数据的retainedDuplicate
+         */
+        List<Frame> snapshot() {
+            List<Frame> snapshot = new ArrayList<>(frames.size() + 3);
+            for (Frame header : new Frame[] {metadata, videoHeader, audioHeader}) {
+                if (header != null) {
+                    snapshot.add(header.retainedDuplicate());
+                }
+            }
+            frames.forEach(frame -> snapshot.add(frame.retainedDuplicate()));
+            return snapshot;
+        }
+        
+        void clear() {
+            metadata = replace(metadata, null);
+            videoHeader = replace(videoHeader, null);
+            audioHeader = replace(audioHeader, null);
+            clearFrames();
+        }
+        
+        private Frame replace(Frame old, Frame frame) {
+            if (old != null) {
+                old.release();
+            }
+            return frame != null ? frame.retainedDuplicate() : null;
+        }
+        
+        private void append(Frame frame) {
+            frames.add(frame.retainedDuplicate());
+            bytes += frame.size();
+        }
+        
+        private void clearFrames() {
+            frames.forEach(Frame::release);
+            frames.clear();
+            bytes = 0;
+        }
+    }
+}
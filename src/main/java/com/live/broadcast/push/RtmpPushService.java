@@ -0,0 +1,199 @@
+package com.live.broadcast.push;
+
+import com.live.broadcast.stream.StreamManager;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RTMP转推服务 - 管理每个直播间的转推目标，推流开始时为每个目标创建一个RtmpPushConsumer
+ * 所有转推连接共用一个事件循环组，不为每个目标创建线程；从源站拉取的流不转推
+ */
+public class RtmpPushService {
+    private static final Logger logger = LoggerFactory.getLogger(RtmpPushService.class);
+    private static volatile RtmpPushService instance;
+    
+    private static final int THREADS = Integer.getInteger("live.push.threads", 2);
+    
+    // 转推连接的写缓冲水位，超过高水位时数据进入转推自己的有界队列
+    private static final WriteBufferWaterMark WRITE_BUFFER_WATER_MARK = new WriteBufferWaterMark(512 * 1024, 2 * 1024 * 1024);
+    
+    private final EventLoopGroup group = new NioEventLoopGroup(THREADS, new DefaultThreadFactory("rtmp-push", true));
+    private final Bootstrap bootstrap = new Bootstrap()
+            .channel(NioSocketChannel.class)
+            .option(ChannelOption.TCP_NODELAY, true)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 5000)
+            .option(ChannelOption.WRITE_BUFFER_WATER_MARK, WRITE_BUFFER_WATER_MARK);
+    
+    // 转推目标 roomId -> 目标地址
+    private final Map<String, Set<String>> targets = new ConcurrentHashMap<>();
+    
+    // 进行中的转推 roomId -> (目标地址 -> 转推)
+    private final Map<String, Map<String, RtmpPushConsumer>> pushes = new ConcurrentHashMap<>();
+    
+    private final LongAdder pushesStarted = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder framesDropped = new LongAdder();
+    
+    private RtmpPushService() {}
+    
+    public static RtmpPushService getInstance() {
+        if (instance == null) {
+            synchronized (RtmpPushService.class) {
+                if (instance == null) {
+                    instance = new RtmpPushService();
+                }
+            }
+        }
+        return instance;
+    }
+    
+    /**
+     * 添加转推目标，直播间正在推流时立即开始转推
+     *
+     * @return 目标已存在时返回false
+     * @throws IllegalArgumentException 地址格式不正确
+     */
+    public boolean addTarget(String roomId, String url) {
+        RtmpUrl.parse(url);
+        if (!targets.computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet()).add(url)) {
+            return false;
+        }
+        logger.info("添加转推目标: roomId={}, url={}", roomId, url);
+        
+        StreamManager.StreamInfo streamInfo = StreamManager.getInstance().getStreamInfo(roomId);
+        if (streamInfo != null && !streamInfo.isRelay()) {
+            startPush(roomId, url, streamInfo);
+        }
+        return true;
+    }
+    
+    /**
+     * 删除转推目标并停止转推
+     *
+     * @return 目标不存在时返回false
+     */
+    public boolean removeTarget(String roomId, String url) {
+        Set<String> urls = targets.get(roomId);
+        if (urls == null || !urls.remove(url)) {
+            return false;
+        }
+        logger.info("删除转推目标: roomId={}, url={}", roomId, url);
+        
+        Map<String, RtmpPushConsumer> roomPushes = pushes.get(roomId);
+        RtmpPushConsumer push = roomPushes != null ? roomPushes.remove(url) : null;
+        if (push != null) {
+            StreamManager.getInstance().removeStreamConsumer(roomId, push);
+            push.stop();
+        }
+        return true;
+    }
+    
+    /**
+     * 直播间开始推流，为每个转推目标创建转推
+     */
+    public void onStreamStart(String roomId) {
+        Set<String> urls = targets.get(roomId);
+        StreamManager.StreamInfo streamInfo = StreamManager.getInstance().getStreamInfo(roomId);
+        if (urls == null || streamInfo == null) {
+            return;
+        }
+        urls.forEach(url -> startPush(roomId, url, streamInfo));
+    }
+    
+    private void startPush(String roomId, String url, StreamManager.StreamInfo streamInfo) {
+        Map<String, RtmpPushConsumer> roomPushes = pushes.computeIfAbsent(roomId, k -> new ConcurrentHashMap<>());
+        RtmpPushConsumer push = new RtmpPushConsumer(this, roomId, url, streamInfo, group.next(), bootstrap);
+        RtmpPushConsumer existing = roomPushes.putIfAbsent(url, push);
+        if (existing != null && existing.getState() != RtmpPushConsumer.State.STOPPED) {
+            return;
+        }
+        if (existing != null && !roomPushes.replace(url, existing, push)) {
+            return;
+        }
+        pushesStarted.increment();
+        StreamManager.getInstance().addStreamConsumer(roomId, push);
+        push.start();
+    }
+    
+    /**
+     * 推流结束，转推已自行停止
+     */
+    void onPushEnded(RtmpPushConsumer push) {
+        Map<String, RtmpPushConsumer> roomPushes = pushes.get(push.getRoomId());
+        if (roomPushes != null) {
+            roomPushes.remove(push.getUrl(), push);
+        }
+    }
+    
+    void recordSent(int bytes) {
+        framesSent.increment();
+        bytesSent.add(bytes);
+    }
+    
+    void recordDropped(int frames) {
+        framesDropped.add(frames);
+    }
+    
+    void recordReconnect() {
+        reconnects.increment();
+    }
+    
+    /**
+     * 获取直播间的转推目标和状态
+     */
+    public List<Map<String, Object>> getTargets(String roomId) {
+        Set<String> urls = targets.getOrDefault(roomId, Collections.emptySet());
+        Map<String, RtmpPushConsumer> roomPushes = pushes.getOrDefault(roomId, Collections.emptyMap());
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (String url : urls) {
+            RtmpPushConsumer push = roomPushes.get(url);
+            if (push != null) {
+                result.add(push.getInfo());
+            } else {
+                Map<String, Object> info = new LinkedHashMap<>();
+                info.put("url", url);
+                info.put("state", "IDLE");
+                result.add(info);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("targets", targets.values().stream().mapToInt(Set::size).sum());
+        stats.put("activePushes", pushes.values().stream().mapToInt(Map::size).sum());
+        stats.put("pushesStarted", pushesStarted.sum());
+        stats.put("reconnects", reconnects.sum());
+        stats.put("framesSent", framesSent.sum());
+        stats.put("bytesSent", bytesSent.sum());
+        stats.put("framesDropped", framesDropped.sum());
+        return stats;
+    }
+    
+    public void shutdown() {
+        pushes.values().forEach(roomPushes -> roomPushes.values().forEach(RtmpPushConsumer::stop));
+        group.shutdownGracefully();
+    }
+}
@@ -0,0 +1,99 @@
+package com.live.broadcast.push;
+
+/**
+ * RTMP推流地址，格式 rtmp://host[:port]/app/streamName，IPv6地址写作 [addr]
+ * 最后一段路径（包括查询参数）是流名称，之前的部分是应用名
+ */
+final class RtmpUrl {
+    private static final String SCHEME = "rtmp://";
+    private static final int DEFAULT_PORT = 1935;
+    
+    private final String host;
+    private final int port;
+    private final String app;
+    private final String streamName;
+    private final String tcUrl;
+    
+    private RtmpUrl(String host, int port, String app, String streamName, String tcUrl) {
+        this.host = host;
+        this.port = port;
+        this.app = app;
+        this.streamName = streamName;
+        this.tcUrl = tcUrl;
+    }
+    
+    /**
+     * 解析推流地址
+     *
+     * @throws IllegalArgumentException 地址格式不正确
+     */
+    static RtmpUrl parse(String url) {
+        if (url == null || !url.startsWith(SCHEME)) {
+            throw new IllegalArgumentException("只支持rtmp://地址: " + url);
+        }
+        String rest = url.substring(SCHEME.length());
+        int slash = rest.indexOf('/');
+        int lastSlash = rest.lastIndexOf('/');
+        if (slash <= 0 || lastSlash <= slash + 1 || lastSlash == rest.length() - 1) {
+            throw new IllegalArgumentException("推流地址需要包含应用名和流名称: " + url);
+        }
+        
+        String authority = rest.substring(0, slash);
+        String host = authority;
+        String portText = null;
+        if (authority.startsWith("[")) {
+            // IPv6地址：[addr] 或 [addr]:port
+            int close = authority.indexOf(']');
+            if (close < 2 || (close != authority.length() - 1 && authority.charAt(close + 1) != ':')) {
+                throw new IllegalArgumentException("推流地址主机格式错误: " + url);
+            }
+            host = authority.substring(1, close);
+            if (close != authority.length() - 1) {
+                portText = authority.substring(close + 2);
+            }
+        } else {
+            int colon = authority.indexOf(':');
+            if (colon >= 0) {
+                host = authority.substring(0, colon);
+                portText = authority.substring(colon + 1);
+            }
+        }
+        if (host.isEmpty()) {
+            throw new IllegalArgumentException("推流地址缺少主机: " + url);
+        }
+        
+        int port = DEFAULT_PORT;
+        if (portText != null) {
+            try {
+                port = Integer.parseInt(portText);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("推流地址端口格式错误: " + url);
+            }
+            if (port < 1 || port > 65535) {
+                throw new IllegalArgumentException("推流地址端口超出范围: " + url);
+            }
+        }
+        String app = rest.substring(slash + 1, lastSlash);
+        return new RtmpUrl(host, port, app, rest.substring(lastSlash + 1), SCHEME + authority + "/" + app);
+    }
+    
+    String getHost() {
+        return host;
+    }
+    
+    int getPort() {
+        return port;
+    }
+    
+    String getApp() {
+        return app;
+    }
+    
+    String getStreamName() {
+        return streamName;
+    }
+    
+    String getTcUrl() {
+        return tcUrl;
+    }
+}
@@ -0,0 +1,141 @@
+package com.live.broadcast.ratelimit;
+
+import com.live.broadcast.filter.TextNormalizer;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 聊天刷屏控制 - 每个连接一个实例，保存在channel属性中，只在channel所属的EventLoop中访问
+ * 依次检查重复内容、用户发言频率和直播间总发言频率；重复检测保存最近几条消息的内容哈希，
+ * 哈希前先归一化并合并连续重复的字符，"666"和"６６６６６"视为相同内容
+ */
+public final class ChatFloodGuard {
+    // 每个用户每秒可发送的消息数和突发数
+    public static final double USER_RATE = Double.parseDouble(System.getProperty("live.chat.user.rate", "1"));
+    public static final int USER_BURST = Integer.getInteger("live.chat.user.burst", 5);
+    
+    // 每个直播间每秒可广播的消息数和突发数
+    public static final double ROOM_RATE = Double.parseDouble(System.getProperty("live.chat.room.rate", "100"));
+    public static final int ROOM_BURST = Integer.getInteger("live.chat.room.burst", 200);
+    
+    // 重复检测保留的消息条数和时间窗口
+    private static final int DUPLICATE_WINDOW = Integer.getInteger("live.chat.duplicate.window", 8);
+    private static final long DUPLICATE_NANOS = TimeUnit.SECONDS.toNanos(
+            Integer.getInteger("live.chat.duplicate.seconds", 30));
+    
+    private static final AttributeKey<ChatFloodGuard> KEY = AttributeKey.valueOf("chatFloodGuard");
+    
+    private static final LongAdder acceptedMessages = new LongAdder();
+    private static final LongAdder userLimited = new LongAdder();
+    private static final LongAdder roomLimited = new LongAdder();
+    private static final LongAdder duplicates = new LongAdder();
+    
+    /**
+     * 检查结果
+     */
+    public enum Verdict {
+        ACCEPTED,
+        USER_LIMITED,
+        ROOM_LIMITED,
+        DUPLICATE
+    }
+    
+    private final TokenBucket userBucket = new TokenBucket(USER_RATE, USER_BURST);
+    
+    // 最近消息的内容哈希和发送时间，按环形缓冲区覆盖
+    private final long[] recentHashes = new long[DUPLICATE_WINDOW];
+    private final long[] recentTimes = new long[DUPLICATE_WINDOW];
+    private int recentCount;
+    private int nextSlot;
+    
+    private ChatFloodGuard() {}
+    
+    /**
+     * 获取连接的刷屏控制器，首次使用时创建
+     */
+    public static ChatFloodGuard of(Channel channel) {
+        ChatFloodGuard guard = channel.attr(KEY).get();
+        if (guard == null) {
+            guard = new ChatFloodGuard();
+            channel.attr(KEY).set(guard);
+        }
+        return guard;
+    }
+    
+    /**
+     * 检查一条聊天消息，通过时记录内容哈希并扣除令牌
+     *
+     * @param roomBucket 直播间的发言令牌桶，为空时不检查
+     */
+    public Verdict check(String content, TokenBucket roomBucket) {
+        long now = System.nanoTime();
+        long hash = contentHash(content);
+        
+        if (isDuplicate(hash, now)) {
+            duplicates.increment();
+            return Verdict.DUPLICATE;
+        }
+        if (!userBucket.tryAcquire(now)) {
+            userLimited.increment();
+            return Verdict.USER_LIMITED;
+        }
+        if (roomBucket != null && !roomBucket.tryAcquire(now)) {
+            roomLimited.increment();
+            return Verdict.ROOM_LIMITED;
+        }
+        
+        recentHashes[nextSlot] = hash;
+        recentTimes[nextSlot] = now;
+        nextSlot = (nextSlot + 1) % DUPLICATE_WINDOW;
+        recentCount = Math.min(recentCount + 1, DUPLICATE_WINDOW);
+        acceptedMessages.increment();
+        return Verdict.ACCEPTED;
+    }
+    
+    private boolean isDuplicate(long hash, long now) {
+        for (int i = 0; i < recentCount; i++) {
+            if (recentHashes[i] == hash && now - recentTimes[i] < DUPLICATE_NANOS) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 归一化后的64位FNV-1a哈希，跳过可忽略字符并合并连续重复的字符
+     */
+    static long contentHash(String content) {
+        long hash = 0xcbf29ce484222325L;
+        char previous = TextNormalizer.IGNORED;
+        for (int i = 0; i < content.length(); i++) {
+            char c = TextNormalizer.normalize(content.charAt(i));
+            if (c == TextNormalizer.IGNORED || c == previous) {
+                continue;
+            }
+            previous = c;
+            hash = (hash ^ c) * 0x100000001b3L;
+        }
+        return hash;
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("userRate", USER_RATE);
+        stats.put("userBurst", USER_BURST);
+        stats.put("roomRate", ROOM_RATE);
+        stats.put("roomBurst", ROOM_BURST);
+        stats.put("acceptedMessages", acceptedMessages.sum());
+        stats.put("userLimited", userLimited.sum());
+        stats.put("roomLimited", roomLimited.sum());
+        stats.put("duplicates", duplicates.sum());
+        return stats;
+    }
+}
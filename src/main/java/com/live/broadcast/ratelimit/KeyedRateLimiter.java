@@ -0,0 +1,105 @@
+package com.live.broadcast.ratelimit;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按键限流器 - 每个键（如客户端IP）一个令牌桶
+ * 空闲的令牌桶通过时间轮定时淘汰；键数量达到上限后，新出现的键共用一个溢出令牌桶，保证内存有界
+ */
+public class KeyedRateLimiter<K> {
+    // 所有限流器共用一个时间轮
+    private static final Timer EVICTION_TIMER =
+            new HashedWheelTimer(new DefaultThreadFactory("rate-limit-evictor", true), 1, TimeUnit.SECONDS, 64);
+    
+    private final double ratePerSecond;
+    private final int burst;
+    private final int maxKeys;
+    private final long idleNanos;
+    
+    private final Map<K, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final TokenBucket overflowBucket;
+    
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder limited = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    
+    /**
+     * @param ratePerSecond 每个键每秒允许的请求数
+     * @param burst         每个键允许的突发请求数
+     * @param maxKeys       同时跟踪的最大键数量
+     * @param idleSeconds   键空闲多久后淘汰
+     */
+    public KeyedRateLimiter(double ratePerSecond, int burst, int maxKeys, int idleSeconds) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.maxKeys = maxKeys;
+        this.idleNanos = TimeUnit.SECONDS.toNanos(idleSeconds);
+        this.overflowBucket = new TokenBucket(ratePerSecond * 10, burst * 10);
+    }
+    
+    /**
+     * 尝试为指定键获取一个令牌
+     */
+    public boolean tryAcquire(K key) {
+        long now = System.nanoTime();
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = createBucket(key, now);
+        }
+        
+        if (bucket.tryAcquire(now)) {
+            allowed.increment();
+            return true;
+        }
+        limited.increment();
+        return false;
+    }
+    
+    private TokenBucket createBucket(K key, long now) {
+        if (buckets.size() >= maxKeys) {
+            return overflowBucket;
+        }
+        
+        TokenBucket created = new TokenBucket(ratePerSecond, burst, now);
+        TokenBucket existing = buckets.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        scheduleEviction(key, created);
+        return created;
+    }
+    
+    private void scheduleEviction(K key, TokenBucket bucket) {
+        EVICTION_TIMER.newTimeout(timeout -> {
+            if (bucket.isIdle(System.nanoTime(), idleNanos)) {
+                if (buckets.remove(key, bucket)) {
+                    evicted.increment();
+                }
+            } else {
+                scheduleEviction(key, bucket);
+            }
+        }, idleNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ratePerSecond", ratePerSecond);
+        stats.put("burst", burst);
+        stats.put("trackedKeys", buckets.size());
+        stats.put("allowed", allowed.sum());
+        stats.put("limited", limited.sum());
+        stats.put("evicted", evicted.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,67 @@
+package com.live.broadcast.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶
+ * 基于GCRA算法实现，只需维护一个"理论到达时间"，一次CAS即可完成取令牌
+ */
+public class TokenBucket {
+    // 产生一个令牌的间隔
+    private final long emissionIntervalNanos;
+    
+    // 桶容量对应的时间窗口
+    private final long capacityNanos;
+    
+    // 理论到达时间
+    private final AtomicLong theoreticalArrivalTime;
+    
+    /**
+     * @param ratePerSecond 每秒产生的令牌数
+     * @param burst         桶容量（允许的突发请求数）
+     */
+    public TokenBucket(double ratePerSecond, int burst) {
+        this(ratePerSecond, burst, System.nanoTime());
+    }
+    
+    public TokenBucket(double ratePerSecond, int burst, long nowNanos) {
+        if (ratePerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("令牌桶参数必须为正数: rate=" + ratePerSecond + ", burst=" + burst);
+        }
+        this.emissionIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        this.capacityNanos = emissionIntervalNanos * burst;
+        this.theoreticalArrivalTime = new AtomicLong(nowNanos);
+    }
+    
+    /**
+     * 尝试获取一个令牌
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+    
+    /**
+     * 尝试获取一个令牌
+     */
+    public boolean tryAcquire(long nowNanos) {
+        for (;;) {
+            long tat = theoreticalArrivalTime.get();
+            long base = tat - nowNanos > 0 ? tat : nowNanos;
+            long next = base + emissionIntervalNanos;
+            if (next - nowNanos > capacityNanos) {
+                return false;
+            }
+            if (theoreticalArrivalTime.compareAndSet(tat, next)) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * 令牌桶已满且空闲超过指定时间
+     */
+    public boolean isIdle(long nowNanos, long idleNanos) {
+        return nowNanos - theoreticalArrivalTime.get() >= idleNanos;
+    }
+}
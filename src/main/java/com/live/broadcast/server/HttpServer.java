@@ -1,36 +1,86 @@
 package com.live.broadcast.server;
 
+import com.live.broadcast.handler.BlockingTaskExecutor;
 import com.live.broadcast.handler.HttpServerHandler;
+import com.live.broadcast.handler.RateLimitHandler;
+import com.live.broadcast.handler.SelectiveHttpContentCompressor;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpMessage;
 import io.netty.handler.codec.http.HttpObjectAggregator;
-import io.netty.handler.codec.http.HttpRequestDecoder;
-import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.AsciiString;
+import io.netty.util.ReferenceCountUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.net.ssl.SSLException;
+import java.io.File;
+
 /**
  * HTTP服务器 - 提供Web页面和API接口
+ * 同时支持HTTP/1.1和HTTP/2：明文连接支持h2c升级和prior-knowledge，启用TLS时通过ALPN协商
  */
 public class HttpServer {
     private static final Logger logger = LoggerFactory.getLogger(HttpServer.class);
     
+    private static final int MAX_CONTENT_LENGTH = 65536;
+    
+    // HTTP/2参数：LL-HLS阻塞刷新和分片并行拉取需要较多并发流
+    private static final int HTTP2_MAX_CONCURRENT_STREAMS = 128;
+    private static final int HTTP2_INITIAL_WINDOW_SIZE = 1024 * 1024;
+    private static final int HTTP2_HEADER_TABLE_SIZE = 16 * 1024;
+    private static final int HTTP2_MAX_HEADER_LIST_SIZE = 16 * 1024;
+    
+    // 限流处理器无状态，所有连接和HTTP/2流共用
+    private static final RateLimitHandler RATE_LIMIT_HANDLER = new RateLimitHandler();
+    
     private final int port;
+    private final SslContext sslContext;
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
     private ChannelFuture channelFuture;
     
     public HttpServer(int port) {
+        this(port, null);
+    }
+    
+    /**
+     * @param sslContext 为空时只提供明文HTTP/1.1和h2c
+     */
+    public HttpServer(int port, SslContext sslContext) {
         this.port = port;
+        this.sslContext = sslContext;
     }
     
     public void start() {
@@ -45,27 +95,16 @@ public class HttpServer {
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel ch) {
-                            ChannelPipeline pipeline = ch.pipeline();
-                            
-                            // HTTP请求解码器
-                            pipeline.addLast(new HttpRequestDecoder());
-                            
-                            // HTTP响应编码器
-                            pipeline.addLast(new HttpResponseEncoder());
-                            
-                            // HTTP消息聚合器
-                            pipeline.addLast(new HttpObjectAggregator(65536));
-                            
-                            // 支持大数据流传输
-                            pipeline.addLast(new ChunkedWriteHandler());
-                            
-                            // 自定义HTTP处理器
-                            pipeline.addLast(new HttpServerHandler());
+                            if (sslContext != null) {
+                                configureTls(ch);
+                            } else {
+                                configureCleartext(ch);
+                            }
                         }
                     });
             
             channelFuture = bootstrap.bind(port).sync();
-            logger.info("HTTP服务器启动成功，端口: {}", port);
+            logger.info("HTTP服务器启动成功，端口: {}, TLS: {}", port, sslContext != null);
             
             channelFuture.channel().closeFuture().sync();
             
@@ -77,6 +116,121 @@ public class HttpServer {
         }
     }
     
+    /**
+     * 明文连接：HTTP/1.1，h2c升级，h2c prior-knowledge
+     */
+    private void configureCleartext(SocketChannel ch) {
+        ChannelPipeline pipeline = ch.pipeline();
+        
+        HttpServerCodec sourceCodec = new HttpServerCodec();
+        HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(sourceCodec, protocol -> {
+            if (AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)) {
+                return new Http2ServerUpgradeCodec(newHttp2FrameCodec(), newHttp2MultiplexHandler());
+            }
+            return null;
+        }, MAX_CONTENT_LENGTH);
+        
+        ChannelInitializer<Channel> priorKnowledgeHandler = new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel channel) {
+                channel.pipeline().addLast(newHttp2FrameCodec(), newHttp2MultiplexHandler());
+            }
+        };
+        
+        pipeline.addLast(new CleartextHttp2ServerUpgradeHandler(sourceCodec, upgradeHandler, priorKnowledgeHandler));
+        
+        // 客户端没有尝试升级时，收到第一个请求后再安装HTTP/1.1处理器
+        pipeline.addLast(new SimpleChannelInboundHandler<HttpMessage>() {
+            @Override
+            protected void channelRead0(ChannelHandlerContext ctx, HttpMessage msg) {
+                ChannelPipeline p = ctx.pipeline();
+                addHttpHandlers(p);
+                p.remove(this);
+                ctx.fireChannelRead(ReferenceCountUtil.retain(msg));
+            }
+        });
+    }
+    
+    /**
+     * TLS连接：通过ALPN选择HTTP/2或HTTP/1.1
+     */
+    private void configureTls(SocketChannel ch) {
+        ChannelPipeline pipeline = ch.pipeline();
+        pipeline.addLast(sslContext.newHandler(ch.alloc()));
+        pipeline.addLast(new ApplicationProtocolNegotiationHandler(ApplicationProtocolNames.HTTP_1_1) {
+            @Override
+            protected void configurePipeline(ChannelHandlerContext ctx, String protocol) {
+                if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                    ctx.pipeline().addLast(newHttp2FrameCodec(), newHttp2MultiplexHandler());
+                } else if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
+                    ctx.pipeline().addLast(new HttpServerCodec());
+                    addHttpHandlers(ctx.pipeline());
+                } else {
+                    throw new IllegalStateException("不支持的协议: " + protocol);
+                }
+            }
+        });
+    }
+    
+    /**
+     * 添加HTTP/1.1连接和HTTP/2流共用的处理器
+     */
+    private void addHttpHandlers(ChannelPipeline pipeline) {
+        // 按内容类型选择性压缩，媒体分片不压缩
+        pipeline.addLast(new SelectiveHttpContentCompressor());
+        
+        // HTTP消息聚合器
+        pipeline.addLast(new HttpObjectAggregator(MAX_CONTENT_LENGTH));
+        
+        // 按客户端IP和路由类别限流
+        pipeline.addLast(RATE_LIMIT_HANDLER);
+        
+        // 支持大数据流传输
+        pipeline.addLast(new ChunkedWriteHandler());
+        
+        // 自定义HTTP处理器
+        pipeline.addLast(new HttpServerHandler());
+    }
+    
+    private Http2FrameCodec newHttp2FrameCodec() {
+        Http2Settings settings = Http2Settings.defaultSettings()
+                .maxConcurrentStreams(HTTP2_MAX_CONCURRENT_STREAMS)
+                .initialWindowSize(HTTP2_INITIAL_WINDOW_SIZE)
+                .headerTableSize(HTTP2_HEADER_TABLE_SIZE)
+                .maxHeaderListSize(HTTP2_MAX_HEADER_LIST_SIZE);
+        return Http2FrameCodecBuilder.forServer()
+                .initialSettings(settings)
+                .build();
+    }
+    
+    private Http2MultiplexHandler newHttp2MultiplexHandler() {
+        // 每个HTTP/2流是一个子channel，转换为HTTP/1.1对象后复用同一套处理器
+        return new Http2MultiplexHandler(new ChannelInitializer<Http2StreamChannel>() {
+            @Override
+            protected void initChannel(Http2StreamChannel ch) {
+                ch.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(true));
+                addHttpHandlers(ch.pipeline());
+            }
+        });
+    }
+    
+    /**
+     * 创建支持ALPN的服务端SslContext
+     */
+    public static SslContext createSslContext(File certChainFile, File keyFile) throws SSLException {
+        SslProvider provider = SslProvider.isAlpnSupported(SslProvider.OPENSSL) ? SslProvider.OPENSSL : SslProvider.JDK;
+        return SslContextBuilder.forServer(certChainFile, keyFile)
+                .sslProvider(provider)
+                .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+                .applicationProtocolConfig(new ApplicationProtocolConfig(
+                        ApplicationProtocolConfig.Protocol.ALPN,
+                        ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                        ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                        ApplicationProtocolNames.HTTP_2,
+                        ApplicationProtocolNames.HTTP_1_1))
+                .build();
+    }
+    
     public void stop() {
         if (channelFuture != null) {
             channelFuture.channel().close();
@@ -87,6 +241,7 @@ public class HttpServer {
         if (workerGroup != null) {
             workerGroup.shutdownGracefully();
         }
+        BlockingTaskExecutor.getInstance().shutdown();
         logger.info("HTTP服务器已停止");
     }
 }
@@ -1,32 +1,47 @@
 package com.live.broadcast.server;
 
+import com.live.broadcast.handler.ConnectionSupervisor;
+import com.live.broadcast.handler.RateLimitHandler;
+import com.live.broadcast.handler.SlowConsumerHandler;
 import com.live.broadcast.handler.WebSocketServerHandler;
+import com.live.broadcast.protocol.BroadcastDeflater;
+import com.live.broadcast.protocol.WireProtocol;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
-import io.netty.handler.timeout.IdleStateHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.TimeUnit;
-
 /**
  * WebSocket服务器 - 处理客户端连接和实时消息
  */
 public class WebSocketServer {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketServer.class);
     
+    // 最多合并多少次flush后强制写出
+    private static final int FLUSH_CONSOLIDATION_LIMIT = 256;
+    
+    // 每个连接的写缓冲水位，超过高水位后channel变为不可写
+    private static final WriteBufferWaterMark WRITE_BUFFER_WATER_MARK = new WriteBufferWaterMark(32 * 1024, 128 * 1024);
+    
+    // 限流处理器无状态，所有连接共用
+    private static final RateLimitHandler RATE_LIMIT_HANDLER = new RateLimitHandler();
+    
     private final int port;
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
@@ -45,11 +60,15 @@ public class WebSocketServer {
             bootstrap.group(bossGroup, workerGroup)
                     .channel(NioServerSocketChannel.class)
                     .handler(new LoggingHandler(LogLevel.INFO))
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, WRITE_BUFFER_WATER_MARK)
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel ch) {
                             ChannelPipeline pipeline = ch.pipeline();
                             
+                            // 合并flush，减少广播时的系统调用
+                            pipeline.addLast(new FlushConsolidationHandler(FLUSH_CONSOLIDATION_LIMIT, true));
+                            
                             // HTTP编解码器
                             pipeline.addLast(new HttpServerCodec());
                             
@@ -59,11 +78,20 @@ public class WebSocketServer {
                             // 支持大数据流传输
                             pipeline.addLast(new ChunkedWriteHandler());
                             
-                            // 空闲检测处理器 (读空闲60秒，写空闲30秒，读写空闲90秒)
-                            pipeline.addLast(new IdleStateHandler(60, 30, 90, TimeUnit.SECONDS));
+                            // 空闲检测：每个EventLoop一个扫描任务，空闲连接先发ping，超时后关闭
+                            pipeline.addLast(new ConnectionSupervisor());
+                            
+                            // 按客户端IP限制握手和消息频率
+                            pipeline.addLast(RATE_LIMIT_HANDLER);
+                            
+                            // 协商permessage-deflate扩展，广播消息统一压缩一次后共享
+                            pipeline.addLast(new WebSocketServerExtensionHandler(BroadcastDeflater.newHandshaker()));
+                            
+                            // WebSocket协议处理器，通过子协议协商JSON或二进制消息格式
+                            pipeline.addLast(new WebSocketServerProtocolHandler("/ws", WireProtocol.SUBPROTOCOLS, true, 65536));
                             
-                            // WebSocket协议处理器
-                            pipeline.addLast(new WebSocketServerProtocolHandler("/ws", null, true, 65536));
+                            // 慢消费者处理：不可写时丢弃低优先级广播
+                            pipeline.addLast(new SlowConsumerHandler());
                             
                             // 自定义业务处理器
                             pipeline.addLast(new WebSocketServerHandler());
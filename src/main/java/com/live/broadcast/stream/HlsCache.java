@@ -0,0 +1,335 @@
+package com.live.broadcast.stream;
+
+import com.live.broadcast.handler.BlockingTaskExecutor;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * HLS文件缓存 - 按总字节数做LRU淘汰，播放列表和片段使用不同的过期时间
+ * 同一文件同时未命中的请求合并成一次读取，读取结果以同一块缓冲区的retainedDuplicate分发给所有请求。
+ * HlsStreamOutput写文件时主动失效对应的缓存，进行中的读取同时被摘除，之后的请求重新读取；正在写入的片段只合并读取、不缓存
+ */
+public class HlsCache {
+    private static final Logger logger = LoggerFactory.getLogger(HlsCache.class);
+    private static volatile HlsCache instance;
+    
+    private static final long MAX_BYTES = Integer.getInteger("live.hls.cacheMb", 64) * 1024L * 1024L;
+    
+    // 单个文件超过总容量的1/4时不缓存，避免一个大文件挤掉所有缓存
+    private static final long MAX_ENTRY_BYTES = MAX_BYTES / 4;
+    
+    private static final long PLAYLIST_TTL_MILLIS = Integer.getInteger("live.hls.playlistTtlMs", 1000);
+    private static final long SEGMENT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(Integer.getInteger("live.hls.segmentTtlSeconds", 60));
+    
+    // 以下状态都由this保护
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Load> loading = new HashMap<>();
+    private final Set<String> writing = new HashSet<>();
+    private long bytes;
+    
+    private long hits;
+    private long misses;
+    private long collapsed;
+    private long loads;
+    private long evictions;
+    private long invalidations;
+    
+    private HlsCache() {}
+    
+    public static HlsCache getInstance() {
+        if (instance == null) {
+            synchronized (HlsCache.class) {
+                if (instance == null) {
+                    instance = new HlsCache();
+                }
+            }
+        }
+        return instance;
+    }
+    
+    /**
+     * 读取HLS文件，完成后在指定的事件循环上回调
+     * 回调的内容由调用方负责释放；文件不存在时内容为null，读取队列已满时异常为RejectedExecutionException
+     *
+     * @param filePath         文件路径，.gz结尾的预压缩播放列表会同时记录原始文件大小
+     * @param callbackExecutor 回调执行的事件循环，一般为channel所在的EventLoop
+     * @param callback         回调，参数为文件内容和异常（二者最多一个非空）
+     */
+    public void get(String filePath, EventExecutor callbackExecutor, BiConsumer<Content, Throwable> callback) {
+        Content hit = null;
+        Load newLoad = null;
+        synchronized (this) {
+            Entry entry = entries.get(filePath);
+            if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+                removeEntry(filePath);
+                entry = null;
+            }
+            if (entry != null) {
+                hits++;
+                hit = entry.share();
+            } else {
+                misses++;
+                Load load = loading.get(filePath);
+                if (load == null) {
+                    load = new Load();
+                    loading.put(filePath, load);
+                    newLoad = load;
+                } else {
+                    collapsed++;
+                }
+                load.waiters.add(new Waiter(callbackExecutor, callback));
+            }
+        }
+        
+        if (hit != null) {
+            dispatch(new Waiter(callbackExecutor, callback), hit, null);
+        } else if (newLoad != null) {
+            startLoad(filePath, newLoad);
+        }
+    }
+    
+    /**
+     * 文件已被修改或删除，丢弃缓存
+     * 正在进行的读取可能读到旧内容：已在等待的请求仍使用它的结果，但结果不再缓存，之后到达的请求重新读取
+     */
+    public synchronized void invalidate(String filePath) {
+        invalidations++;
+        removeEntry(filePath);
+        Load load = loading.remove(filePath);
+        if (load != null) {
+            load.stale = true;
+        }
+    }
+    
+    /**
+     * 目录下的文件已全部删除
+     */
+    public synchronized void invalidateDirectory(String dir) {
+        String prefix = dir + "/";
+        new ArrayList<>(entries.keySet()).stream()
+                .filter(filePath -> filePath.startsWith(prefix))
+                .forEach(this::invalidate);
+        loading.entrySet().removeIf(e -> {
+            if (!e.getKey().startsWith(prefix)) {
+                return false;
+            }
+            e.getValue().stale = true;
+            return true;
+        });
+    }
+    
+    /**
+     * 片段开始写入，写完之前不缓存
+     */
+    public synchronized void beginWrite(String filePath) {
+        writing.add(filePath);
+        invalidate(filePath);
+    }
+    
+    /**
+     * 片段写入完成，之后的请求读取完整的文件并缓存
+     */
+    public synchronized void endWrite(String filePath) {
+        writing.remove(filePath);
+        invalidate(filePath);
+    }
+    
+    private void startLoad(String filePath, Load load) {
+        boolean accepted = BlockingTaskExecutor.getInstance().submit("hls", ImmediateEventExecutor.INSTANCE,
+                () -> readFile(filePath), (content, error) -> complete(filePath, load, content, error));
+        if (!accepted) {
+            complete(filePath, load, null, new RejectedExecutionException("HLS读取队列已满"));
+        }
+    }
+    
+    private Content readFile(String filePath) throws IOException {
+        try {
+            byte[] bytes = Files.readAllBytes(Paths.get(filePath));
+            long originalSize = -1;
+            if (filePath.endsWith(".gz") && bytes.length >= 4) {
+                // 取gzip尾部记录的原始长度（小端4字节），与读到的压缩内容一致，不受原文件随后被替换的影响
+                int n = bytes.length;
+                originalSize = (bytes[n - 4] & 0xFFL) | (bytes[n - 3] & 0xFFL) << 8
+                        | (bytes[n - 2] & 0xFFL) << 16 | (bytes[n - 1] & 0xFFL) << 24;
+            }
+            return new Content(Unpooled.wrappedBuffer(bytes), originalSize);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * 读取完成，把结果分给所有等待的请求，可缓存时放入缓存
+     * 读取期间文件被失效时，loading中可能已经是另一次读取，只移除自己
+     */
+    private void complete(String filePath, Load load, Content content, Throwable error) {
+        List<Waiter> waiters;
+        List<Content> shares = new ArrayList<>();
+        synchronized (this) {
+            loading.remove(filePath, load);
+            waiters = load.waiters;
+            loads++;
+            if (content != null) {
+                for (int i = 0; i < waiters.size(); i++) {
+                    shares.add(content.share());
+                }
+                if (!load.stale && !writing.contains(filePath) && content.data.readableBytes() <= MAX_ENTRY_BYTES) {
+                    // 读取时持有的引用转交给缓存
+                    putEntry(filePath, new Entry(content, System.currentTimeMillis() + ttlMillis(filePath)));
+                } else {
+                    content.data.release();
+                }
+            }
+        }
+        
+        for (int i = 0; i < waiters.size(); i++) {
+            dispatch(waiters.get(i), content != null ? shares.get(i) : null, error);
+        }
+    }
+    
+    private void dispatch(Waiter waiter, Content content, Throwable error) {
+        if (waiter.executor.inEventLoop()) {
+            waiter.callback.accept(content, error);
+            return;
+        }
+        try {
+            waiter.executor.execute(() -> waiter.callback.accept(content, error));
+        } catch (RejectedExecutionException e) {
+            logger.warn("事件循环已关闭，丢弃HLS文件");
+            if (content != null) {
+                content.data.release();
+            }
+        }
+    }
+    
+    private static long ttlMillis(String filePath) {
+        return filePath.endsWith(".ts") ? SEGMENT_TTL_MILLIS : PLAYLIST_TTL_MILLIS;
+    }
+    
+    private void putEntry(String filePath, Entry entry) {
+        removeEntry(filePath);
+        entries.put(filePath, entry);
+        bytes += entry.size();
+        
+        // 按访问顺序从最久未访问的开始淘汰
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (bytes > MAX_BYTES && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            bytes -= eldest.size();
+            eldest.content.data.release();
+            evictions++;
+        }
+    }
+    
+    private void removeEntry(String filePath) {
+        Entry entry = entries.remove(filePath);
+        if (entry != null) {
+            bytes -= entry.size();
+            entry.content.data.release();
+        }
+    }
+    
+    /**
+     * 获取统计信息
+     */
+    public synchronized Map<String, Object> getStats() {
+        long lookups = hits + misses;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", MAX_BYTES);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", lookups > 0 ? (double) hits / lookups : 0);
+        stats.put("collapsed", collapsed);
+        stats.put("loads", loads);
+        stats.put("evictions", evictions);
+        stats.put("invalidations", invalidations);
+        return stats;
+    }
+    
+    /**
+     * HLS文件内容，data由持有者负责释放
+     */
+    public static final class Content {
+        private final ByteBuf data;
+        private final long originalSize;
+        
+        private Content(ByteBuf data, long originalSize) {
+            this.data = data;
+            this.originalSize = originalSize;
+        }
+        
+        public ByteBuf getData() {
+            return data;
+        }
+        
+        /**
+         * 预压缩文件对应的原始文件大小，非预压缩文件为-1
+         */
+        public long getOriginalSize() {
+            return originalSize;
+        }
+        
+        private Content share() {
+            return new Content(data.retainedDuplicate(), originalSize);
+        }
+    }
+    
+    private static final class Entry {
+        private final Content content;
+        private final long expiresAt;
+        
+        Entry(Content content, long expiresAt) {
+            this.content = content;
+            this.expiresAt = expiresAt;
+        }
+        
+        long size() {
+            return content.data.readableBytes();
+        }
+        
+        Content share() {
+            return content.share();
+        }
+    }
+    
+    /**
+     * 一次正在进行的读取，以及等待结果的请求
+     */
+    private static final class Load {
+        private final List<Waiter> waiters = new ArrayList<>();
+        private boolean stale;
+    }
+    
+    private static final class Waiter {
+        private final EventExecutor executor;
+        private final BiConsumer<Content, Throwable> callback;
+        
+        Waiter(EventExecutor executor, BiConsumer<Content, Throwable> callback) {
+            this.executor = executor;
+            this.callback = callback;
+        }
+    }
+}
@@ -4,15 +4,18 @@ import io.netty.buffer.ByteBuf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * HLS流输出器 - 将RTMP流转换为HLS格式
@@ -21,16 +24,24 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class HlsStreamOutput implements StreamManager.StreamConsumer {
     private static final Logger logger = LoggerFactory.getLogger(HlsStreamOutput.class);
     
+    // 片段名中的输出器编号，同一直播间先后创建的输出器（如边缘拉流重连）不会写到同一个片段文件
+    private static final AtomicInteger GENERATIONS = new AtomicInteger();
+    
     private final String roomId;
     private final String outputDir;
+    private final int generation = GENERATIONS.incrementAndGet();
     private final AtomicInteger segmentIndex = new AtomicInteger(0);
     private final List<String> segmentFiles = new ArrayList<>();
     private final int segmentDuration = 10; // 10秒一个片段
     
     private FileOutputStream currentSegment;
+    private String currentSegmentPath;
     private long segmentStartTime;
     private boolean isRunning = false;
     
+    // 是否已有写完的片段，之前播放列表中只有正在写入的片段
+    private volatile boolean segmentCompleted;
+    
     public HlsStreamOutput(String roomId) {
         this.roomId = roomId;
         this.outputDir = "hls/" + roomId;
@@ -102,10 +113,12 @@ public class HlsStreamOutput implements StreamManager.StreamConsumer {
         
         // 创建新片段
         int index = segmentIndex.getAndIncrement();
-        String segmentFileName = String.format("segment_%d.ts", index);
+        String segmentFileName = String.format("segment_%d_%d.ts", generation, index);
         String segmentPath = outputDir + "/" + segmentFileName;
         
+        HlsCache.getInstance().beginWrite(segmentPath);
         currentSegment = new FileOutputStream(segmentPath);
+        currentSegmentPath = segmentPath;
         segmentStartTime = System.currentTimeMillis();
         segmentFiles.add(segmentFileName);
         
@@ -117,6 +130,7 @@ public class HlsStreamOutput implements StreamManager.StreamConsumer {
         // 保持最近的10个片段
         if (segmentFiles.size() > 10) {
             String oldSegment = segmentFiles.remove(0);
+            HlsCache.getInstance().invalidate(outputDir + "/" + oldSegment);
             try {
                 Files.deleteIfExists(Paths.get(outputDir + "/" + oldSegment));
             } catch (IOException e) {
@@ -133,6 +147,8 @@ public class HlsStreamOutput implements StreamManager.StreamConsumer {
             try {
                 currentSegment.close();
                 currentSegment = null;
+                HlsCache.getInstance().endWrite(currentSegmentPath);
+                segmentCompleted = true;
             } catch (IOException e) {
                 logger.error("关闭HLS片段失败", e);
             }
@@ -164,8 +180,13 @@ public class HlsStreamOutput implements StreamManager.StreamConsumer {
                 playlist.append("#EXT-X-ENDLIST\n");
             }
             
-            // 写入文件
-            Files.write(Paths.get(playlistPath), playlist.toString().getBytes());
+            // 写入文件，同时生成预压缩版本，避免每次请求都重新压缩
+            // 先替换预压缩版本并立即失效缓存，再替换原文件，任何时刻预压缩版本都不会比原文件旧
+            byte[] content = playlist.toString().getBytes();
+            writeAtomically(Paths.get(playlistPath + ".gz"), gzip(content));
+            HlsCache.getInstance().invalidate(playlistPath + ".gz");
+            writeAtomically(Paths.get(playlistPath), content);
+            HlsCache.getInstance().invalidate(playlistPath);
             
             logger.debug("更新HLS播放列表: 片段数={}, isEnd={}", segmentFiles.size(), isEnd);
             
@@ -174,6 +195,33 @@ public class HlsStreamOutput implements StreamManager.StreamConsumer {
         }
     }
     
+    /**
+     * 先写临时文件再原子替换，避免读到写了一半的文件
+     */
+    private void writeAtomically(Path target, byte[] content) throws IOException {
+        Path tempFile = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(tempFile, content);
+        Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * gzip压缩
+     */
+    private byte[] gzip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2 + 64);
+        try (GZIPOutputStream gzipStream = new GZIPOutputStream(bytes)) {
+            gzipStream.write(content);
+        }
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * 播放列表中是否已有可以完整读取的片段
+     */
+    public boolean hasCompleteSegment() {
+        return segmentCompleted;
+    }
+    
     /**
      * 获取HLS播放地址
      */
@@ -181,6 +229,25 @@ public class HlsStreamOutput implements StreamManager.StreamConsumer {
         return "/hls/" + roomId + "/playlist.m3u8";
     }
     
+    /**
+     * 流已被替换时停止输出：只删除本输出器写的片段，播放列表和目录已归新的输出器所有，不做改动
+     */
+    public void discard() {
+        isRunning = false;
+        closeCurrentSegment();
+        for (String segmentFile : segmentFiles) {
+            String segmentPath = outputDir + "/" + segmentFile;
+            HlsCache.getInstance().invalidate(segmentPath);
+            try {
+                Files.deleteIfExists(Paths.get(segmentPath));
+            } catch (IOException e) {
+                logger.warn("删除片段失败: {}", segmentPath, e);
+            }
+        }
+        segmentFiles.clear();
+        logger.info("HLS输出器已被替换: roomId={}", roomId);
+    }
+    
     /**
      * 清理资源
      */
@@ -204,6 +271,7 @@ public class HlsStreamOutput implements StreamManager.StreamConsumer {
         } catch (IOException e) {
             logger.error("清理HLS文件失败", e);
         }
+        HlsCache.getInstance().invalidateDirectory(outputDir);
         
         isRunning = false;
         logger.info("HLS输出器已清理: roomId={}", roomId);
@@ -1,6 +1,9 @@
 package com.live.broadcast.stream;
 
+import com.live.broadcast.cluster.ClusterConfig;
+import com.live.broadcast.cluster.StreamRegistry;
 import com.live.broadcast.manager.LiveRoomManager;
+import com.live.broadcast.push.RtmpPushService;
 import io.netty.buffer.ByteBuf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,13 +19,23 @@ public class StreamManager {
     private static final Logger logger = LoggerFactory.getLogger(StreamManager.class);
     private static volatile StreamManager instance;
     
+    // 从源站拉取的流的streamKey前缀
+    private static final String RELAY_KEY_PREFIX = "relay:";
+    
     // 活跃的流 roomId -> StreamInfo
     private final Map<String, StreamInfo> activeStreams = new ConcurrentHashMap<>();
     
     // 观众连接 roomId -> List<StreamConsumer>
     private final Map<String, CopyOnWriteArrayList<StreamConsumer>> streamConsumers = new ConcurrentHashMap<>();
     
-    private StreamManager() {}
+    // 推流归属登记，集群中其他节点据此把观众引导到推流所在的节点
+    private final StreamRegistry registry;
+    
+    private StreamManager() {
+        LiveRoomManager roomManager = LiveRoomManager.getInstance();
+        registry = ClusterConfig.createStreamRegistry(roomManager.getEventBus());
+        registry.start(roomManager.getScheduler());
+    }
     
     public static StreamManager getInstance() {
         if (instance == null) {
@@ -45,8 +58,14 @@ public class StreamManager {
         
         logger.info("开始推流: roomId={}, streamKey={}", roomId, streamKey);
         
+        // 登记本节点为该直播间的源站
+        registry.register(roomId);
+        
         // 通知房间管理器
         LiveRoomManager.getInstance().startLive(roomId);
+        
+        // 开始转推到该直播间配置的RTMP目标
+        RtmpPushService.getInstance().onStreamStart(roomId);
     }
     
     /**
@@ -63,14 +82,47 @@ public class StreamManager {
             }
             
             logger.info("停止推流: roomId={}", roomId);
+            registry.unregister(roomId);
             
             // 通知房间管理器
             LiveRoomManager.getInstance().stopLive(roomId);
         }
     }
     
+    /**
+     * 开始转发从源站拉取的流
+     * 只在本节点分发，不登记归属、不通知开播，直播间状态由源站经事件总线同步
+     */
+    public StreamInfo startRelayStream(String roomId, String originNodeId) {
+        StreamInfo streamInfo = new StreamInfo(roomId, RELAY_KEY_PREFIX + originNodeId);
+        activeStreams.put(roomId, streamInfo);
+        streamConsumers.putIfAbsent(roomId, new CopyOnWriteArrayList<>());
+        logger.info("开始转发源站流: roomId={}, origin={}", roomId, originNodeId);
+        return streamInfo;
+    }
+    
+    /**
+     * 停止转发拉取的流，流已被替换时不做处理
+     *
+     * @return 流已被替换时返回false，此时原来的消费者不会收到流结束通知
+     */
+    public boolean stopRelayStream(StreamInfo streamInfo) {
+        String roomId = streamInfo.getRoomId();
+        if (activeStreams.remove(roomId, streamInfo)) {
+            CopyOnWriteArrayList<StreamConsumer> consumers = streamConsumers.get(roomId);
+            if (consumers != null) {
+                consumers.forEach(consumer -> consumer.onStreamEnd());
+                consumers.clear();
+            }
+            logger.info("停止转发源站流: roomId={}", roomId);
+            return true;
+        }
+        return false;
+    }
+    
     /**
      * 处理流媒体数据
+     * 每个消费者收到同一块数据的retainedDuplicate，由消费者释放；data本身仍由调用方释放
      */
     public void handleStreamData(String roomId, ByteBuf data, StreamDataType dataType) {
         StreamInfo streamInfo = activeStreams.get(roomId);
@@ -86,11 +138,10 @@ public class StreamManager {
         // 分发给所有观众
         CopyOnWriteArrayList<StreamConsumer> consumers = streamConsumers.get(roomId);
         if (consumers != null && !consumers.isEmpty()) {
-            // 复制数据给每个消费者
+            // 所有消费者共享同一块数据，各自持有独立的读写索引
             for (StreamConsumer consumer : consumers) {
                 try {
-                    ByteBuf dataCopy = data.copy();
-                    consumer.onStreamData(dataCopy, dataType);
+                    consumer.onStreamData(data.retainedDuplicate(), dataType);
                 } catch (Exception e) {
                     logger.error("分发流数据失败", e);
                     // 移除失效的消费者
@@ -129,6 +180,13 @@ public class StreamManager {
         return activeStreams.get(roomId);
     }
     
+    /**
+     * 获取推流归属登记
+     */
+    public StreamRegistry getRegistry() {
+        return registry;
+    }
+    
     /**
      * 获取所有活跃流
      */
@@ -200,6 +258,20 @@ public class StreamManager {
         public long getTotalDataSize() { return totalDataSize; }
         public int getBitrate() { return bitrate; }
         
+        /**
+         * 是否为从源站拉取的流
+         */
+        public boolean isRelay() {
+            return streamKey.startsWith(RELAY_KEY_PREFIX);
+        }
+        
+        /**
+         * 当前媒体时间，即推流开始后经过的毫秒数
+         */
+        public long getMediaTimeMillis() {
+            return System.currentTimeMillis() - startTime;
+        }
+        
         public boolean isActive() {
             return System.currentTimeMillis() - lastDataTime < 30000; // 30秒无数据认为断流
         }
@@ -0,0 +1,175 @@
+package com.live.broadcast.filter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 敏感词过滤基准测试 - 单线程扫描聊天消息的吞吐量和大词典的编译耗时
+ * 词典和消息由固定种子生成：汉字按Zipf分布取自常用字区间，另有一部分拼音形式的字母词条；
+ * 消息长度8到40个字符，混合汉字、英文单词和标点，其中约5%包含敏感词；混写消息中插入的汉字词条有一个字改写为拼音
+ *
+ * 运行：mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ *      -Dexec.args="-cp %classpath org.openjdk.jmh.Main WordMatcherBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class WordMatcherBenchmark {
+    private static final int MESSAGE_COUNT = 4096;
+    private static final double HIT_RATIO = 0.05;
+    private static final String[] ENGLISH_WORDS = {
+            "animal", "minimal", "in", "imax", "hello", "stream", "nice", "gg", "lol", "wow", "666", "top"
+    };
+    
+    @Param({"10000", "100000"})
+    private int dictionarySize;
+    
+    private List<String> words;
+    private WordMatcher matcher;
+    private String[] cleanMessages;
+    private String[] mixedMessages;
+    private String[] pinyinMessages;
+    private int index;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        words = new ArrayList<>(dictionarySize);
+        for (int i = 0; i < dictionarySize; i++) {
+            words.add(random.nextInt(10) < 8 ? randomHanzi(random, 2 + random.nextInt(3)) : randomPinyin(random));
+        }
+        matcher = WordMatcher.compile(words);
+        
+        cleanMessages = new String[MESSAGE_COUNT];
+        mixedMessages = new String[MESSAGE_COUNT];
+        pinyinMessages = new String[MESSAGE_COUNT];
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            String message = randomMessage(random);
+            // 按字典构造的随机消息也可能命中，清洁消息需要确认没有命中
+            while (matcher.findFirst(message) >= 0) {
+                message = randomMessage(random);
+            }
+            cleanMessages[i] = message;
+            mixedMessages[i] = message;
+            pinyinMessages[i] = message;
+            if (random.nextDouble() < HIT_RATIO) {
+                int split = random.nextInt(message.length() + 1);
+                String word = words.get(random.nextInt(words.size()));
+                mixedMessages[i] = message.substring(0, split) + word + message.substring(split);
+                pinyinMessages[i] = message.substring(0, split) + toMixedSpelling(random, word) + message.substring(split);
+            }
+        }
+    }
+    
+    /**
+     * 没有敏感词的消息，拒绝策略的检查路径
+     */
+    @Benchmark
+    public int findFirstClean() {
+        return matcher.findFirst(nextMessage(cleanMessages));
+    }
+    
+    /**
+     * 没有敏感词的消息，掩码策略返回原字符串，不分配内存
+     */
+    @Benchmark
+    public String maskClean() {
+        return matcher.mask(nextMessage(cleanMessages), '*');
+    }
+    
+    /**
+     * 约5%的消息包含敏感词
+     */
+    @Benchmark
+    public String maskMixed() {
+        return matcher.mask(nextMessage(mixedMessages), '*');
+    }
+    
+    /**
+     * 约5%的消息包含汉字和拼音混写的敏感词
+     */
+    @Benchmark
+    public String maskPinyinMixed() {
+        return matcher.mask(nextMessage(pinyinMessages), '*');
+    }
+    
+    /**
+     * 编译整个词典，热更新时在后台线程执行
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public WordMatcher compile() {
+        return WordMatcher.compile(words);
+    }
+    
+    private String nextMessage(String[] messages) {
+        return messages[index++ & (MESSAGE_COUNT - 1)];
+    }
+    
+    private static String randomMessage(Random random) {
+        int length = 8 + random.nextInt(33);
+        StringBuilder sb = new StringBuilder(length + 8);
+        while (sb.length() < length) {
+            int kind = random.nextInt(10);
+            if (kind < 6) {
+                sb.append(randomHanzi(random, 1 + random.nextInt(4)));
+            } else if (kind < 9) {
+                sb.append(' ').append(ENGLISH_WORDS[random.nextInt(ENGLISH_WORDS.length)]).append(' ');
+            } else {
+                sb.append("，！？~".charAt(random.nextInt(4)));
+            }
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * 常用汉字区间内按Zipf分布取字，少数字出现得很频繁
+     */
+    private static String randomHanzi(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            double r = random.nextDouble();
+            sb.append((char) (0x4E00 + (int) (3500 * r * r * r)));
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * 把汉字词条中随机一个字改写为拼音
+     */
+    private static String toMixedSpelling(Random random, String word) {
+        int index = random.nextInt(word.length());
+        String syllable = Pinyin.of(word.charAt(index));
+        return syllable == null ? word : word.substring(0, index) + syllable + word.substring(index + 1);
+    }
+    
+    private static String randomPinyin(Random random) {
+        int length = 4 + random.nextInt(5);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+}
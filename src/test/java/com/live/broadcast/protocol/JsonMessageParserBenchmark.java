@@ -0,0 +1,103 @@
+package com.live.broadcast.protocol;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON上行消息解析基准测试 - 流式解析ByteBuf与原来先text()解码成String再readTree构建JsonNode的做法对比
+ * 帧内容为客户端实际发送的join、chat和heartbeat消息，分别放在堆内和堆外缓冲区中（WebSocket解码出的帧一般在堆外）
+ *
+ * 运行：mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java
+ *      -Dexec.args="-cp %classpath org.openjdk.jmh.Main JsonMessageParserBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonMessageParserBenchmark {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @Param({"join", "chat", "heartbeat"})
+    private String messageType;
+    
+    @Param({"heap", "direct"})
+    private String buffer;
+    
+    private ByteBuf frame;
+    private final InboundMessage inbound = new InboundMessage();
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        byte[] bytes = sampleMessage(messageType).getBytes(StandardCharsets.UTF_8);
+        frame = "direct".equals(buffer) ? Unpooled.directBuffer(bytes.length) : Unpooled.buffer(bytes.length);
+        frame.writeBytes(bytes);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        frame.release();
+    }
+    
+    /**
+     * 流式解析，填充复用的InboundMessage
+     */
+    @Benchmark
+    public InboundMessage streaming() {
+        JsonMessageParser.parse(frame, inbound);
+        return inbound;
+    }
+    
+    /**
+     * 原来的做法：解码成String，构建JsonNode树，再逐个取字段
+     */
+    @Benchmark
+    public InboundMessage textAndReadTree() throws Exception {
+        String text = frame.toString(StandardCharsets.UTF_8);
+        JsonNode jsonNode = objectMapper.readTree(text);
+        inbound.clear();
+        inbound.setType(jsonNode.get("type").asText());
+        inbound.setRoomId(textField(jsonNode, "roomId"));
+        inbound.setUserId(textField(jsonNode, "userId"));
+        inbound.setUsername(textField(jsonNode, "username"));
+        inbound.setContent(textField(jsonNode, "content"));
+        return inbound;
+    }
+    
+    private static String textField(JsonNode jsonNode, String field) {
+        JsonNode value = jsonNode.get(field);
+        return value != null ? value.asText() : null;
+    }
+    
+    private static String sampleMessage(String type) {
+        switch (type) {
+            case "join":
+                return "{\"type\":\"join\",\"roomId\":\"room_1024\",\"userId\":\"user_8f3a2c\","
+                        + "\"username\":\"观众小明\",\"lastSeq\":18273}";
+            case "chat":
+                return "{\"type\":\"chat\",\"roomId\":\"room_1024\",\"userId\":\"user_8f3a2c\","
+                        + "\"username\":\"观众小明\",\"content\":\"主播这波操作太秀了 666666\",\"timestamp\":1760000000000}";
+            default:
+                return "{\"type\":\"heartbeat\"}";
+        }
+    }
+}